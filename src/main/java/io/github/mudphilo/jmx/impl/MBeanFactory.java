@@ -27,10 +27,26 @@ import io.github.mudphilo.jmx.annotation.ManagedOperation;
  * with any MBeanServer. However, the preferred approach is to use the {@link Management} class (which internally uses
  * this class).</p>
  * 
+ * <p>The annotations of a class are only processed the first time an object of the class is instrumented, the
+ * resulting {@link MBeanMetadata} is cached and shared by the MBeans of all the objects of the class.</p>
+ * 
  * @author German Escobar
  */
 public final class MBeanFactory {
 	
+	/**
+	 * The metadata of the instrumented classes. A <code>ClassValue</code> doesn't keep the classes (or their class
+	 * loaders) from being unloaded.
+	 */
+	private static final ClassValue<MBeanMetadata> METADATA = new ClassValue<MBeanMetadata>() {
+		
+		@Override
+		protected MBeanMetadata computeValue(Class<?> objectType) {
+			return createMetadata(objectType);
+		}
+		
+	};
+	
 	/**
 	 * Hide public constructor.
 	 */
@@ -49,8 +65,20 @@ public final class MBeanFactory {
 		if (object == null) {
 			throw new IllegalArgumentException("No object specified.");
 		}
-     	
-		Class<?> objectType = object.getClass();
+		
+		return new MBeanImpl(object, METADATA.get(object.getClass()));
+		
+	}
+	
+	/**
+	 * Helper method. Builds the metadata of a class exposing all methods and attributes annotated with 
+	 * {@link ManagedOperation} and {@link ManagedAttribute} respectively.
+	 * 
+	 * @param objectType the class from which we are creating the metadata.
+	 * 
+	 * @return the metadata of the class.
+	 */
+	private static MBeanMetadata createMetadata(Class<?> objectType) {
 		
 		// retrieve description
 		String description = "";
@@ -69,8 +97,8 @@ public final class MBeanFactory {
     	MBeanInfo mBeanInfo = new MBeanInfo(objectType.getName(), description, methodHandler.getMBeanAttributes(), 
     			new MBeanConstructorInfo[0], methodHandler.getMBeanOperations(), new MBeanNotificationInfo[0]);
     	
-    	// create the MBean
-	    return new MBeanImpl(object, mBeanInfo);
+    	// resolve the methods of the attributes and operations
+	    return new MBeanMetadata(objectType, mBeanInfo);
 	    
 	}
     
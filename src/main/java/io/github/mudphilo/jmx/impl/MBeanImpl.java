@@ -1,8 +1,6 @@
 package io.github.mudphilo.jmx.impl;
 
-import static io.github.mudphilo.jmx.util.StringUtils.capitalize;
-
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.util.Iterator;
 
 import javax.management.Attribute;
@@ -10,16 +8,17 @@ import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.DynamicMBean;
 import javax.management.InvalidAttributeValueException;
-import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
-import javax.management.MBeanOperationInfo;
-import javax.management.MBeanParameterInfo;
 import javax.management.ReflectionException;
 import javax.management.RuntimeOperationsException;
 
+import io.github.mudphilo.jmx.ManagementException;
+
 /**
  * This is the DynamicMBean implementation that is returned from the {@link MBeanFactory#createMBean(Object)} method.
+ * The attributes and operations are looked up by name in the {@link MBeanMetadata} of the class and called through
+ * its method handles.
  * 
  * @author German Escobar
  */
@@ -28,12 +27,17 @@ public class MBeanImpl implements DynamicMBean {
 	/**
 	 * The object that is being instrumented.
 	 */
-	private Object object;
+	private final Object object;
     
 	/**
 	 * Describes the exposed information of the object.
 	 */
-    private MBeanInfo mBeanInfo;
+    private final MBeanInfo mBeanInfo;
+    
+    /**
+     * The methods of the exposed attributes and operations, shared by the instances of the same class.
+     */
+    private final MBeanMetadata metadata;
     
     /**
      * Constructor. Creates an instance using the Object instance that is going to be instrumented and the MBeanInfo 
@@ -41,10 +45,24 @@ public class MBeanImpl implements DynamicMBean {
      * 
      * @param object the object that is going to be instrumented.
      * @param mBeanInfo describes the exposed information of the object.
+     * 
+     * @throws ManagementException if a method described by the <code>mBeanInfo</code> can't be found or accessed.
+     */
+    public MBeanImpl(Object object, MBeanInfo mBeanInfo) throws ManagementException {
+    	this(object, new MBeanMetadata(object.getClass(), mBeanInfo));
+    }
+    
+    /**
+     * Constructor. Creates an instance using the Object instance that is going to be instrumented and the metadata
+     * of its class.
+     * 
+     * @param object the object that is going to be instrumented.
+     * @param metadata the exposed information and methods of the class of the object.
      */
-    public MBeanImpl(Object object, MBeanInfo mBeanInfo) {
+    MBeanImpl(Object object, MBeanMetadata metadata) {
     	this.object = object;
-    	this.mBeanInfo = mBeanInfo;
+    	this.mBeanInfo = metadata.getMBeanInfo();
+    	this.metadata = metadata;
     }
 
     @Override
@@ -57,23 +75,25 @@ public class MBeanImpl implements DynamicMBean {
     				"Cannot invoke a getter of " + mBeanInfo.getClassName() + " with null attribute name");
     	}
     	
-    	MBeanAttributeInfo mBeanAttribute = findMBeanAttribute(attributeName);
-    	if (mBeanAttribute == null) {
-        	throw new AttributeNotFoundException("Can not find " + attributeName + " attribute in " +
-        				mBeanInfo.getClassName());
-    	}
-    	
-    	Method getterMethod = findGetterMethod( mBeanAttribute );
-    	if (getterMethod == null) {
+    	MethodHandle getter = metadata.getGetter(attributeName);
+    	if (getter == null) {
+    		
+    		if (!metadata.hasAttribute(attributeName)) {
+    			throw new AttributeNotFoundException("Can not find " + attributeName + " attribute in " +
+    					mBeanInfo.getClassName());
+    		}
+    		
     		throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute or equivalent getter in " + 
     				mBeanInfo.getClassName());
     	}
 
     	try {
-			return getterMethod.invoke(object);
+			return (Object) getter.invokeExact(object);
 		} catch (Exception e) {
 			throw new MBeanException(e);
-		} 
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
     }
     
     @Override
@@ -133,37 +153,32 @@ public class MBeanImpl implements DynamicMBean {
     	}
     	
     	// try to set from the setter method
-    	MBeanAttributeInfo mBeanAttribute = findMBeanAttribute(attributeName);    	
-    	if (mBeanAttribute == null) {
-        	throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute in " + 
-        				mBeanInfo.getClassName());
-    	}
-    	
-    	Class<?> type = null;
-    	try {
-    		type = findClass(mBeanAttribute.getType());
-			if ( !isAssignable(type, value.getClass()) ) {
-				throw new InvalidAttributeValueException("Cannot set attribute "+ attributeName +" to a " + 
-						value.getClass().getName() + " object, " + type.getName() + " expected");
-			}
-		} catch (ClassNotFoundException e) {
-
-			e.printStackTrace();
-		}
-    	
-    	Method setterMethod = findSetterMethod( mBeanAttribute, type );
-    	if (setterMethod == null) {
+    	MBeanMetadata.Setter setter = metadata.getSetter(attributeName);
+    	if (setter == null) {
+    		
+    		if (!metadata.hasAttribute(attributeName)) {
+    			throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute in " + 
+    					mBeanInfo.getClassName());
+    		}
 
     		throw new ReflectionException(new Exception("No setter method for attribute " + attributeName));
     	}
+    	
+    	Class<?> type = setter.getType();
+    	if ( !isAssignable(type, value.getClass()) ) {
+    		throw new InvalidAttributeValueException("Cannot set attribute "+ attributeName +" to a " + 
+    				value.getClass().getName() + " object, " + type.getName() + " expected");
+    	}
 
     	try {
-			setterMethod.invoke(object, value);
+			setter.getHandle().invokeExact(object, value);
 
 		} catch (Exception e) {
 
 			throw new MBeanException(e);
-		} 
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
     	
     }
     
@@ -209,8 +224,8 @@ public class MBeanImpl implements DynamicMBean {
     				"Cannot invoke a null operation in " + mBeanInfo.getClassName());
     	}
     	
-    	MBeanOperationInfo mBeanOperation = findMBeanOperation(actionName, signature);
-    	if (mBeanOperation == null) {
+    	MBeanMetadata.Operation operation = findOperation(actionName, signature);
+    	if (operation == null) {
     		throw new ReflectionException(new NoSuchMethodException(actionName), 
     				"Cannot find the operation " + actionName + " with specified signature in " + 
     				mBeanInfo.getClassName());
@@ -218,73 +233,39 @@ public class MBeanImpl implements DynamicMBean {
     	
     	try {
     		
-    		Method method = object.getClass().getMethod(actionName, getParametersTypes(signature));
-			return method.invoke(object, params);
+    		Object[] args = params != null ? params : new Object[0];
+			return (Object) operation.getHandle().invokeExact(object, args);
 			
     	} catch (Exception e) {
 
     		throw new ReflectionException(e);
+		} catch (Throwable t) {
+			throw rethrow(t);
 		}
 	}
     
-    private Class<?>[] getParametersTypes(String[] signature) throws ClassNotFoundException {
-    	
-    	if (signature == null) {
-
-    		return new Class[0];
-    	}
-    	
-    	Class<?>[] paramTypes = new Class<?>[signature.length];
-    	for (int i=0; i < signature.length; i++) {
-    		paramTypes[i] = findClass( signature[i] );
-    	}
-    	
-    	return paramTypes;
-    }
-    
     @Override
     public MBeanInfo getMBeanInfo() {
     	return mBeanInfo;
     }
     
     /**
-     * Helper method. Tries to find the MBeanAttributeInfo from the mBeanInfo instance variable. 
-     * 
-     * @param attributeName the name of the attribute we are looking for.
-     * 
-     * @return the MBeanAttributeInfo for the attribute name or null if not found.
-     */
-    private MBeanAttributeInfo findMBeanAttribute(String attributeName) {
-    	
-    	MBeanAttributeInfo[] mBeanAttributes = mBeanInfo.getAttributes();
-    	for (MBeanAttributeInfo mBeanAttribute : mBeanAttributes) {
-    		
-    		if (mBeanAttribute.getName().equals(attributeName)) {
-    			return mBeanAttribute;
-    		}
-    		
-    	}
-    	
-    	return null;
-    }
-    
-    /**
-     * Helper method. Tries to find the <code>MBeanOperationInfo</code> from the <code>mBeanInfo</code> instance 
-     * variable.
+     * Helper method. Tries to find the operation from the <code>metadata</code> instance variable.
      * 
      * @param operationName the name of the operation we are looking for.
      * @param receivedSignature the signature of the operation we are looking for.
      * 
-     * @return the MBeanOperationInfo that matches the <code>operationName</code> and <code>receivedSignature</code>. 
+     * @return the operation that matches the <code>operationName</code> and <code>receivedSignature</code> or null
+     * if not found.
      */
-    private MBeanOperationInfo findMBeanOperation(String operationName, String[] receivedSignature) {
+    private MBeanMetadata.Operation findOperation(String operationName, String[] receivedSignature) {
     	
-    	MBeanOperationInfo[] mBeanOperations = mBeanInfo.getOperations();
-    	for (MBeanOperationInfo mBeanOperation : mBeanOperations) {
+    	String[] signature = receivedSignature != null ? receivedSignature : new String[0];
+    	
+    	for (MBeanMetadata.Operation operation : metadata.getOperations(operationName)) {
     		
-    		if (mBeanOperation.getName().equals(operationName) 
-    				&& isAssignableSignature(mBeanOperation.getSignature(), receivedSignature) ) {
-    			return mBeanOperation;
+    		if (isAssignableSignature(operation, signature)) {
+    			return operation;
     		}
     		
     	}
@@ -293,121 +274,58 @@ public class MBeanImpl implements DynamicMBean {
     }
     
     /**
-     * Helper method. Validates if the <code>receivedSignature</code> is assignable to the 
-     * <code>operationSignature</code>.
+     * Helper method. Validates if the <code>receivedSignature</code> is assignable to the signature of the
+     * <code>operation</code>.
      * 
-     * @param operationSignature the signature of the operation.
+     * @param operation the operation.
      * @param receivedSignature the received signature.
      * 
-     * @return true if the <code>receivedSignature</code> is assignable to the <code>operationSignature</code>.
+     * @return true if the <code>receivedSignature</code> is assignable to the signature of the <code>operation</code>.
      */
-    private boolean isAssignableSignature(MBeanParameterInfo[] operationSignature, String[] receivedSignature) {
-    	
-    	if (operationSignature == null && receivedSignature == null) {
-    		return true;
-    	}
-    	
-    	if (operationSignature == null || receivedSignature == null) {
-    		return false;
-    	}
+    private boolean isAssignableSignature(MBeanMetadata.Operation operation, String[] receivedSignature) {
     	
-    	if (operationSignature.length != receivedSignature.length) {
+    	String[] typeNames = operation.getTypeNames();
+    	if (typeNames.length != receivedSignature.length) {
     		return false;
     	}
     	
-    	try {
-	    	for (int i=0; i < operationSignature.length; i++) {
-	    		
-	    		Class<?> operationParamClass = findClass( operationSignature[i].getType() );
-	    		Class<?> receivedParamClass = findClass( receivedSignature[i] );
-	    		
-	    		if ( !isAssignable(operationParamClass, receivedParamClass) ) {
-	    			return false;
-	    		}
-	    	}
-
-    	} catch (ClassNotFoundException e) {
-
-    		e.printStackTrace();
+    	for (int i=0; i < typeNames.length; i++) {
+    		
+    		// the usual case, the signature is the one in the MBeanOperationInfo
+    		if (typeNames[i].equals(receivedSignature[i])) {
+    			continue;
+    		}
+    		
+    		try {
+    			
+    			Class<?> receivedParamClass = MBeanMetadata.findClass( receivedSignature[i] );
+    			if ( !isAssignable(operation.getTypes()[i], receivedParamClass) ) {
+    				return false;
+    			}
+    			
+    		} catch (ClassNotFoundException e) {
+    			return false;
+    		}
     	}
     	
     	return true;
     }
     
     /**
-     * Helper method. Tries to find a getter method from the instrumented object using the <code>mBeanAttribute<code> 
-     * info.
+     * Helper method. Rethrows an <code>Error</code> thrown by a method handle; the exceptions are wrapped by the
+     * callers, so any other <code>Throwable</code> is unexpected.
      * 
-     * @param mBeanAttribute the MBeanAttributeInfo from which we are trying to find the getter method.
+     * @param t the throwable thrown by the method handle.
      * 
-     * @return a java.lang.reflect.Method object that represents the getter method; null if no match.
+     * @return never returns, the return type lets the callers use <code>throw rethrow(t)</code>.
      */
-    private Method findGetterMethod(MBeanAttributeInfo mBeanAttribute) {
-    	String prefix = "get";
-    	if (mBeanAttribute.isIs()) {
-    		prefix = "is";
-    	}
+    private static RuntimeException rethrow(Throwable t) {
     	
-    	try {
-    		return object.getClass().getMethod( prefix + capitalize(mBeanAttribute.getName()) );
-    	} catch (NoSuchMethodException e) {
-    		return null;
+    	if (t instanceof Error) {
+    		throw (Error) t;
     	}
     	
-    }
-    
-    /**
-     * Helper method. Tries to find a setter method from the instrumented object using the <code>mBeanAttribute</code>
-     * and the <code>paramType</code>.
-     * 
-     * @param mBeanAttribute the MBeanAttributeInfo from which we are trying to find the setter method.
-     * @param attributeType the class of the attribute.
-     * 
-     * @return a java.lang.reflect.Method object that represents the setter method; null if no match.
-     */
-    private Method findSetterMethod(MBeanAttributeInfo mBeanAttribute, Class<?> attributeType) {
-    	
-    	try {
-    		return object.getClass().getMethod( "set" + capitalize(mBeanAttribute.getName()), attributeType);
-    	} catch (NoSuchMethodException e) {
-    		return null;
-    	}
-    	
-    }
-    
-    /**
-     * Helper method. Finds a class from its class name. 
-     * 
-     * @param className
-     * @return
-     * @throws ClassNotFoundException
-     */
-    private Class<?> findClass(String className) throws ClassNotFoundException {
-    	
-    	if (className == null) {
-    		throw new ClassNotFoundException(className);
-    	}
-    	
-    	if (Integer.TYPE.getName().equals(className)) {
-    		return Integer.TYPE;
-    	} else if (Byte.TYPE.getName().equals(className)) {
-    		return Byte.TYPE;
-    	} else if (Short.TYPE.getName().equals(className)) {
-    		return Short.TYPE;
-    	} else if (Long.TYPE.getName().equals(className)) {
-    		return Long.TYPE;
-    	} else if (Float.TYPE.getName().equals(className)) {
-    		return Float.TYPE;
-    	} else if (Double.TYPE.getName().equals(className)) {
-    		return Double.TYPE;
-    	} else if (Boolean.TYPE.getName().equals(className)) {
-    		return Boolean.TYPE;
-    	} else if (Character.TYPE.getName().equals(className)) {
-    		return Character.TYPE;
-    	}
-    	
-    	return Class.forName(className);
-    	
+    	throw new IllegalStateException(t);
     }
     
     /**
@@ -0,0 +1,275 @@
+package io.github.mudphilo.jmx.impl;
+
+import static io.github.mudphilo.jmx.util.StringUtils.capitalize;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+
+import io.github.mudphilo.jmx.ManagementException;
+
+/**
+ * <p>The exposed information of a class: the <code>MBeanInfo</code> and the getters, setters and operations resolved
+ * into <code>MethodHandle</code>s indexed by name. It's built once per class (see {@link MBeanFactory}) and shared by
+ * the {@link MBeanImpl} of all the instances, so creating an MBean doesn't reflect over the class and accessing an
+ * attribute is a map lookup and a direct call.</p>
+ *
+ * <p>The handles are not bound to an instance, they receive the instrumented object as the first argument. Instances
+ * are immutable and thread-safe.</p>
+ */
+final class MBeanMetadata {
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	/**
+	 * Describes the exposed information of the class.
+	 */
+	private final MBeanInfo mBeanInfo;
+
+	/**
+	 * The getters of the readable attributes by attribute name, of type <code>(Object)Object</code>.
+	 */
+	private final Map<String, MethodHandle> getters = new HashMap<>();
+
+	/**
+	 * The setters of the writable attributes by attribute name.
+	 */
+	private final Map<String, Setter> setters = new HashMap<>();
+
+	/**
+	 * The operations by name, a list because operations can be overloaded.
+	 */
+	private final Map<String, List<Operation>> operations = new HashMap<>();
+
+	/**
+	 * Constructor. Resolves the methods of the attributes and operations described by the <code>mBeanInfo</code>.
+	 *
+	 * @param objectType the class of the instrumented objects.
+	 * @param mBeanInfo describes the exposed information of the class.
+	 *
+	 * @throws ManagementException if a method described by the <code>mBeanInfo</code> can't be found or accessed.
+	 */
+	MBeanMetadata(Class<?> objectType, MBeanInfo mBeanInfo) throws ManagementException {
+
+		this.mBeanInfo = mBeanInfo;
+
+		try {
+
+			for (MBeanAttributeInfo mBeanAttribute : mBeanInfo.getAttributes()) {
+
+				String name = mBeanAttribute.getName();
+
+				if (mBeanAttribute.isReadable()) {
+
+					String prefix = mBeanAttribute.isIs() ? "is" : "get";
+					Method getterMethod = objectType.getMethod(prefix + capitalize(name));
+
+					getters.put(name, unreflect(getterMethod).asType(GETTER_TYPE));
+				}
+
+				if (mBeanAttribute.isWritable()) {
+
+					Class<?> type = findClass(mBeanAttribute.getType());
+					Method setterMethod = objectType.getMethod("set" + capitalize(name), type);
+
+					setters.put(name, new Setter(type, unreflect(setterMethod).asType(SETTER_TYPE)));
+				}
+			}
+
+			for (MBeanOperationInfo mBeanOperation : mBeanInfo.getOperations()) {
+
+				MBeanParameterInfo[] signature = mBeanOperation.getSignature();
+
+				String[] typeNames = new String[signature.length];
+				Class<?>[] types = new Class<?>[signature.length];
+				for (int i = 0; i < signature.length; i++) {
+					typeNames[i] = signature[i].getType();
+					types[i] = findClass(typeNames[i]);
+				}
+
+				Method method = objectType.getMethod(mBeanOperation.getName(), types);
+
+				// (Object, Object[])Object, the arguments are spread and unboxed by the handle
+				MethodHandle handle = unreflect(method);
+				handle = handle.asType(handle.type().generic()).asSpreader(Object[].class, types.length);
+
+				List<Operation> overloads = operations.get(mBeanOperation.getName());
+				if (overloads == null) {
+					overloads = new ArrayList<>(1);
+					operations.put(mBeanOperation.getName(), overloads);
+				}
+				overloads.add(new Operation(typeNames, types, handle));
+			}
+
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			throw new ManagementException(e);
+		}
+	}
+
+	MBeanInfo getMBeanInfo() {
+		return mBeanInfo;
+	}
+
+	/**
+	 * @return the getter of the attribute or null if the attribute doesn't exist or is not readable.
+	 */
+	MethodHandle getGetter(String attributeName) {
+		return getters.get(attributeName);
+	}
+
+	/**
+	 * @return the setter of the attribute or null if the attribute doesn't exist or is not writable.
+	 */
+	Setter getSetter(String attributeName) {
+		return setters.get(attributeName);
+	}
+
+	/**
+	 * @return true if there is a readable or writable attribute with the name.
+	 */
+	boolean hasAttribute(String attributeName) {
+		return getters.containsKey(attributeName) || setters.containsKey(attributeName);
+	}
+
+	/**
+	 * @return the overloads of the operation, an empty list if there is no operation with the name.
+	 */
+	List<Operation> getOperations(String operationName) {
+		List<Operation> overloads = operations.get(operationName);
+		return overloads != null ? overloads : Collections.<Operation>emptyList();
+	}
+
+	/**
+	 * Helper method. Converts a public method into a handle. Public methods of classes that are not public need to be
+	 * made accessible first, as <code>Method.invoke</code> would.
+	 */
+	private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+
+		try {
+			return MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException e) {
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method);
+		}
+	}
+
+	/**
+	 * Helper method. Finds a class from its class name, including the primitive types.
+	 *
+	 * @param className the name of the class as returned by <code>Class.getName()</code>.
+	 *
+	 * @return the class with the name.
+	 * @throws ClassNotFoundException if there is no class with the name.
+	 */
+	static Class<?> findClass(String className) throws ClassNotFoundException {
+
+		if (className == null) {
+			throw new ClassNotFoundException(className);
+		}
+
+		if (Integer.TYPE.getName().equals(className)) {
+			return Integer.TYPE;
+		} else if (Byte.TYPE.getName().equals(className)) {
+			return Byte.TYPE;
+		} else if (Short.TYPE.getName().equals(className)) {
+			return Short.TYPE;
+		} else if (Long.TYPE.getName().equals(className)) {
+			return Long.TYPE;
+		} else if (Float.TYPE.getName().equals(className)) {
+			return Float.TYPE;
+		} else if (Double.TYPE.getName().equals(className)) {
+			return Double.TYPE;
+		} else if (Boolean.TYPE.getName().equals(className)) {
+			return Boolean.TYPE;
+		} else if (Character.TYPE.getName().equals(className)) {
+			return Character.TYPE;
+		}
+
+		return Class.forName(className);
+
+	}
+
+	/**
+	 * The setter of a writable attribute.
+	 */
+	static final class Setter {
+
+		private final Class<?> type;
+
+		private final MethodHandle handle;
+
+		Setter(Class<?> type, MethodHandle handle) {
+			this.type = type;
+			this.handle = handle;
+		}
+
+		/**
+		 * @return the type of the attribute.
+		 */
+		Class<?> getType() {
+			return type;
+		}
+
+		/**
+		 * @return the handle of the setter, of type <code>(Object, Object)void</code>.
+		 */
+		MethodHandle getHandle() {
+			return handle;
+		}
+
+	}
+
+	/**
+	 * An exposed operation.
+	 */
+	static final class Operation {
+
+		private final String[] typeNames;
+
+		private final Class<?>[] types;
+
+		private final MethodHandle handle;
+
+		Operation(String[] typeNames, Class<?>[] types, MethodHandle handle) {
+			this.typeNames = typeNames;
+			this.types = types;
+			this.handle = handle;
+		}
+
+		/**
+		 * @return the names of the types of the parameters, as in the <code>MBeanOperationInfo</code>.
+		 */
+		String[] getTypeNames() {
+			return typeNames;
+		}
+
+		/**
+		 * @return the types of the parameters.
+		 */
+		Class<?>[] getTypes() {
+			return types;
+		}
+
+		/**
+		 * @return the handle of the operation, of type <code>(Object, Object[])Object</code>.
+		 */
+		MethodHandle getHandle() {
+			return handle;
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SmppRequest;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <p>A non-blocking alternative to {@link PacketProcessor}. Instead of calling a {@link ResponseSender}, the 
+ * implementation returns a <code>CompletionStage</code> that is completed with the {@link CommandResponse} when the packet
+ * has been processed, so no thread needs to wait for the backend while the request is in flight.</p>
+ * 
+ * <p>Stages can complete in any order: each response is sent with the sequence number of its own request. If the stage
+ * completes exceptionally (or with null), the client receives {@link Response#SYSTEM_ERROR}.</p>
+ */
+public interface AsyncPacketProcessor {
+
+	/**
+	 * Starts processing an SMPP Packet. 
+	 *
+	 * @param sessionID current session ID
+	 * @param packet the {@link SmppRequest} to be processed.
+	 * 
+	 * @return a CompletionStage that completes with the response that will be sent back to the client.
+	 */
+	CompletionStage<? extends CommandResponse> processPacket(int sessionID, SmppRequest packet);
+	
+}
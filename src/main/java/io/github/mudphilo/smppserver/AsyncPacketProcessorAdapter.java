@@ -0,0 +1,55 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SmppRequest;
+import org.apache.logging.log4j.LogManager;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Adapts an {@link AsyncPacketProcessor} to the {@link PacketProcessor} interface used by the {@link SmppSession}. The
+ * response is sent through the {@link ResponseSender} of the request when the returned stage completes.
+ */
+public class AsyncPacketProcessorAdapter implements PacketProcessor {
+
+	static final org.apache.logging.log4j.Logger log = LogManager.getLogger(AsyncPacketProcessorAdapter.class.getSimpleName());
+
+	private final AsyncPacketProcessor asyncPacketProcessor;
+
+	public AsyncPacketProcessorAdapter(AsyncPacketProcessor asyncPacketProcessor) {
+
+		if (asyncPacketProcessor == null) {
+			throw new IllegalArgumentException("No asyncPacketProcessor specified");
+		}
+
+		this.asyncPacketProcessor = asyncPacketProcessor;
+	}
+
+	@Override
+	public void processPacket(int sessionID, SmppRequest packet, final ResponseSender responseSender) {
+
+		CompletionStage<? extends CommandResponse> stage = asyncPacketProcessor.processPacket(sessionID, packet);
+		if (stage == null) {
+			log.warn("[session-{}] async packet processor returned no CompletionStage", sessionID);
+			responseSender.send(Response.SYSTEM_ERROR);
+			return;
+		}
+
+		stage.whenComplete((response, error) -> {
+
+			if (error != null) {
+				log.error("Exception in the async packet processor: {}", error.getMessage(), error);
+			}
+
+			responseSender.send(error == null && response != null ? response : Response.SYSTEM_ERROR);
+		});
+
+	}
+
+	/**
+	 * @return the {@link AsyncPacketProcessor} that is being adapted.
+	 */
+	public AsyncPacketProcessor getAsyncPacketProcessor() {
+		return asyncPacketProcessor;
+	}
+
+}
@@ -0,0 +1,57 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * <p>Implemented by those who want to process the incoming submit_sm packets in batches (e.g. to insert them in a 
+ * database with a single group-committed statement). The {@link SmppServer} collects the {@link SubmitSm} packets of 
+ * all the sessions and calls {@link #processBatch(List)} when the batch is full or the maximum delay expires.</p>
+ * 
+ * <p>Packets other than submit_sm are still handled by the {@link PacketProcessor}.</p>
+ */
+public interface BatchPacketProcessor {
+
+	/**
+	 * Processes a batch of submit_sm packets.
+	 * 
+	 * @param batch the packets to be processed, in the order they were received.
+	 * 
+	 * @return one {@link CommandResponse} for each element of the batch, in the same order. Elements without a response 
+	 * 		   (or all of them if an exception is thrown) are answered with {@link Response#SYSTEM_ERROR}.
+	 */
+	List<? extends CommandResponse> processBatch(List<Entry> batch) throws SQLException;
+	
+	/**
+	 * A submit_sm packet of a batch together with the session that received it.
+	 */
+	final class Entry {
+		
+		private final int sessionId;
+		
+		private final SubmitSm submitSm;
+		
+		public Entry(int sessionId, SubmitSm submitSm) {
+			this.sessionId = sessionId;
+			this.submitSm = submitSm;
+		}
+
+		/**
+		 * @return the id of the session that received the packet.
+		 */
+		public int getSessionId() {
+			return sessionId;
+		}
+
+		/**
+		 * @return the received packet.
+		 */
+		public SubmitSm getSubmitSm() {
+			return submitSm;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,185 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>The {@link LatencyHistogram}s of the requests of a server, by command id and by systemId. The latency of a
+ * request is the time from the moment it's decoded to the moment its response is written.</p>
+ *
+ * <p>The histograms are created the first time a command or systemId is recorded and then reused, so recording
+ * doesn't allocate objects.</p>
+ */
+class CommandLatencies {
+
+	private static final String[] ITEM_NAMES = { "name", "count", "p50", "p99", "p999", "max" };
+
+	private static final String[] ITEM_DESCRIPTIONS = { "The command or systemId", "The number of requests",
+			"The median latency (micros)", "The 99th percentile latency (micros)",
+			"The 99.9th percentile latency (micros)", "The maximum latency (micros)" };
+
+	private static final OpenType<?>[] ITEM_TYPES = { SimpleType.STRING, SimpleType.LONG, SimpleType.LONG,
+			SimpleType.LONG, SimpleType.LONG, SimpleType.LONG };
+
+	private static final CompositeType ROW_TYPE;
+
+	private static final TabularType TABLE_TYPE;
+
+	static {
+
+		try {
+
+			ROW_TYPE = new CompositeType("Latency", "The latency of the requests", ITEM_NAMES, ITEM_DESCRIPTIONS,
+					ITEM_TYPES);
+			TABLE_TYPE = new TabularType("Latencies", "The latency of the requests", ROW_TYPE,
+					new String[] { "name" });
+
+		} catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The histograms by command id; the ids of the requests go up to data_sm.
+	 */
+	private final AtomicReferenceArray<LatencyHistogram> byCommand =
+			new AtomicReferenceArray<>(SmppPacket.DATA_SM + 1);
+
+	private final ConcurrentMap<String, LatencyHistogram> bySystemId = new ConcurrentHashMap<>();
+
+	/**
+	 * Records the latency of a request.
+	 *
+	 * @param commandId the command id of the request.
+	 * @param systemId the systemId of the session or null if the session is not bound.
+	 * @param nanos the time from the moment the request was decoded to the moment the response was written.
+	 */
+	void record(int commandId, String systemId, long nanos) {
+
+		if (commandId >= 0 && commandId < byCommand.length()) {
+
+			LatencyHistogram histogram = byCommand.get(commandId);
+			if (histogram == null) {
+				byCommand.compareAndSet(commandId, null, new LatencyHistogram());
+				histogram = byCommand.get(commandId);
+			}
+
+			histogram.record(nanos);
+		}
+
+		if (systemId != null) {
+
+			// get first, so the common case doesn't lock nor allocate
+			LatencyHistogram histogram = bySystemId.get(systemId);
+			if (histogram == null) {
+				bySystemId.putIfAbsent(systemId, new LatencyHistogram());
+				histogram = bySystemId.get(systemId);
+			}
+
+			histogram.record(nanos);
+		}
+	}
+
+	/**
+	 * @return the histogram of the command or null if no request with the command id has been recorded.
+	 */
+	LatencyHistogram getCommandHistogram(int commandId) {
+		return commandId >= 0 && commandId < byCommand.length() ? byCommand.get(commandId) : null;
+	}
+
+	/**
+	 * @return the histogram of the systemId or null if no request of the systemId has been recorded.
+	 */
+	LatencyHistogram getSystemIdHistogram(String systemId) {
+		return bySystemId.get(systemId);
+	}
+
+	/**
+	 * @return a live view of the histograms by systemId.
+	 */
+	Map<String, LatencyHistogram> getSystemIdHistograms() {
+		return bySystemId;
+	}
+
+	/**
+	 * @return a row with the percentiles of each command.
+	 */
+	TabularData commandTable() {
+
+		TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+		for (int commandId = 0; commandId < byCommand.length(); commandId++) {
+
+			LatencyHistogram histogram = byCommand.get(commandId);
+			if (histogram != null) {
+				table.put(toCompositeData(SmppPacket.getCommandName(commandId), histogram));
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * @return a row with the percentiles of each systemId.
+	 */
+	TabularData systemIdTable() {
+
+		TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+		for (Map.Entry<String, LatencyHistogram> entry : bySystemId.entrySet()) {
+			table.put(toCompositeData(entry.getKey(), entry.getValue()));
+		}
+
+		return table;
+	}
+
+	/**
+	 * Forgets the recorded latencies.
+	 */
+	void reset() {
+
+		for (int commandId = 0; commandId < byCommand.length(); commandId++) {
+
+			LatencyHistogram histogram = byCommand.get(commandId);
+			if (histogram != null) {
+				histogram.reset();
+			}
+		}
+
+		for (LatencyHistogram histogram : bySystemId.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * @return the value in micros, the unit of the latencies exposed through JMX.
+	 */
+	static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	private static CompositeDataSupport toCompositeData(String name, LatencyHistogram histogram) {
+
+		Object[] values = { name, histogram.getCount(), toMicros(histogram.getPercentile(50)),
+				toMicros(histogram.getPercentile(99)), toMicros(histogram.getPercentile(99.9)),
+				toMicros(histogram.getMax()) };
+
+		try {
+			return new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, values);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
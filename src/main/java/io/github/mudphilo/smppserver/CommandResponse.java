@@ -0,0 +1,71 @@
+package io.github.mudphilo.smppserver;
+
+/**
+ * <p>The information used to build the response of a request: the command status and, for submit_sm, the message id.
+ * The {@link Response} constants implement this interface for the responses without a message id, use
+ * {@link Response#withMessageId(String)} or {@link #of(Response, String)} to create a response with a message id.</p>
+ *
+ * <p>Implementations must be immutable, so the same instance can be sent from any thread (or cached and sent more than
+ * once) without synchronization.</p>
+ */
+public interface CommandResponse {
+
+	/**
+	 * @return the command status of the response.
+	 */
+	int getCommandStatus();
+
+	/**
+	 * @return the message id of the response or null if it doesn't have one.
+	 */
+	String getMessageId();
+
+	/**
+	 * Creates a response with a message id.
+	 *
+	 * @param response the command status of the response.
+	 * @param messageId the message id of the response.
+	 *
+	 * @return an immutable CommandResponse.
+	 */
+	static CommandResponse of(Response response, String messageId) {
+
+		if (response == null) {
+			throw new IllegalArgumentException("No response specified");
+		}
+
+		return new MessageIdResponse(response.getCommandStatus(), messageId);
+	}
+
+	/**
+	 * The immutable {@link CommandResponse} returned by {@link CommandResponse#of(Response, String)}.
+	 */
+	final class MessageIdResponse implements CommandResponse {
+
+		private final int commandStatus;
+
+		private final String messageId;
+
+		private MessageIdResponse(int commandStatus, String messageId) {
+			this.commandStatus = commandStatus;
+			this.messageId = messageId;
+		}
+
+		@Override
+		public int getCommandStatus() {
+			return commandStatus;
+		}
+
+		@Override
+		public String getMessageId() {
+			return messageId;
+		}
+
+		@Override
+		public String toString() {
+			return "CommandResponse [commandStatus=" + commandStatus + ", messageId=" + messageId + "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,581 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.Address;
+import io.github.mudphilo.smppserver.packet.LazySubmitSm;
+import io.github.mudphilo.smppserver.packet.ShortMessageCodec;
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+import io.github.mudphilo.smppserver.packet.Tlv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Reassembles the long messages that the clients send as several submit_sm parts. The parts are identified by the
+ * concatenation information element of the user data header (8 or 16 bits reference, when the UDHI bit of the
+ * esm_class is set) or by the sar_msg_ref_num, sar_total_segments and sar_segment_seqnum optional parameters. Parts
+ * of the same message are matched by systemId, source address, destination address and reference. The user data
+ * is taken from the short_message or, if it's empty, from the message_payload optional parameter.</p>
+ *
+ * <p>Call {@link #add(String, SubmitSm)} from the {@link PacketProcessor} with each received submit_sm: it returns the
+ * {@link ConcatenatedMessage} when the last part arrives (or right away if the packet is not part of a long message)
+ * and null while parts are missing.</p>
+ *
+ * <p>The memory is bounded: incomplete messages are discarded when they are older than the timeout or, oldest first,
+ * when they exceed the maximum number of messages or bytes. The bytes of a message are estimated from everything it
+ * retains: the received packets of its parts (short message and optional parameters included) plus a fixed overhead
+ * per message and per expected part. The pending messages are split in segments, each with its own
+ * lock and a map in insertion order; as every message has the same timeout, the insertion order is also the expiration
+ * order, so expiring and evicting only look at the head of the map.</p>
+ */
+public class ConcatenationReassembler {
+
+	/**
+	 * The default maximum time (in millis) to wait for the missing parts of a message.
+	 */
+	public static final long DEFAULT_TIMEOUT = 60000;
+
+	/**
+	 * The default maximum number of bytes (estimated) held by the incomplete messages.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * The default maximum number of incomplete messages.
+	 */
+	public static final int DEFAULT_MAX_MESSAGES = 100000;
+
+	/**
+	 * The estimated bytes of an incomplete message besides its parts: the key, the map entry and the object itself.
+	 */
+	private static final int MESSAGE_OVERHEAD = 128;
+
+	/**
+	 * The estimated bytes of each expected part of an incomplete message: a slot in each of its two arrays.
+	 */
+	private static final int SLOT_OVERHEAD = 12;
+
+	/**
+	 * The estimated bytes of a received part besides its packet and optional parameters: the packet object and its
+	 * fields.
+	 */
+	private static final int PART_OVERHEAD = 128;
+
+	private static final byte ESM_CLASS_UDHI = 0x40;
+
+	private static final int IEI_CONCATENATED_8BIT_REF = 0x00;
+
+	private static final int IEI_CONCATENATED_16BIT_REF = 0x08;
+
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final long timeoutNanos;
+
+	private final AtomicLong completedMessages = new AtomicLong();
+
+	private final AtomicLong expiredMessages = new AtomicLong();
+
+	private final AtomicLong evictedMessages = new AtomicLong();
+
+	public ConcatenationReassembler() {
+		this(DEFAULT_TIMEOUT, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Constructor. Holds up to {@link #DEFAULT_MAX_MESSAGES} incomplete messages.
+	 *
+	 * @param timeout the maximum time (in millis) to wait for the missing parts of a message.
+	 * @param maxBytes the maximum number of bytes (estimated) held by the incomplete messages.
+	 */
+	public ConcatenationReassembler(long timeout, long maxBytes) {
+		this(timeout, maxBytes, DEFAULT_MAX_MESSAGES);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param timeout the maximum time (in millis) to wait for the missing parts of a message.
+	 * @param maxBytes the maximum number of bytes (estimated) held by the incomplete messages.
+	 * @param maxMessages the maximum number of incomplete messages.
+	 */
+	public ConcatenationReassembler(long timeout, long maxBytes, int maxMessages) {
+
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("timeout must be greater than 0");
+		}
+
+		if (maxBytes < SEGMENTS) {
+			throw new IllegalArgumentException("maxBytes must be at least " + SEGMENTS);
+		}
+
+		if (maxMessages < SEGMENTS) {
+			throw new IllegalArgumentException("maxMessages must be at least " + SEGMENTS);
+		}
+
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		for (int i=0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(maxBytes / SEGMENTS, maxMessages / SEGMENTS);
+		}
+	}
+
+	/**
+	 * Adds a received submit_sm.
+	 *
+	 * @param systemId the systemId of the session that received the packet.
+	 * @param submitSm the received packet.
+	 *
+	 * @return the complete message if this was the last missing part or the packet is not part of a long message,
+	 * null otherwise.
+	 */
+	public ConcatenatedMessage add(String systemId, SubmitSm submitSm) {
+
+		byte[] shortMessage = userData(submitSm);
+
+		int reference;
+		int total;
+		int seqnum;
+		int udhLength = 0;
+
+		if ((submitSm.getEsmClass() & ESM_CLASS_UDHI) != 0 && shortMessage != null && shortMessage.length > 0) {
+
+			udhLength = Math.min((shortMessage[0] & 0xFF) + 1, shortMessage.length);
+
+			int ie = findConcatenationElement(shortMessage, udhLength);
+			if (ie < 0) {
+				return single(submitSm, udhLength);
+			}
+
+			if ((shortMessage[ie] & 0xFF) == IEI_CONCATENATED_8BIT_REF) {
+				reference = shortMessage[ie + 2] & 0xFF;
+				total = shortMessage[ie + 3] & 0xFF;
+				seqnum = shortMessage[ie + 4] & 0xFF;
+			} else {
+				reference = ((shortMessage[ie + 2] & 0xFF) << 8) | (shortMessage[ie + 3] & 0xFF);
+				total = shortMessage[ie + 4] & 0xFF;
+				seqnum = shortMessage[ie + 5] & 0xFF;
+			}
+
+		} else {
+
+			reference = submitSm.getSarMsgRefNum();
+			total = submitSm.getSarTotalSegments();
+			seqnum = submitSm.getSarSegmentSeqnum();
+
+			if (reference < 0 || total < 0 || seqnum < 0) {
+				return single(submitSm, 0);
+			}
+		}
+
+		// parts that don't make sense are handled as independent messages
+		if (total <= 1 || seqnum < 1 || seqnum > total) {
+			return single(submitSm, udhLength);
+		}
+
+		Key key = new Key(systemId, submitSm.getSourceAddress(), submitSm.getDestAddress(), reference);
+		Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+
+		ConcatenatedMessage message = segment.add(key, total, seqnum, submitSm, udhLength, System.nanoTime());
+		if (message != null) {
+			completedMessages.incrementAndGet();
+		}
+
+		return message;
+	}
+
+	/**
+	 * Discards the incomplete messages that are older than the timeout. This is done anyway each time a part is added
+	 * to a segment, call this method periodically to release the memory when no parts are received.
+	 */
+	public void expire() {
+
+		long now = System.nanoTime();
+		for (Segment segment : segments) {
+			segment.expire(now);
+		}
+	}
+
+	/**
+	 * @return the number of messages waiting for missing parts.
+	 */
+	public int getPendingMessages() {
+
+		int pending = 0;
+		for (Segment segment : segments) {
+			pending += segment.size();
+		}
+
+		return pending;
+	}
+
+	/**
+	 * @return the number of bytes (estimated) held by the messages waiting for missing parts.
+	 */
+	public long getPendingBytes() {
+
+		long bytes = 0;
+		for (Segment segment : segments) {
+			bytes += segment.bytes();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * @return the number of long messages that were completed.
+	 */
+	public long getCompletedMessages() {
+		return completedMessages.get();
+	}
+
+	/**
+	 * @return the number of incomplete messages that were discarded because of the timeout.
+	 */
+	public long getExpiredMessages() {
+		return expiredMessages.get();
+	}
+
+	/**
+	 * @return the number of incomplete messages that were discarded because of the memory or messages limit.
+	 */
+	public long getEvictedMessages() {
+		return evictedMessages.get();
+	}
+
+	/**
+	 * Helper method. Finds the concatenation information element in the user data header.
+	 *
+	 * @return the index of the information element or -1 if there is none.
+	 */
+	private static int findConcatenationElement(byte[] shortMessage, int udhLength) {
+
+		int index = 1;
+		while (index + 1 < udhLength) {
+
+			int iei = shortMessage[index] & 0xFF;
+			int length = shortMessage[index + 1] & 0xFF;
+
+			if (index + 2 + length > udhLength) {
+				return -1;
+			}
+
+			if ((iei == IEI_CONCATENATED_8BIT_REF && length == 3) || (iei == IEI_CONCATENATED_16BIT_REF && length == 4)) {
+				return index;
+			}
+
+			index += 2 + length;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Helper method. The user data of a part: the short message or, if it's empty, the message_payload.
+	 *
+	 * @return the user data (not a copy) or null if the part has none.
+	 */
+	private static byte[] userData(SubmitSm submitSm) {
+
+		byte[] shortMessage = submitSm.getShortMessageBytes();
+		if (shortMessage != null && shortMessage.length > 0) {
+			return shortMessage;
+		}
+
+		byte[] messagePayload = submitSm.getMessagePayload();
+		return messagePayload != null ? messagePayload : shortMessage;
+	}
+
+	/**
+	 * Helper method. Estimates the bytes retained by a part: its received packet (if it's backed by one) plus the
+	 * short message and optional parameters that were copied out of it.
+	 */
+	private static long retainedBytes(SubmitSm part) {
+
+		long bytes = PART_OVERHEAD;
+
+		if (part instanceof LazySubmitSm) {
+			bytes += ((LazySubmitSm) part).getPduLength();
+		}
+
+		byte[] shortMessage = part.getShortMessageBytes();
+		if (shortMessage != null) {
+			bytes += shortMessage.length;
+		}
+
+		for (Tlv tlv : part.getOptionalParameters()) {
+			bytes += SLOT_OVERHEAD + (tlv.getValue() != null ? tlv.getValue().length : 0);
+		}
+
+		return bytes;
+	}
+
+	private static ConcatenatedMessage single(SubmitSm submitSm, int udhLength) {
+		return new ConcatenatedMessage(new SubmitSm[] { submitSm }, new int[] { udhLength });
+	}
+
+	/**
+	 * A message that is complete: either a long message with all its parts or a packet that is not part of a long
+	 * message.
+	 */
+	public static final class ConcatenatedMessage {
+
+		private final List<SubmitSm> parts;
+
+		private final int[] udhLengths;
+
+		private ConcatenatedMessage(SubmitSm[] parts, int[] udhLengths) {
+			this.parts = Collections.unmodifiableList(Arrays.asList(parts));
+			this.udhLengths = udhLengths;
+		}
+
+		/**
+		 * @return the parts of the message in order.
+		 */
+		public List<SubmitSm> getParts() {
+			return parts;
+		}
+
+		/**
+		 * @return the first part, which has the addresses and the data_coding of the message.
+		 */
+		public SubmitSm getFirstPart() {
+			return parts.get(0);
+		}
+
+		/**
+		 * @return the user data (short message or message_payload) of all the parts, without the user data headers,
+		 * one after the other.
+		 */
+		public byte[] getUserData() {
+
+			int length = 0;
+			for (int i=0; i < parts.size(); i++) {
+				length += userDataLength(i);
+			}
+
+			byte[] userData = new byte[length];
+
+			int offset = 0;
+			for (int i=0; i < parts.size(); i++) {
+
+				int partLength = userDataLength(i);
+				if (partLength > 0) {
+					System.arraycopy(userData(parts.get(i)), udhLengths[i], userData, offset, partLength);
+					offset += partLength;
+				}
+			}
+
+			return userData;
+		}
+
+		/**
+		 * @return the text of the message, decoded with the data_coding of the first part.
+		 */
+		public String getText() {
+			return ShortMessageCodec.decode(getUserData(), getFirstPart().getDataCoding());
+		}
+
+		private int userDataLength(int part) {
+
+			byte[] userData = userData(parts.get(part));
+			return userData == null ? 0 : userData.length - udhLengths[part];
+		}
+
+	}
+
+	/**
+	 * Identifies the parts of a message.
+	 */
+	private static final class Key {
+
+		private final String systemId;
+
+		private final String source;
+
+		private final String destination;
+
+		private final int reference;
+
+		private final int hash;
+
+		Key(String systemId, Address source, Address destination, int reference) {
+
+			this.systemId = systemId;
+			this.source = source != null ? source.getAddressField() : null;
+			this.destination = destination != null ? destination.getAddressField() : null;
+			this.reference = reference;
+			this.hash = Objects.hash(systemId, this.source, this.destination, reference);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) o;
+			return reference == other.reference && Objects.equals(systemId, other.systemId)
+					&& Objects.equals(source, other.source) && Objects.equals(destination, other.destination);
+		}
+
+	}
+
+	/**
+	 * The parts received of an incomplete message.
+	 */
+	private static final class Pending {
+
+		private final SubmitSm[] parts;
+
+		private final int[] udhLengths;
+
+		private final long createdAt;
+
+		private int received;
+
+		private long bytes;
+
+		Pending(int total, long createdAt) {
+			this.parts = new SubmitSm[total];
+			this.udhLengths = new int[total];
+			this.createdAt = createdAt;
+			this.bytes = MESSAGE_OVERHEAD + (long) total * SLOT_OVERHEAD;
+		}
+
+	}
+
+	/**
+	 * A lock and the incomplete messages of some of the keys, in insertion (and so expiration) order.
+	 */
+	private final class Segment {
+
+		private final Map<Key, Pending> pending = new LinkedHashMap<>();
+
+		private final long maxBytes;
+
+		private final int maxMessages;
+
+		private long bytes;
+
+		Segment(long maxBytes, int maxMessages) {
+			this.maxBytes = maxBytes;
+			this.maxMessages = maxMessages;
+		}
+
+		synchronized ConcatenatedMessage add(Key key, int total, int seqnum, SubmitSm part, int udhLength, long now) {
+
+			expire(now);
+
+			Pending message = pending.get(key);
+
+			// a different total means a new message is reusing the reference
+			if (message != null && message.parts.length != total) {
+				remove(key, message);
+				message = null;
+			}
+
+			if (message == null) {
+				message = new Pending(total, now);
+				pending.put(key, message);
+				bytes += message.bytes;
+			}
+
+			// duplicated parts are ignored
+			if (message.parts[seqnum - 1] != null) {
+				return null;
+			}
+
+			long partBytes = retainedBytes(part);
+
+			message.parts[seqnum - 1] = part;
+			message.udhLengths[seqnum - 1] = udhLength;
+			message.received++;
+			message.bytes += partBytes;
+			bytes += partBytes;
+
+			if (message.received == total) {
+				remove(key, message);
+				return new ConcatenatedMessage(message.parts, message.udhLengths);
+			}
+
+			evict(message);
+
+			return null;
+		}
+
+		synchronized void expire(long now) {
+
+			Iterator<Pending> iterator = pending.values().iterator();
+			while (iterator.hasNext()) {
+
+				Pending message = iterator.next();
+				if (now - message.createdAt < timeoutNanos) {
+					return;
+				}
+
+				iterator.remove();
+				bytes -= message.bytes;
+				expiredMessages.incrementAndGet();
+			}
+		}
+
+		synchronized int size() {
+			return pending.size();
+		}
+
+		synchronized long bytes() {
+			return bytes;
+		}
+
+		/**
+		 * Discards the oldest messages until the segment is under the limits. The message that just received a part
+		 * is discarded last, only if it's over the limits by itself.
+		 */
+		private void evict(Pending current) {
+
+			Iterator<Pending> iterator = pending.values().iterator();
+			while (overLimits() && iterator.hasNext()) {
+
+				Pending message = iterator.next();
+				if (message == current) {
+					continue;
+				}
+
+				iterator.remove();
+				bytes -= message.bytes;
+				evictedMessages.incrementAndGet();
+			}
+
+			if (overLimits()) {
+				pending.values().remove(current);
+				bytes -= current.bytes;
+				evictedMessages.incrementAndGet();
+			}
+		}
+
+		private boolean overLimits() {
+			return bytes > maxBytes || pending.size() > maxMessages;
+		}
+
+		private void remove(Key key, Pending message) {
+			pending.remove(key);
+			bytes -= message.bytes;
+		}
+
+	}
+
+}
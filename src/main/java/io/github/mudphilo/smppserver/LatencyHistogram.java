@@ -0,0 +1,190 @@
+package io.github.mudphilo.smppserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A lock-free, fixed-size histogram of latencies (in nanoseconds) with log-linear buckets, like HdrHistogram:
+ * each power of two is split in 32 linear buckets, so the values are recorded with a relative error under 3.2% from
+ * nanoseconds up to {@link #MAX_VALUE} (about 18 minutes; larger values are recorded as {@link #MAX_VALUE}).</p>
+ *
+ * <p>Recording a value is a few bit operations and an atomic increment, without allocating objects, so it can be
+ * done from any thread in the hot path. Reading the percentiles walks the buckets and is meant for monitoring.</p>
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The largest value that can be recorded, about 18 minutes in nanos.
+	 */
+	public static final long MAX_VALUE = (1L << 40) - 1;
+
+	/**
+	 * The bits of the linear part of the buckets: each power of two is split in 2^SUB_BUCKET_BITS buckets.
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The values below SUB_BUCKETS have a bucket each, then SUB_BUCKETS buckets per power of two up to MAX_VALUE.
+	 */
+	private static final int BUCKETS = SUB_BUCKETS + (63 - Long.numberOfLeadingZeros(MAX_VALUE) - SUB_BUCKET_BITS + 1)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param nanos the latency in nanos, negative values are recorded as 0.
+	 */
+	public void record(long nanos) {
+
+		long value = nanos < 0 ? 0 : nanos > MAX_VALUE ? MAX_VALUE : nanos;
+		counts.incrementAndGet(bucket(value));
+
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * @return the number of recorded values.
+	 */
+	public long getCount() {
+
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return the largest recorded value (in nanos) or 0 if nothing has been recorded.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 (exclusive) and 100 (inclusive), e.g. 99.9.
+	 *
+	 * @return the value (in nanos) below which the percentile of the recorded values falls (within the precision of
+	 * the buckets) or 0 if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+
+		if (percentile <= 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be greater than 0 and at most 100");
+		}
+
+		// a copy, so the walk is consistent while values are being recorded
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * Calculates several percentiles in a single walk of the buckets without creating any object, e.g. to export them
+	 * frequently. Unlike {@link #getPercentile(double)}, values recorded during the walk can make the results slightly
+	 * inconsistent.
+	 *
+	 * @param percentiles the percentiles in ascending order, each greater than 0 and at most 100.
+	 * @param values receives the value (in nanos) of each percentile, 0 if nothing has been recorded.
+	 */
+	public void getPercentiles(double[] percentiles, long[] values) {
+
+		if (values.length < percentiles.length) {
+			throw new IllegalArgumentException("values must have room for all the percentiles");
+		}
+
+		long count = getCount();
+		long currentMax = getMax();
+
+		int next = 0;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS && next < percentiles.length; i++) {
+
+			seen += counts.get(i);
+			while (next < percentiles.length && seen >= Math.max(1, (long) Math.ceil(count * percentiles[next] / 100))) {
+				values[next++] = count == 0 ? 0 : Math.min(highestValue(i), currentMax);
+			}
+		}
+
+		// values recorded after counting can leave the highest percentiles unreached
+		while (next < percentiles.length) {
+			values[next++] = count == 0 ? 0 : currentMax;
+		}
+	}
+
+	/**
+	 * Forgets the recorded values. Values recorded while resetting may or may not be kept.
+	 */
+	public void reset() {
+
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+
+		max.set(0);
+	}
+
+	/**
+	 * Helper method. Finds the bucket of a value between 0 and {@link #MAX_VALUE}.
+	 */
+	private static int bucket(long value) {
+
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		// the position of the highest bit (at least SUB_BUCKET_BITS) selects the power of two, the next bits the
+		// linear bucket inside it
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Helper method. The highest value that falls in a bucket.
+	 */
+	private static long highestValue(int bucket) {
+
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+}
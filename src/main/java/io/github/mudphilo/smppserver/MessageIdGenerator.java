@@ -0,0 +1,133 @@
+package io.github.mudphilo.smppserver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Generates the message ids of the submit_sm_resp packets. The ids are 28 hexadecimal characters (well within the
+ * 65 octets allowed by SMPP) made of two parts:</p>
+ *
+ * <ul>
+ * 	<li>A time-ordered 64 bits counter: the milliseconds since 2020-01-01 (44 bits) followed by a sequence (20 bits),
+ * 	so the ids sort by the time they were generated and up to a million ids can be generated each millisecond.</li>
+ * 	<li>The 48 bits id of the node, chosen randomly when the generator is created (or set explicitly), which keeps the
+ * 	ids of different server instances apart without any coordination.</li>
+ * </ul>
+ *
+ * <p>The generator is lock-free: the counter is a single <code>AtomicLong</code> that never goes backwards, so the ids
+ * are still unique if the clock is adjusted or the sequence of a millisecond is exhausted (the counter just borrows
+ * from the next millisecond).</p>
+ */
+public class MessageIdGenerator {
+
+	/**
+	 * The length of the generated ids.
+	 */
+	public static final int ID_LENGTH = 28;
+
+	/**
+	 * The maximum id of a node.
+	 */
+	public static final long MAX_NODE_ID = (1L << 48) - 1;
+
+	/**
+	 * 2020-01-01T00:00:00Z, the timestamps are relative to this date.
+	 */
+	private static final long EPOCH = 1577836800000L;
+
+	private static final int SEQUENCE_BITS = 20;
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The last generated counter: the timestamp in the high bits and the sequence in the low bits.
+	 */
+	private final AtomicLong counter = new AtomicLong();
+
+	private final long nodeId;
+
+	/**
+	 * Constructor. Creates an instance with a random node id.
+	 */
+	public MessageIdGenerator() {
+		this(new SecureRandom().nextLong() & MAX_NODE_ID);
+	}
+
+	/**
+	 * Constructor. Creates an instance with the specified node id, which must be different on each server instance.
+	 *
+	 * @param nodeId the id of the node, between 0 and {@link #MAX_NODE_ID}.
+	 */
+	public MessageIdGenerator(long nodeId) {
+
+		if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+			throw new IllegalArgumentException("nodeId must be between 0 and " + MAX_NODE_ID);
+		}
+
+		this.nodeId = nodeId;
+	}
+
+	/**
+	 * @return a new message id.
+	 */
+	public String nextId() {
+
+		byte[] id = new byte[ID_LENGTH];
+		nextId(id, 0);
+
+		return new String(id, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Writes a new message id (ASCII, without null terminator) in the array without creating any object.
+	 *
+	 * @param destination the array in which the id is written.
+	 * @param offset the index of the array in which the id starts.
+	 *
+	 * @return the index right after the id.
+	 * @throws IndexOutOfBoundsException if there is no room for {@link #ID_LENGTH} bytes.
+	 */
+	public int nextId(byte[] destination, int offset) {
+
+		if (offset < 0 || offset + ID_LENGTH > destination.length) {
+			throw new IndexOutOfBoundsException("No room for the message id at index " + offset);
+		}
+
+		offset = writeHex(nextCounter(), 16, destination, offset);
+		return writeHex(nodeId, 12, destination, offset);
+	}
+
+	/**
+	 * @return the id of the node that is part of the generated ids.
+	 */
+	public long getNodeId() {
+		return nodeId;
+	}
+
+	private long nextCounter() {
+
+		long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+
+		while (true) {
+
+			long last = counter.get();
+			long next = now > last ? now : last + 1;
+
+			if (counter.compareAndSet(last, next)) {
+				return next;
+			}
+		}
+	}
+
+	private static int writeHex(long value, int digits, byte[] destination, int offset) {
+
+		for (int i = digits - 1; i >= 0; i--) {
+			destination[offset + i] = HEX_DIGITS[(int) (value & 0x0F)];
+			value >>>= 4;
+		}
+
+		return offset + digits;
+	}
+
+}
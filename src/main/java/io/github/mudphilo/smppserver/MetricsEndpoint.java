@@ -0,0 +1,510 @@
+package io.github.mudphilo.smppserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Exposes the metrics of a server in the OpenMetrics text format (the format scraped by Prometheus) at
+ * <code>http://&lt;host&gt;:&lt;port&gt;/metrics</code>, using the HTTP server of the JDK (see
+ * {@link SmppServer#setMetricsPort(int)}): the sessions, the PDUs by command, the responses by command status, the
+ * bytes, the latencies by command and systemId (as summaries) and the occupancy of the windows.</p>
+ *
+ * <p>The scrapes are handled one at a time by a thread of the endpoint, never by the I/O or processing threads. The
+ * metrics are rendered into a byte buffer that is reused by every scrape (it only grows when the metrics don't fit),
+ * with the numbers and labels encoded by hand, so a scrape doesn't create garbage beyond the HTTP exchange
+ * itself.</p>
+ */
+public final class MetricsEndpoint {
+
+	private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * The percentiles exported for each latency histogram and their <code>quantile</code> labels.
+	 */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+	private static final int[] COMMAND_IDS = TrafficCounters.getCountedCommandIds();
+
+	/**
+	 * The names of {@link #COMMAND_IDS}, so they are not built on each scrape.
+	 */
+	private static final String[] COMMAND_NAMES = new String[COMMAND_IDS.length];
+
+	static {
+		for (int i = 0; i < COMMAND_IDS.length; i++) {
+			COMMAND_NAMES[i] = SmppPacket.getCommandName(COMMAND_IDS[i]);
+		}
+	}
+
+	/**
+	 * A copy of <code>Response.values()</code>, which creates a new array on each call.
+	 */
+	private static final Response[] RESPONSES = Response.values();
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+	private final SmppServer server;
+
+	private final String serverName;
+
+	private final int port;
+
+	private HttpServer httpServer;
+
+	private ExecutorService executor;
+
+	/**
+	 * The rendered metrics, only used by the thread that handles the scrapes.
+	 */
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+	private int length;
+
+	/**
+	 * Receives the percentiles of a histogram.
+	 */
+	private final long[] percentileValues = new long[PERCENTILES.length];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param server the server whose metrics are exposed.
+	 * @param serverName the name of the server, used to name the thread that handles the scrapes.
+	 * @param port the port the HTTP server listens to.
+	 */
+	MetricsEndpoint(SmppServer server, String serverName, int port) {
+		this.server = server;
+		this.serverName = serverName;
+		this.port = port;
+	}
+
+	/**
+	 * Starts listening to scrapes.
+	 *
+	 * @throws IOException if the HTTP server can't listen to the port.
+	 */
+	void start() throws IOException {
+
+		httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+		httpServer.createContext("/metrics", new ScrapeHandler());
+
+		executor = Executors.newSingleThreadExecutor(new ScrapeThreadFactory(serverName));
+		httpServer.setExecutor(executor);
+
+		httpServer.start();
+	}
+
+	/**
+	 * Stops listening to scrapes.
+	 */
+	void stop() {
+
+		if (httpServer != null) {
+			httpServer.stop(0);
+			httpServer = null;
+		}
+
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return the port the HTTP server listens to.
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Renders the metrics into the buffer, from position 0. Not thread-safe, it's called by the thread that handles
+	 * the scrapes.
+	 *
+	 * @return the number of bytes rendered.
+	 */
+	int render() {
+
+		length = 0;
+
+		gauge("smpp_sessions", "The connected sessions", server.getActiveSessions());
+		gauge("smpp_bound_sessions", "The bound sessions", countBoundSessions());
+		counter("smpp_sessions_created", "The sessions created", server.getCreatedSessions());
+		counter("smpp_sessions_destroyed", "The sessions destroyed", server.getDestroyedSessions());
+		counter("smpp_idle_sessions_closed", "The sessions closed by the keepalive", server.getClosedIdleSessions());
+		counter("smpp_bind_timeouts", "The connections closed because they didn't bind in time",
+				server.getBindTimeouts());
+		counter("smpp_response_timeouts", "The requests answered because the processor didn't answer in time",
+				server.getTimedOutResponses());
+		counter("smpp_deliver_failovers", "The deliver_sm retried on another session", server.getDeliverFailovers());
+
+		renderTraffic(server.getTrafficCounters());
+		renderWindows();
+		renderLatencies(server.getLatencies());
+
+		append("# EOF\n");
+
+		return length;
+	}
+
+	/**
+	 * @return the buffer with the rendered metrics, valid up to the length returned by {@link #render()}.
+	 */
+	byte[] getBuffer() {
+		return buffer;
+	}
+
+	private int countBoundSessions() {
+
+		int bound = 0;
+		for (SmppSession session : server.getSessions()) {
+			if (session.isBound()) {
+				bound++;
+			}
+		}
+
+		return bound;
+	}
+
+	private void renderTraffic(TrafficCounters traffic) {
+
+		header("smpp_pdus_received", "counter", "The PDUs received by command");
+		for (int i = 0; i < COMMAND_IDS.length; i++) {
+			sample("smpp_pdus_received_total", "command", COMMAND_NAMES[i], traffic.getPdusIn(COMMAND_IDS[i]));
+		}
+
+		header("smpp_pdus_sent", "counter", "The PDUs sent by command");
+		for (int i = 0; i < COMMAND_IDS.length; i++) {
+			sample("smpp_pdus_sent_total", "command", COMMAND_NAMES[i], traffic.getPdusOut(COMMAND_IDS[i]));
+		}
+
+		header("smpp_responses_sent", "counter", "The responses sent by command status");
+		for (Map.Entry<Integer, LongAdder> entry : traffic.getResponseCounters().entrySet()) {
+
+			append("smpp_responses_sent_total{status=\"");
+			appendStatus(entry.getKey());
+			append("\"} ");
+			appendLong(entry.getValue().sum());
+			appendByte('\n');
+		}
+
+		counter("smpp_bytes_received", "The bytes read from the clients", traffic.getBytesIn());
+		counter("smpp_bytes_sent", "The bytes written to the clients", traffic.getBytesOut());
+	}
+
+	private void renderWindows() {
+
+		long pendingRequests = 0;
+		long sendWindowSize = 0;
+		long inflightRequests = 0;
+		for (SmppSession session : server.getSessions()) {
+			pendingRequests += session.getPendingRequests();
+			sendWindowSize += session.getSendWindowSize();
+			inflightRequests += session.getInflightRequests();
+		}
+
+		gauge("smpp_send_window_pending", "The requests sent to the clients waiting for a response", pendingRequests);
+		gauge("smpp_send_window_size", "The requests that can be waiting for a response", sendWindowSize);
+		gauge("smpp_inflight_requests", "The requests received from the clients waiting for a response",
+				inflightRequests);
+	}
+
+	private void renderLatencies(CommandLatencies latencies) {
+
+		header("smpp_request_latency_seconds", "summary", "The time from a request to its response by command");
+		for (int i = 0; i < COMMAND_IDS.length; i++) {
+
+			LatencyHistogram histogram = latencies.getCommandHistogram(COMMAND_IDS[i]);
+			if (histogram != null) {
+				summary("smpp_request_latency_seconds", "command", COMMAND_NAMES[i], histogram);
+			}
+		}
+
+		header("smpp_system_id_latency_seconds", "summary", "The time from a request to its response by systemId");
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.getSystemIdHistograms().entrySet()) {
+			summary("smpp_system_id_latency_seconds", "system_id", entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void gauge(String name, String help, long value) {
+		header(name, "gauge", help);
+		sample(name, value);
+	}
+
+	/**
+	 * Helper method. Renders a counter, the sample is named <code>&lt;name&gt;_total</code>.
+	 */
+	private void counter(String name, String help, long value) {
+
+		header(name, "counter", help);
+
+		append(name);
+		append("_total ");
+		appendLong(value);
+		appendByte('\n');
+	}
+
+	private void summary(String name, String labelName, String labelValue, LatencyHistogram histogram) {
+
+		histogram.getPercentiles(PERCENTILES, percentileValues);
+
+		for (int i = 0; i < PERCENTILES.length; i++) {
+
+			append(name);
+			appendByte('{');
+			append(labelName);
+			append("=\"");
+			appendLabelValue(labelValue);
+			append("\",quantile=\"");
+			append(QUANTILES[i]);
+			append("\"} ");
+			appendSeconds(percentileValues[i]);
+			appendByte('\n');
+		}
+
+		append(name);
+		append("_count{");
+		append(labelName);
+		append("=\"");
+		appendLabelValue(labelValue);
+		append("\"} ");
+		appendLong(histogram.getCount());
+		appendByte('\n');
+	}
+
+	private void header(String name, String type, String help) {
+
+		append("# TYPE ");
+		append(name);
+		appendByte(' ');
+		append(type);
+		append("\n# HELP ");
+		append(name);
+		appendByte(' ');
+		append(help);
+		appendByte('\n');
+	}
+
+	private void sample(String name, long value) {
+
+		append(name);
+		appendByte(' ');
+		appendLong(value);
+		appendByte('\n');
+	}
+
+	private void sample(String name, String labelName, String labelValue, long value) {
+
+		append(name);
+		appendByte('{');
+		append(labelName);
+		append("=\"");
+		appendLabelValue(labelValue);
+		append("\"} ");
+		appendLong(value);
+		appendByte('\n');
+	}
+
+	/**
+	 * Helper method. Appends a string that is known to be ASCII (names, help texts).
+	 */
+	private void append(String ascii) {
+
+		ensureCapacity(ascii.length());
+		for (int i = 0; i < ascii.length(); i++) {
+			buffer[length++] = (byte) ascii.charAt(i);
+		}
+	}
+
+	/**
+	 * Helper method. Appends a label value encoded in UTF-8, escaping the backslashes, double quotes and line feeds.
+	 */
+	private void appendLabelValue(String value) {
+
+		// the worst case is 3 bytes per char, a surrogate pair takes 4 bytes for 2 chars
+		ensureCapacity(value.length() * 3);
+
+		for (int i = 0; i < value.length(); i++) {
+
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				buffer[length++] = '\\';
+				buffer[length++] = (byte) c;
+			} else if (c == '\n') {
+				buffer[length++] = '\\';
+				buffer[length++] = 'n';
+			} else if (c < 0x80) {
+				buffer[length++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[length++] = (byte) (0xc0 | (c >> 6));
+				buffer[length++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				// an unpaired surrogate can't be encoded
+				buffer[length++] = '?';
+			} else {
+				buffer[length++] = (byte) (0xe0 | (c >> 12));
+				buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	/**
+	 * Helper method. Appends the name of a command status or its hexadecimal value if it's not a known status.
+	 */
+	private void appendStatus(int commandStatus) {
+
+		for (Response response : RESPONSES) {
+			if (response.getCommandStatus() == commandStatus) {
+				append(response.name());
+				return;
+			}
+		}
+
+		ensureCapacity(10);
+		buffer[length++] = '0';
+		buffer[length++] = 'x';
+		for (int shift = 28; shift >= 0; shift -= 4) {
+			buffer[length++] = HEX_DIGITS[(commandStatus >>> shift) & 0xf];
+		}
+	}
+
+	/**
+	 * Helper method. Appends the decimal digits of a value.
+	 */
+	private void appendLong(long value) {
+
+		if (value == Long.MIN_VALUE) {
+			append("-9223372036854775808");
+			return;
+		}
+
+		ensureCapacity(20);
+
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+
+		// the digits are written backwards and then reversed in place
+		int start = length;
+		do {
+			buffer[length++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+
+		for (int i = start, j = length - 1; i < j; i++, j--) {
+			byte digit = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = digit;
+		}
+	}
+
+	/**
+	 * Helper method. Appends a value in nanos as seconds with 9 decimals, which is exact.
+	 */
+	private void appendSeconds(long nanos) {
+
+		appendLong(nanos / 1000000000L);
+
+		ensureCapacity(10);
+		buffer[length++] = '.';
+
+		long fraction = nanos % 1000000000L;
+		for (long divisor = 100000000L; divisor > 0; divisor /= 10) {
+			buffer[length++] = (byte) ('0' + fraction / divisor % 10);
+		}
+	}
+
+	private void appendByte(char c) {
+		ensureCapacity(1);
+		buffer[length++] = (byte) c;
+	}
+
+	private void ensureCapacity(int bytes) {
+
+		if (length + bytes > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+		}
+	}
+
+	/**
+	 * Answers the scrapes with the rendered metrics.
+	 */
+	private class ScrapeHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+
+			try {
+
+				String method = exchange.getRequestMethod();
+				if (!"GET".equals(method) && !"HEAD".equals(method)) {
+					exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+
+				int bytes = render();
+
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				if ("HEAD".equals(method)) {
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+
+				exchange.sendResponseHeaders(200, bytes);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(buffer, 0, bytes);
+				}
+
+			} finally {
+				exchange.close();
+			}
+		}
+
+	}
+
+	private static class ScrapeThreadFactory implements ThreadFactory {
+
+		private final String serverName;
+
+		public ScrapeThreadFactory(String serverName) {
+			this.serverName = serverName;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+
+			Thread thread = new Thread(runnable, "smpp-metrics-" + serverName);
+			thread.setDaemon(true);
+
+			return thread;
+		}
+
+	}
+
+}
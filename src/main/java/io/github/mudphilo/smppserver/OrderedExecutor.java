@@ -0,0 +1,171 @@
+package io.github.mudphilo.smppserver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A bounded, striped executor used to process the SMPP packets outside the Netty I/O threads. Each key (the id of
+ * the session) is always assigned to the same single-threaded stripe, so the tasks of a session are executed in the
+ * order they were submitted while different sessions are processed in parallel.</p>
+ *
+ * <p>The queue of each stripe is bounded; when it is full, {@link #execute(int, Runnable)} throws a
+ * <code>RejectedExecutionException</code> instead of blocking the caller.</p>
+ */
+public class OrderedExecutor {
+
+	/**
+	 * The single-threaded executors, one for each stripe.
+	 */
+	private final ThreadPoolExecutor[] stripes;
+
+	/**
+	 * The maximum number of pending tasks of each stripe.
+	 */
+	private final int queueCapacity;
+
+	/**
+	 * Counts the tasks that were rejected because the queue of their stripe was full.
+	 */
+	private final AtomicLong rejectedTasks = new AtomicLong();
+
+	/**
+	 * Constructor. Creates an instance with the specified number of threads (stripes) and queue capacity per thread.
+	 *
+	 * @param threads the number of threads that will process the tasks.
+	 * @param queueCapacity the maximum number of pending tasks of each thread.
+	 */
+	public OrderedExecutor(int threads, int queueCapacity) {
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be greater than 0");
+		}
+
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("queueCapacity must be greater than 0");
+		}
+
+		this.queueCapacity = queueCapacity;
+		this.stripes = new ThreadPoolExecutor[threads];
+
+		for (int i=0; i < threads; i++) {
+			stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueCapacity), new StripeThreadFactory(i));
+		}
+	}
+
+	/**
+	 * Executes the task in the stripe of the <code>key</code>. Tasks submitted with the same key are executed in
+	 * order, one at a time.
+	 *
+	 * @param key usually the id of the session.
+	 * @param task the task to execute.
+	 *
+	 * @throws RejectedExecutionException if the queue of the stripe is full or the executor was shut down.
+	 */
+	public void execute(int key, Runnable task) throws RejectedExecutionException {
+
+		try {
+			stripes[ (key & Integer.MAX_VALUE) % stripes.length ].execute(task);
+		} catch (RejectedExecutionException e) {
+			rejectedTasks.incrementAndGet();
+			throw e;
+		}
+
+	}
+
+	/**
+	 * @return the number of tasks waiting to be executed in all the stripes.
+	 */
+	public int getQueueSize() {
+
+		int size = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			size += stripe.getQueue().size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return the number of tasks waiting to be executed in the most loaded stripe.
+	 */
+	public int getMaxStripeQueueSize() {
+
+		int max = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			max = Math.max(max, stripe.getQueue().size());
+		}
+
+		return max;
+	}
+
+	/**
+	 * @return the number of tasks that have been executed.
+	 */
+	public long getCompletedTasks() {
+
+		long completed = 0;
+		for (ThreadPoolExecutor stripe : stripes) {
+			completed += stripe.getCompletedTaskCount();
+		}
+
+		return completed;
+	}
+
+	/**
+	 * @return the number of tasks that were rejected because the queue of their stripe was full.
+	 */
+	public long getRejectedTasks() {
+		return rejectedTasks.get();
+	}
+
+	/**
+	 * @return the maximum number of pending tasks of each stripe.
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return the number of threads (stripes).
+	 */
+	public int getThreads() {
+		return stripes.length;
+	}
+
+	/**
+	 * Stops accepting tasks. The pending tasks are still executed.
+	 */
+	public void shutdown() {
+		for (ThreadPoolExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+	}
+
+	/**
+	 * Names the threads of the stripes so they are easy to spot in a thread dump.
+	 */
+	private static class StripeThreadFactory implements ThreadFactory {
+
+		private final int stripe;
+
+		public StripeThreadFactory(int stripe) {
+			this.stripe = stripe;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+
+			Thread thread = new Thread(runnable, "smpp-processor-" + stripe);
+			thread.setDaemon(true);
+
+			return thread;
+		}
+
+	}
+
+}
@@ -8,7 +8,7 @@ import java.sql.SQLException;
 
 /**
  * This interface is implemented by those who want to process incoming SMPP packets received in a 
- * {@link SmppSession}.
+ * {@link SmppSession}. Enquire_link packets are answered by the session and never reach the processor.
  * 
  * @author German Escobar
  */
@@ -0,0 +1,238 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.jmx.annotation.Impact;
+import io.github.mudphilo.jmx.annotation.ManagedAttribute;
+import io.github.mudphilo.jmx.annotation.ManagedOperation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Limits the number of submit_sm packets per second that each systemId can send. There is one token bucket per
+ * systemId (shared by all the sessions bound with it) that allows a burst of one second worth of packets. Packets
+ * over the limit are answered with {@link Response#THROTTLING_ERROR} by the {@link SmppSession} without calling the
+ * {@link PacketProcessor}.</p>
+ *
+ * <p>The buckets are lock-free: each one is a single <code>AtomicLong</code> holding the theoretical arrival time of
+ * the next packet (the GCRA formulation of a token bucket). The limits can be changed at runtime, also through JMX.</p>
+ */
+public class RateLimiter {
+
+	/**
+	 * The buckets by systemId.
+	 */
+	private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * The limit (packets per second) of the systemIds without a specific limit. If 0, there is no limit.
+	 */
+	private volatile int defaultLimit;
+
+	/**
+	 * Counts the packets that were rejected because they were over the limit.
+	 */
+	private final AtomicLong throttledRequests = new AtomicLong();
+
+	/**
+	 * Tries to take a token from the bucket of the <code>systemId</code>.
+	 *
+	 * @param systemId the systemId of the session that received the packet, null if the client bound with an empty
+	 *                 systemId (those sessions share the bucket of the empty systemId).
+	 *
+	 * @return true if the packet is allowed, false if it is over the limit.
+	 */
+	public boolean tryAcquire(String systemId) {
+
+		if (systemId == null) {
+			systemId = "";
+		}
+
+		TokenBucket bucket = buckets.get(systemId);
+		if (bucket == null) {
+
+			// don't create buckets while there is nothing to limit
+			if (defaultLimit == 0) {
+				return true;
+			}
+
+			bucket = getOrCreateBucket(systemId);
+		}
+
+		if (bucket.tryAcquire()) {
+			return true;
+		}
+
+		throttledRequests.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Sets the limit of a systemId.
+	 *
+	 * @param systemId the systemId to limit.
+	 * @param limit the maximum number of submit_sm per second or 0 for no limit.
+	 */
+	@ManagedOperation(impact = Impact.ACTION, description = "Sets the submit_sm per second limit of a systemId")
+	public void setLimit(String systemId, int limit) {
+
+		if (systemId == null) {
+			throw new IllegalArgumentException("No systemId specified");
+		}
+
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit can't be negative");
+		}
+
+		getOrCreateBucket(systemId).setLimit(limit, true);
+	}
+
+	/**
+	 * Removes the specific limit of a systemId, the default limit will be used instead.
+	 *
+	 * @param systemId the systemId from which we are removing the limit.
+	 */
+	@ManagedOperation(impact = Impact.ACTION, description = "Removes the submit_sm per second limit of a systemId")
+	public void removeLimit(String systemId) {
+
+		TokenBucket bucket = buckets.get(systemId);
+		if (bucket != null) {
+			bucket.setLimit(defaultLimit, false);
+		}
+	}
+
+	/**
+	 * @param systemId the systemId from which we want to know the limit.
+	 *
+	 * @return the maximum number of submit_sm per second of the systemId, 0 if there is no limit.
+	 */
+	@ManagedOperation(impact = Impact.INFO, description = "Returns the submit_sm per second limit of a systemId")
+	public int getLimit(String systemId) {
+
+		TokenBucket bucket = buckets.get(systemId);
+		return bucket != null ? bucket.limit : defaultLimit;
+	}
+
+	/**
+	 * @return the limit of the systemIds without a specific limit, 0 if there is no limit.
+	 */
+	@ManagedAttribute(description = "The submit_sm per second limit of the systemIds without a specific limit")
+	public int getDefaultLimit() {
+		return defaultLimit;
+	}
+
+	/**
+	 * Sets the limit of the systemIds without a specific limit.
+	 *
+	 * @param defaultLimit the maximum number of submit_sm per second or 0 for no limit.
+	 */
+	public void setDefaultLimit(int defaultLimit) {
+
+		if (defaultLimit < 0) {
+			throw new IllegalArgumentException("defaultLimit can't be negative");
+		}
+
+		this.defaultLimit = defaultLimit;
+
+		for (TokenBucket bucket : buckets.values()) {
+			if (!bucket.specific) {
+				bucket.setLimit(defaultLimit, false);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of submit_sm packets that were rejected because they were over the limit.
+	 */
+	@ManagedAttribute
+	public long getThrottledRequests() {
+		return throttledRequests.get();
+	}
+
+	/**
+	 * Helper method. Retrieves the bucket of the systemId, creating it with the default limit if it doesn't exist.
+	 *
+	 * @param systemId the systemId of the bucket.
+	 *
+	 * @return the bucket of the systemId.
+	 */
+	private TokenBucket getOrCreateBucket(String systemId) {
+
+		TokenBucket bucket = buckets.get(systemId);
+		if (bucket != null) {
+			return bucket;
+		}
+
+		TokenBucket created = new TokenBucket(defaultLimit);
+		bucket = buckets.putIfAbsent(systemId, created);
+
+		return bucket != null ? bucket : created;
+	}
+
+	/**
+	 * A lock-free token bucket that allows <code>limit</code> tokens per second with a burst of one second.
+	 */
+	private static class TokenBucket {
+
+		/**
+		 * The theoretical arrival time (System.nanoTime()) of the next packet if packets arrived exactly at the
+		 * limit rate.
+		 */
+		private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+		/**
+		 * The packets per second, 0 if there is no limit.
+		 */
+		private volatile int limit;
+
+		/**
+		 * The nanoseconds between two packets at the limit rate.
+		 */
+		private volatile long intervalNanos;
+
+		/**
+		 * True if the limit was set specifically for the systemId, false if it is the default limit.
+		 */
+		private volatile boolean specific;
+
+		public TokenBucket(int limit) {
+			setLimit(limit, false);
+		}
+
+		public void setLimit(int limit, boolean specific) {
+
+			this.intervalNanos = limit > 0 ? TimeUnit.SECONDS.toNanos(1) / limit : 0;
+			this.limit = limit;
+			this.specific = specific;
+		}
+
+		public boolean tryAcquire() {
+
+			long interval = intervalNanos;
+			if (interval == 0) {
+				return true;
+			}
+
+			// the burst is one second worth of tokens
+			long burst = interval * limit;
+			long now = System.nanoTime();
+
+			while (true) {
+
+				long arrival = theoreticalArrival.get();
+				long next = Math.max(arrival, now) + interval;
+
+				if (next - now > burst) {
+					return false;
+				}
+
+				if (theoreticalArrival.compareAndSet(arrival, next)) {
+					return true;
+				}
+			}
+		}
+
+	}
+
+}
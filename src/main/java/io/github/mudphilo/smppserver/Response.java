@@ -1,12 +1,12 @@
 package io.github.mudphilo.smppserver;
 
 /**
- * Holds the values defined in the command status of the SMPP specification and other information that is used to build
- * the response that is sent to the client (e.g. the messageId).
+ * Holds the values defined in the command status of the SMPP specification. Each constant is a 
+ * {@link CommandResponse} without a message id; use {@link #withMessageId(String)} to add one.
  * 
  * @author German Escobar
  */
-public enum Response {
+public enum Response implements CommandResponse {
 
 	OK(0),
 	OK_WITH_MSG_ID(0),
@@ -57,26 +57,36 @@ public enum Response {
 	INVALID_PARAMETER_VALUE(0xc4),
 	DELIVERY_FAILED(0xfe);
 
-	private int commandStatus;
-	
-	private String messageId;
+	private final int commandStatus;
 	
 	private Response(int commandStatus) {
 
 		this.commandStatus = commandStatus;
 	}
 
+	@Override
 	public int getCommandStatus() {
 		return commandStatus;
 	}
 
+	/**
+	 * @return always null, use {@link #withMessageId(String)} to create a response with a message id.
+	 */
+	@Override
 	public String getMessageId() {
-		return messageId;
+		return null;
 	}
 
-	public Response withMessageId(String messageId) {
-		this.messageId = messageId;
-		return this;
+	/**
+	 * Creates a response with this command status and the message id. The constant is not modified, so concurrent 
+	 * requests can be answered without synchronization.
+	 * 
+	 * @param messageId the message id of the response.
+	 * 
+	 * @return a new immutable {@link CommandResponse}.
+	 */
+	public CommandResponse withMessageId(String messageId) {
+		return CommandResponse.of(this, messageId);
 	}
 
 }
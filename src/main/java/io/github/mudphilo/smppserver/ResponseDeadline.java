@@ -0,0 +1,79 @@
+package io.github.mudphilo.smppserver;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Answers the requests that the {@link PacketProcessor} doesn't answer in time (e.g. because of an exception or a
+ * lost callback), so the slot of the request in the window of the client is released instead of leaking until the
+ * client gives up on it.</p>
+ *
+ * <p>Each request gets a timeout in the hashed wheel timer of the server (see {@link SmppServer#getTimer()}) that is
+ * cancelled when the request is answered. Scheduling and cancelling are constant time, so the deadlines are cheap
+ * even with thousands of requests in flight.</p>
+ */
+class ResponseDeadline {
+
+	private final Timer timer;
+
+	/**
+	 * The time (in millis) the processor has to answer a request.
+	 */
+	private final long timeout;
+
+	/**
+	 * The response sent when the deadline of a request expires.
+	 */
+	private final CommandResponse timeoutResponse;
+
+	private final AtomicLong timedOutResponses = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param timer the timer shared by the sessions of the server.
+	 * @param timeout the time (in millis) the processor has to answer a request.
+	 * @param timeoutResponse the response sent when the deadline of a request expires.
+	 */
+	ResponseDeadline(Timer timer, long timeout, CommandResponse timeoutResponse) {
+
+		this.timer = timer;
+		this.timeout = timeout;
+		this.timeoutResponse = timeoutResponse;
+	}
+
+	/**
+	 * Starts the deadline of a request.
+	 *
+	 * @param task runs if the deadline expires, it should answer the request with {@link #getTimeoutResponse()}.
+	 *
+	 * @return the timeout to cancel once the request is answered.
+	 */
+	Timeout start(TimerTask task) {
+		return timer.newTimeout(task, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	long getTimeout() {
+		return timeout;
+	}
+
+	CommandResponse getTimeoutResponse() {
+		return timeoutResponse;
+	}
+
+	/**
+	 * Called when a request is answered with {@link #getTimeoutResponse()} because its deadline expired.
+	 */
+	void timedOut() {
+		timedOutResponses.incrementAndGet();
+	}
+
+	long getTimedOutResponses() {
+		return timedOutResponses.get();
+	}
+
+}
@@ -8,10 +8,11 @@ package io.github.mudphilo.smppserver;
 public interface ResponseSender {
 	
 	/**
-	 * This method sends the response to the client using the specified information of the {@link Response} object.
+	 * This method sends the response to the client using the specified information of the {@link CommandResponse} 
+	 * object (e.g. one of the {@link Response} constants).
 	 * 
 	 * @param response the response information to send.
 	 */
-	void send(Response response);
+	void send(CommandResponse response);
 	
 }
@@ -0,0 +1,163 @@
+package io.github.mudphilo.smppserver;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Watches the sessions of a server on a shared hashed wheel timer (see {@link SmppServer#getTimer()}):</p>
+ *
+ * <ul>
+ * 	<li>Sends an enquire_link when nothing has been received from the client for the enquire link interval and closes
+ * 	the connection when the client doesn't answer (or send anything else) after a number of them, which detects
+ * 	half-open connections.</li>
+ * 	<li>Closes the connections that are not bound within the bind timeout.</li>
+ * </ul>
+ *
+ * <p>Each session has a single timeout in the wheel at any time. Receiving packets doesn't touch the wheel (the session
+ * just records when the last packet arrived); when the timeout expires, it's scheduled again for the remaining idle
+ * time. Scheduling and expiring are constant time, so the cost of a tick doesn't depend on the number of sessions.</p>
+ */
+class SessionKeepalive {
+
+	private static final Logger log = LogManager.getLogger(SessionKeepalive.class.getSimpleName());
+
+	private final Timer timer;
+
+	/**
+	 * The idle time (in nanos) after which an enquire_link is sent, 0 to disable the enquire_link packets.
+	 */
+	private final long enquireLinkIntervalNanos;
+
+	/**
+	 * The number of unanswered enquire_link packets after which the connection is closed.
+	 */
+	private final int maxUnansweredEnquireLinks;
+
+	/**
+	 * The time (in nanos) a session has to bind after it's connected, 0 for no limit.
+	 */
+	private final long bindTimeoutNanos;
+
+	private final AtomicLong closedIdleSessions = new AtomicLong();
+
+	private final AtomicLong bindTimeouts = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param timer the timer shared by the sessions of the server.
+	 * @param enquireLinkInterval the idle time (in millis) after which an enquire_link is sent, 0 to disable them.
+	 * @param maxUnansweredEnquireLinks the number of unanswered enquire_link packets after which the connection is
+	 *                                  closed.
+	 * @param bindTimeout the time (in millis) a session has to bind, 0 for no limit.
+	 */
+	SessionKeepalive(Timer timer, long enquireLinkInterval, int maxUnansweredEnquireLinks, long bindTimeout) {
+
+		this.timer = timer;
+		this.enquireLinkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(enquireLinkInterval);
+		this.maxUnansweredEnquireLinks = maxUnansweredEnquireLinks;
+		this.bindTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(bindTimeout);
+	}
+
+	/**
+	 * Starts watching a session that was just connected. The session is forgotten once it's disconnected.
+	 *
+	 * @param session the session to watch.
+	 */
+	void watch(SmppSession session) {
+
+		long delay = bindTimeoutNanos > 0 ? bindTimeoutNanos : enquireLinkIntervalNanos;
+		if (delay > 0) {
+			timer.newTimeout(new Check(session, System.nanoTime()), delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	long getClosedIdleSessions() {
+		return closedIdleSessions.get();
+	}
+
+	long getBindTimeouts() {
+		return bindTimeouts.get();
+	}
+
+	/**
+	 * The timeout of a session.
+	 */
+	private class Check implements TimerTask {
+
+		private final SmppSession session;
+
+		private final long connectedTime;
+
+		Check(SmppSession session, long connectedTime) {
+			this.session = session;
+			this.connectedTime = connectedTime;
+		}
+
+		@Override
+		public void run(Timeout timeout) {
+
+			if (!session.isConnected() || session.getStatus() == SmppSession.Status.CLOSED) {
+				return;
+			}
+
+			if (session.getStatus() == SmppSession.Status.OPEN) {
+
+				long remaining = bindTimeoutNanos - (System.nanoTime() - connectedTime);
+				if (bindTimeoutNanos > 0 && remaining <= 0) {
+
+					log.info("[{}] not bound after {} millis, closing the connection", session.getId(),
+							TimeUnit.NANOSECONDS.toMillis(bindTimeoutNanos));
+
+					bindTimeouts.incrementAndGet();
+					session.abort();
+					return;
+				}
+
+				// enquire_link is not allowed before the bind
+				reschedule(remaining > 0 ? remaining : enquireLinkIntervalNanos);
+				return;
+			}
+
+			if (enquireLinkIntervalNanos == 0) {
+				return;
+			}
+
+			long idle = session.getIdleNanos();
+			if (idle < enquireLinkIntervalNanos) {
+				reschedule(enquireLinkIntervalNanos - idle);
+				return;
+			}
+
+			if (session.getUnansweredEnquireLinks() >= maxUnansweredEnquireLinks) {
+
+				log.info("[{}] no answer to {} enquire_link packets, closing the connection", session.getId(),
+						session.getUnansweredEnquireLinks());
+
+				closedIdleSessions.incrementAndGet();
+				session.abort();
+				return;
+			}
+
+			try {
+				session.sendEnquireLink();
+			} catch (Exception e) {
+				log.warn("[{}] couldn't send the enquire_link: {}", session.getId(), e.getMessage());
+			}
+
+			reschedule(enquireLinkIntervalNanos);
+		}
+
+		private void reschedule(long delay) {
+			timer.newTimeout(this, delay, TimeUnit.NANOSECONDS);
+		}
+
+	}
+
+}
@@ -0,0 +1,205 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.jmx.annotation.Impact;
+import io.github.mudphilo.jmx.annotation.ManagedAttribute;
+import io.github.mudphilo.jmx.annotation.ManagedOperation;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>Exposes all the sessions of a server through a single JMX MBean (see {@link SmppServer#setSessionTable(boolean)})
+ * instead of one MBean per connection. The sessions are returned in pages of <code>TabularData</code> (one
+ * <code>CompositeData</code> row per session, ordered by id) that any JMX client can display.</p>
+ *
+ * <p>The rows are snapshots taken when the operation is called, nothing is kept between calls.</p>
+ */
+public final class SessionTable {
+
+	/**
+	 * The maximum number of sessions of a page.
+	 */
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	private static final String[] ITEM_NAMES = { "id", "systemId", "bindType", "status", "remoteAddress", "created",
+			"inflightRequests", "pendingRequests", "failedWrites", "pdusIn", "pdusOut", "pdusInOneMinuteRate" };
+
+	private static final String[] ITEM_DESCRIPTIONS = { "The id of the session", "The systemId used to bind",
+			"The bind type", "The status of the session", "The address of the client", "When the client connected",
+			"The requests received from the client waiting for a response",
+			"The requests sent to the client waiting for a response", "The PDUs that couldn't be written",
+			"The PDUs received", "The PDUs sent", "The PDUs per second received in the last minute" };
+
+	private static final OpenType<?>[] ITEM_TYPES = { SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
+			SimpleType.STRING, SimpleType.STRING, SimpleType.DATE, SimpleType.INTEGER, SimpleType.INTEGER,
+			SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE };
+
+	private static final CompositeType ROW_TYPE;
+
+	private static final TabularType TABLE_TYPE;
+
+	static {
+
+		try {
+
+			ROW_TYPE = new CompositeType("Session", "An SMPP session", ITEM_NAMES, ITEM_DESCRIPTIONS, ITEM_TYPES);
+			TABLE_TYPE = new TabularType("Sessions", "The SMPP sessions", ROW_TYPE, new String[] { "id" });
+
+		} catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final Comparator<SmppSession> BY_ID = new Comparator<SmppSession>() {
+
+		@Override
+		public int compare(SmppSession first, SmppSession second) {
+			return Integer.compare(first.getSessionId(), second.getSessionId());
+		}
+
+	};
+
+	/**
+	 * A live view of the sessions of the server.
+	 */
+	private final Collection<SmppSession> sessions;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sessions a live view of the sessions of the server.
+	 */
+	SessionTable(Collection<SmppSession> sessions) {
+		this.sessions = sessions;
+	}
+
+	/**
+	 * @return the number of connected sessions.
+	 */
+	@ManagedAttribute
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * @param page the page to return, starting from 0.
+	 * @param pageSize the maximum number of sessions of the page, up to {@link #MAX_PAGE_SIZE}.
+	 *
+	 * @return a page of the sessions ordered by id, empty if there are no more sessions.
+	 */
+	@ManagedOperation(impact = Impact.INFO, description = "Returns a page (from 0) of the sessions")
+	public TabularData getSessions(int page, int pageSize) {
+		return findSessions(null, null, page, pageSize);
+	}
+
+	/**
+	 * @param systemId the systemId of the sessions or null (or empty) for any systemId.
+	 * @param status the status of the sessions (e.g. BOUND) or null (or empty) for any status.
+	 * @param page the page to return, starting from 0.
+	 * @param pageSize the maximum number of sessions of the page, up to {@link #MAX_PAGE_SIZE}.
+	 *
+	 * @return a page of the matching sessions ordered by id, empty if there are no more sessions.
+	 */
+	@ManagedOperation(impact = Impact.INFO, description = "Returns a page (from 0) of the sessions with a systemId "
+			+ "and status, empty to match any")
+	public TabularData findSessions(String systemId, String status, int page, int pageSize) {
+
+		if (page < 0) {
+			throw new IllegalArgumentException("page can't be negative");
+		}
+
+		if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+		}
+
+		List<SmppSession> matches = match(systemId, status);
+		matches.sort(BY_ID);
+
+		TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+
+		long from = (long) page * pageSize;
+		for (long i = from; i < matches.size() && i < from + pageSize; i++) {
+			table.put(toCompositeData(matches.get((int) i)));
+		}
+
+		return table;
+	}
+
+	/**
+	 * @param systemId the systemId of the sessions or null (or empty) for any systemId.
+	 * @param status the status of the sessions (e.g. BOUND) or null (or empty) for any status.
+	 *
+	 * @return the number of matching sessions.
+	 */
+	@ManagedOperation(impact = Impact.INFO, description = "Returns the number of sessions with a systemId and status, "
+			+ "empty to match any")
+	public int countSessions(String systemId, String status) {
+		return match(systemId, status).size();
+	}
+
+	/**
+	 * @param id the id of the session (e.g. session-1).
+	 *
+	 * @return the session with the id or null if there is no such session.
+	 */
+	@ManagedOperation(impact = Impact.INFO, description = "Returns the session with an id")
+	public CompositeData getSession(String id) {
+
+		for (SmppSession session : sessions) {
+			if (session.getId().equals(id)) {
+				return toCompositeData(session);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Helper method. Collects the sessions that match the filters.
+	 */
+	private List<SmppSession> match(String systemId, String status) {
+
+		boolean anySystemId = systemId == null || systemId.isEmpty();
+		boolean anyStatus = status == null || status.isEmpty();
+
+		List<SmppSession> matches = new ArrayList<>();
+		for (SmppSession session : sessions) {
+
+			if ((anySystemId || systemId.equals(session.getBoundSystemId()))
+					&& (anyStatus || status.equalsIgnoreCase(session.getStatus().name()))) {
+				matches.add(session);
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Helper method. Takes a snapshot of a session.
+	 */
+	private static CompositeData toCompositeData(SmppSession session) {
+
+		Object[] values = { session.getId(), session.getBoundSystemId(), session.getBindTypeString(),
+				session.getStatus().name(), String.valueOf(session.getRemoteAddress()), session.creationTime(),
+				session.getInflightRequests(), session.getPendingRequests(), session.getFailedWrites(),
+				session.getPdusIn(), session.getPdusOut(), session.getPdusInOneMinuteRate() };
+
+		try {
+			return new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, values);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -10,20 +10,40 @@ import io.github.mudphilo.jmx.Management;
 import io.github.mudphilo.jmx.annotation.Impact;
 import io.github.mudphilo.jmx.annotation.ManagedAttribute;
 import io.github.mudphilo.jmx.annotation.ManagedOperation;
+import io.github.mudphilo.smppserver.packet.DeliverSm;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+import io.github.mudphilo.smppserver.packet.SmppResponse;
+import io.github.mudphilo.smppserver.packet.ch.PduPacketCodec;
+import io.github.mudphilo.smppserver.packet.codec.PacketDecoder;
+import io.github.mudphilo.smppserver.packet.codec.PacketEncoder;
 import org.apache.logging.log4j.LogManager;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
 
+import javax.management.openmbean.TabularData;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>An SMPP Server that accepts client connections and process SMPP packets. Every time a connection is accepted,
@@ -42,7 +62,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * </pre>
  *
  * <p>To process the SMPP packets you will need to provide an implementation of the {@link PacketProcessor} interface
- * using the constructor  or the setter {@link #setPacketProcessor(PacketProcessor)}.
+ * (or its non-blocking variant, {@link AsyncPacketProcessor}) using the constructor or the setter
+ * {@link #setPacketProcessor(PacketProcessor)}.
  * If no {@link PacketProcessor} is specified, a default implementation that always returns 0 (ESME_ROK in the SMPP
  * specification) is used.</p>
  *
@@ -81,6 +102,49 @@ public class SmppServer {
 
     }
 
+    /**
+     * Possible values for the codec used to decode and encode the SMPP packets.
+     */
+    public enum Codec {
+
+        /**
+         * Decodes and encodes our SMPP packets straight from/to the Netty buffers. This is the default.
+         */
+        NATIVE,
+
+        /**
+         * Decodes and encodes the SMPP packets with the cloudhopper transcoder and maps them to our SMPP packets. Kept
+         * for compatibility.
+         */
+        CLOUDHOPPER;
+
+    }
+
+    /**
+     * The name of the handler that decodes the SMPP packets in the pipeline of the sessions.
+     */
+    private static final String PIPELINE_SESSION_PACKET_DECODER_NAME = "smppSessionPacketDecoder";
+
+    /**
+     * The name of the handler that encodes the SMPP packets in the pipeline of the sessions.
+     */
+    private static final String PIPELINE_SESSION_PACKET_ENCODER_NAME = "smppSessionPacketEncoder";
+
+    /**
+     * The name of the handler that counts the bytes in the pipeline of the sessions.
+     */
+    private static final String PIPELINE_SESSION_TRAFFIC_NAME = "smppSessionTraffic";
+
+    /**
+     * The duration (in millis) of a tick of the {@link #timer}.
+     */
+    private static final long TIMER_TICK = 100;
+
+    /**
+     * The number of buckets of the wheel of the {@link #timer}.
+     */
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+
     /**
      * A unique name for the server. Used to register the JMX MBean.
      */
@@ -112,6 +176,156 @@ public class SmppServer {
 
     private SmppSessionListener sessionListener;
 
+    /**
+     * The bound sessions that can receive requests (receiver and transceiver binds), by systemId.
+     */
+    private final ConcurrentMap<String, Set<SmppSession>> receiverSessions = new ConcurrentHashMap<>();
+
+    /**
+     * Counts the deliver_sm that were sent again through another session because the write failed.
+     */
+    private final AtomicLong deliverFailovers = new AtomicLong();
+
+    /**
+     * Sends the deliver_sm again through another session after a write failure, off the I/O thread that reported the
+     * failure, as offering to the send window can block. Null if the server is not started.
+     */
+    private ExecutorService failoverExecutor;
+
+    /**
+     * Notified by the sessions when they are bound.
+     */
+    private final SmppSessionListener bindListener = new BindListener();
+
+    /**
+     * The number of threads used to process the packets outside the I/O threads. If 0, the packets are processed in
+     * the I/O threads.
+     */
+    private int processingThreads;
+
+    /**
+     * The maximum number of pending packets of each processing thread.
+     */
+    private int processingQueueSize = 10000;
+
+    /**
+     * Limits the submit_sm packets per second of each systemId.
+     */
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    /**
+     * The maximum number of unresponded requests of each session before the server stops reading from its socket. If
+     * 0, there is no limit.
+     */
+    private int maxInflightRequests;
+
+    /**
+     * The codec used to decode and encode the SMPP packets of new sessions.
+     */
+    private Codec codec = Codec.NATIVE;
+
+    /**
+     * The maximum number of requests sent to each client that can be waiting for a response.
+     */
+    private int sendWindowSize = SmppSession.DEFAULT_SEND_WINDOW_SIZE;
+
+    /**
+     * The maximum time (in millis) to wait for a free slot in the send window of a session.
+     */
+    private long sendWindowOfferTimeout = SmppSession.DEFAULT_SEND_WINDOW_OFFER_TIMEOUT;
+
+    /**
+     * The maximum time (in millis) to wait for the response of a request sent to a client.
+     */
+    private long sendWindowExpireTimeout = SmppSession.DEFAULT_SEND_WINDOW_EXPIRE_TIMEOUT;
+
+    /**
+     * Processes the packets of the sessions keeping the order of each session. Created when the server starts if
+     * {@link #processingThreads} is greater than 0.
+     */
+    private OrderedExecutor processingExecutor;
+
+    /**
+     * Generates the message ids of the accepted submit_sm packets answered without one, null by default.
+     */
+    private MessageIdGenerator messageIdGenerator;
+
+    /**
+     * The idle time (in millis) after which an enquire_link is sent to the client, 0 (the default) to disable them.
+     */
+    private long enquireLinkInterval;
+
+    /**
+     * The number of unanswered enquire_link packets after which the connection is closed.
+     */
+    private int maxUnansweredEnquireLinks = 3;
+
+    /**
+     * The time (in millis) a connection has to bind, 0 (the default) for no limit.
+     */
+    private long bindTimeout;
+
+    /**
+     * The hashed wheel timer shared by the sessions, created when the server is started.
+     */
+    private Timer timer;
+
+    /**
+     * Sends the enquire_link packets and closes the idle and unbound sessions. If null, sessions are not watched.
+     */
+    private SessionKeepalive keepalive;
+
+    /**
+     * The time (in millis) the processor has to answer a request, 0 (the default) for no limit.
+     */
+    private long responseTimeout;
+
+    /**
+     * The response sent when a request is not answered within the {@link #responseTimeout}.
+     */
+    private CommandResponse responseTimeoutResponse = Response.SYSTEM_ERROR;
+
+    /**
+     * Answers the requests that are not answered in time. If null, requests have no deadline.
+     */
+    private ResponseDeadline responseDeadline;
+
+    /**
+     * If true, the sessions are exposed through a single {@link SessionTable} MBean instead of one MBean each.
+     */
+    private boolean sessionTableEnabled;
+
+    /**
+     * The MBean that exposes all the sessions, null if each session is registered as an MBean.
+     */
+    private SessionTable sessionTable;
+
+    /**
+     * The latency histograms of the requests by command and systemId.
+     */
+    private final CommandLatencies latencies = new CommandLatencies();
+
+    /**
+     * Counts the PDUs and bytes of all the sessions.
+     */
+    private final TrafficCounters trafficCounters = new TrafficCounters();
+
+    /**
+     * The port of the {@link MetricsEndpoint}, 0 if the metrics are not exposed.
+     */
+    private int metricsPort;
+
+    /**
+     * Exposes the metrics in the OpenMetrics text format, null if the metrics are not exposed.
+     */
+    private MetricsEndpoint metricsEndpoint;
+
+    /**
+     * Collects the submit_sm packets of all the sessions in batches. If null, submit_sm packets are handled by the
+     * {@link PacketProcessor}.
+     */
+    private SubmitSmBatcher submitSmBatcher;
+
     /**
      * Constructor. Creates an instance with the specified port and {@link PacketProcessor} implementation. A
      *
@@ -135,6 +349,16 @@ public class SmppServer {
         registerJMXBean();
     }
 
+    /**
+     * Constructor. Creates an instance with the specified port and {@link AsyncPacketProcessor} implementation.
+     *
+     * @param port                 the server will accept connections in this port.
+     * @param asyncPacketProcessor the {@link AsyncPacketProcessor} implementation that will process the SMPP messages.
+     */
+    public SmppServer(int port, AsyncPacketProcessor asyncPacketProcessor) {
+        this(port, new AsyncPacketProcessorAdapter(asyncPacketProcessor));
+    }
+
     public void registerJMXBean() {
         try {
             Management.register(this, "io.github.mudphilo.smppserver:type=" + name);
@@ -142,6 +366,13 @@ public class SmppServer {
         } catch (Exception e) {
             logger.warn("Couldn't register SMPP Server as JMX Bean: {}", e.getMessage(), e);
         }
+
+        try {
+            Management.register(rateLimiter, "io.github.mudphilo.smppserver:type=Throttling,server=" + name);
+
+        } catch (Exception e) {
+            logger.warn("Couldn't register the rate limiter as JMX Bean: {}", e.getMessage(), e);
+        }
     }
 
     /**
@@ -160,13 +391,65 @@ public class SmppServer {
         logger.debug("starting the SMPP Server ... ");
         this.status = Status.STARTING;
 
+        if (processingThreads > 0) {
+            this.processingExecutor = new OrderedExecutor(processingThreads, processingQueueSize);
+        }
+
+        if (submitSmBatcher != null) {
+            submitSmBatcher.start();
+        }
+
+        this.failoverExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("smpp-failover-" + name));
+
+        this.timer = new HashedWheelTimer(new DaemonThreadFactory("smpp-timer-" + name), TIMER_TICK, TimeUnit.MILLISECONDS,
+                TIMER_TICKS_PER_WHEEL);
+
+        this.keepalive = enquireLinkInterval > 0 || bindTimeout > 0
+                ? new SessionKeepalive(timer, enquireLinkInterval, maxUnansweredEnquireLinks, bindTimeout) : null;
+
+        this.responseDeadline = responseTimeout > 0
+                ? new ResponseDeadline(timer, responseTimeout, responseTimeoutResponse) : null;
+
+        timer.newTimeout(new TrafficTick(), TrafficCounters.TICK_INTERVAL, TimeUnit.SECONDS);
+
+        this.sessionTable = sessionTableEnabled ? new SessionTable(getSessions()) : null;
+        if (sessionTable != null) {
+
+            try {
+                Management.register(sessionTable, sessionTableName());
+            } catch (Exception e) {
+                logger.warn("Couldn't register the session table as JMX Bean: {}", e.getMessage(), e);
+            }
+        }
+
         try {
             this.serverChannel = this.serverBootstrap.bind(new InetSocketAddress(port));
             logger.info("SMPP Server started on SMPP port [{}]", port);
         } catch (ChannelException e) {
+
+            // e.g. the port is in use, don't leave the threads running
+            try {
+                releaseResources();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            this.status = Status.STOPPED;
+
             throw new SmppChannelException(e.getMessage(), e);
         }
 
+        this.metricsEndpoint = metricsPort > 0 ? new MetricsEndpoint(this, name, metricsPort) : null;
+        if (metricsEndpoint != null) {
+
+            try {
+                metricsEndpoint.start();
+                logger.info("SMPP Server metrics exposed on port [{}]", metricsPort);
+            } catch (IOException e) {
+                logger.warn("Couldn't expose the metrics on port {}: {}", metricsPort, e.getMessage(), e);
+                this.metricsEndpoint = null;
+            }
+        }
+
 
         logger.info("<< SMPP Server running on port {} >>", port);
         this.status = Status.STARTED;
@@ -204,12 +487,54 @@ public class SmppServer {
             this.serverChannel = null;
         }
 
+        releaseResources();
+
         // the server has stopped
         status = Status.STOPPED;
         logger.info("<< SMPP Server stopped >>");
 
     }
 
+    /**
+     * Helper method. Stops the threads and unregisters the MBeans created by {@link #start()}, either when the server
+     * is stopped or when it fails to start.
+     */
+    private void releaseResources() throws InterruptedException {
+
+        if (this.processingExecutor != null) {
+            this.processingExecutor.shutdown();
+            this.processingExecutor = null;
+        }
+
+        if (this.submitSmBatcher != null) {
+            this.submitSmBatcher.stop();
+        }
+
+        if (this.metricsEndpoint != null) {
+            this.metricsEndpoint.stop();
+            this.metricsEndpoint = null;
+        }
+
+        if (this.failoverExecutor != null) {
+            this.failoverExecutor.shutdown();
+            this.failoverExecutor = null;
+        }
+
+        if (this.timer != null) {
+            this.timer.stop();
+            this.timer = null;
+        }
+
+        if (this.sessionTable != null) {
+
+            try {
+                Management.unregister(sessionTableName());
+            } catch (Exception e) {
+                logger.warn("Couldn't unregister the session table JMX Bean: {}", e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Returns the opened sessions.
      *
@@ -220,114 +545,899 @@ public class SmppServer {
     }
 
     /**
-     * @return the status of the server.
+     * Returns the bound sessions of a systemId that can receive requests (i.e. sessions bound as receiver or
+     * transceiver). This is a constant time lookup, the returned collection is a live view that changes as the
+     * sessions are bound and disconnected.
+     *
+     * @param systemId the systemId used by the client to bind.
+     *
+     * @return an unmodifiable collection of {@link SmppSession} objects, empty if there are no such sessions.
      */
-    public Status getStatus() {
-        return status;
-    }
-
-    @ManagedAttribute
-    public String getStatusString() {
-        return status.name();
-    }
-
-    @ManagedAttribute
-    public int getActiveSessions() {
-        return sessions.size();
-    }
+    public Collection<SmppSession> getReceiverSessions(String systemId) {
 
-    @ManagedAttribute
-    public int getCreatedSessions() {
-        return createdSessions.get();
-    }
+        Set<SmppSession> systemIdSessions = receiverSessions.get(systemId);
+        if (systemIdSessions == null) {
+            return Collections.emptySet();
+        }
 
-    @ManagedAttribute
-    public int getDestroyedSessions() {
-        return destroyedSessions.get();
+        return Collections.unmodifiableSet(systemIdSessions);
     }
 
     /**
-     * Sets the packet processor that will be used for new sessions. Old sessions will not be affected.
+     * <p>Sends a deliver_sm to a systemId through the bound session (receiver or transceiver) with the fewest requests
+     * waiting for a response, so the load is spread across all the binds of the client. If the deliver_sm can't be
+     * written, it is sent again through another session of the systemId (with a new sequence number) until there
+     * are no sessions left.</p>
      *
-     * @param packetProcessor the {@link PacketProcessor} implementation to be used.
+     * <p>Requests that were written but not responded (e.g. a timeout) are not sent again, as the client could have
+     * received them.</p>
+     *
+     * @param systemId the systemId of the client.
+     * @param deliverSm the deliver_sm to send.
+     *
+     * @return a future that is completed with the response of the client or exceptionally if there are no sessions
+     * for the systemId or the deliver_sm couldn't be delivered.
      */
-    public void setPacketProcessor(PacketProcessor packetProcessor) {
+    public CompletableFuture<SmppResponse> sendDeliverSm(String systemId, DeliverSm deliverSm) {
 
-        if (packetProcessor == null) {
-            throw new IllegalArgumentException("No packetProcessor specified");
+        if (deliverSm == null) {
+            throw new IllegalArgumentException("No deliverSm specified");
         }
 
-        this.packetProcessor = packetProcessor;
-    }
+        CompletableFuture<SmppResponse> result = new CompletableFuture<>();
+        dispatch(systemId, deliverSm, new HashSet<SmppSession>(), result);
 
-    public void setSessionListener(SmppSessionListener sessionListener) {
-        this.sessionListener = sessionListener;
+        return result;
     }
 
     /**
-     * This is the NIO server channel handler that manages connections and disconnections of clients.
+     * Helper method. Sends the deliver_sm through the least loaded session that hasn't been tried yet, failing over
+     * to the next one if the write fails.
      *
-     * @author German Escobar
+     * @param systemId the systemId of the client.
+     * @param deliverSm the deliver_sm to send.
+     * @param tried the sessions that couldn't write the deliver_sm.
+     * @param result the future returned to the caller.
      */
-    private class ServerChannelHandler extends SimpleChannelUpstreamHandler {
-
-
-        public ServerChannelHandler() {
-
-        }
-
-        @Override
-        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-
-            Channel channel = e.getChannel();
+    private void dispatch(String systemId, DeliverSm deliverSm, Set<SmppSession> tried,
+            CompletableFuture<SmppResponse> result) {
+
+        while (true) {
+
+            SmppSession session = leastLoadedSession(systemId, tried);
+            if (session == null) {
+                result.completeExceptionally(new SmppException(tried.isEmpty() ?
+                        "No session bound with systemId " + systemId + " can receive the deliver_sm" :
+                        "Couldn't write the deliver_sm to any of the " + tried.size() + " sessions of systemId " +
+                        systemId));
+                return;
+            }
 
-            SmppSession session = null;
-            int id = sessionId.incrementAndGet();
+            // the sequence number assigned by the previous session is not valid in this one
+            if (!tried.isEmpty()) {
+                deliverSm.setSequenceNumber(-1);
+                deliverFailovers.incrementAndGet();
+            }
+            tried.add(session);
 
+            CompletableFuture<SmppResponse> response;
             try {
-
-                session = new SmppSession(id, channel, packetProcessor);
-                logger.info("created session with id {} ", id);
-
-            } catch (Exception f) {
-
-                logger.warn("Couldn't create session with id {} as a JMX MBean: {} exp {}", id, f.getMessage(), f);
-
+                response = session.sendRequestAsync(deliverSm);
+            } catch (IllegalStateException e) {
+                // the session was unbound after we picked it
+                continue;
             }
 
+            response.whenComplete((deliverSmResp, cause) -> {
 
-            channel.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_PDU_DECODER_NAME,
-                    new SmppSessionPduDecoder(new DefaultPduTranscoder(new DefaultPduTranscoderContext())));
-            channel.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_WRAPPER_NAME, session);
+                if (cause == null) {
+                    result.complete(deliverSmResp);
+                } else if (cause instanceof SmppWriteException) {
+                    logger.warn("Couldn't write the deliver_sm to session {}, trying another session: {}",
+                            session.getId(), cause.getMessage());
+                    failover(systemId, deliverSm, tried, result, cause);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
 
-            //assert session != null;
-            //session.setPacketProcessor(packetProcessor);
+            return;
+        }
+    }
 
-            logger.info("session.isBound {}",session.isBound());
-            logger.info("session.getStatusString() {}",session.getStatusString());
+    /**
+     * Helper method. Dispatches the deliver_sm again in the {@link #failoverExecutor}, as this is called by the I/O
+     * thread that failed to write it.
+     */
+    private void failover(String systemId, DeliverSm deliverSm, Set<SmppSession> tried,
+            CompletableFuture<SmppResponse> result, Throwable cause) {
 
-            sessions.put(channel, session);
-            createdSessions.incrementAndGet();
+        ExecutorService executor = failoverExecutor;
+        if (executor == null) {
+            result.completeExceptionally(cause);
+            return;
+        }
 
+        try {
+            executor.execute(() -> dispatch(systemId, deliverSm, tried, result));
+        } catch (RejectedExecutionException e) {
+            // the server is stopping
+            result.completeExceptionally(cause);
+        }
+    }
 
-            try {
+    /**
+     * Helper method. Finds the bound session of the systemId with the fewest requests waiting for a response.
+     *
+     * @param systemId the systemId of the client.
+     * @param excluded the sessions that must not be returned.
+     *
+     * @return the least loaded session or null if there are no bound sessions left.
+     */
+    private SmppSession leastLoadedSession(String systemId, Set<SmppSession> excluded) {
 
-                Management.register(session, "io.github.mudphilo.smppserver:type=Sessions,id=" + session.getId());
+        SmppSession leastLoaded = null;
+        int leastPending = Integer.MAX_VALUE;
 
-            } catch (Exception f) {
+        for (SmppSession session : getReceiverSessions(systemId)) {
 
-                logger.warn("Couldn't register session with id {} as a JMX MBean: {} {}", id, f.getMessage(), f);
+            if (!session.isBound() || excluded.contains(session)) {
+                continue;
             }
 
-            if (sessionListener != null) {
-
-                sessionListener.created(session);
+            int pending = session.getPendingRequests();
+            if (pending < leastPending) {
+                leastLoaded = session;
+                leastPending = pending;
             }
-
         }
 
-        @Override
-        public void channelDisconnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        return leastLoaded;
+    }
+
+    /**
+     * Returns the rate limiter used to throttle the submit_sm packets of each systemId. There is no limit by default;
+     * use {@link RateLimiter#setDefaultLimit(int)} or {@link RateLimiter#setLimit(String, int)} to configure it. The
+     * limits can also be changed at runtime through JMX.
+     *
+     * @return the {@link RateLimiter} shared by all the sessions.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the status of the server.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    @ManagedAttribute
+    public String getStatusString() {
+        return status.name();
+    }
+
+    @ManagedAttribute
+    public int getActiveSessions() {
+        return sessions.size();
+    }
+
+    @ManagedAttribute
+    public int getCreatedSessions() {
+        return createdSessions.get();
+    }
+
+    @ManagedAttribute
+    public int getDestroyedSessions() {
+        return destroyedSessions.get();
+    }
+
+    /**
+     * @return the number of deliver_sm that were sent again through another session because the write failed.
+     */
+    @ManagedAttribute
+    public long getDeliverFailovers() {
+        return deliverFailovers.get();
+    }
+
+    /**
+     * @return the number of connections closed because the client didn't answer the enquire_link packets.
+     */
+    @ManagedAttribute
+    public long getClosedIdleSessions() {
+        SessionKeepalive sessionKeepalive = keepalive;
+        return sessionKeepalive != null ? sessionKeepalive.getClosedIdleSessions() : 0;
+    }
+
+    /**
+     * @return the number of connections closed because they were not bound in time.
+     */
+    @ManagedAttribute
+    public long getBindTimeouts() {
+        SessionKeepalive sessionKeepalive = keepalive;
+        return sessionKeepalive != null ? sessionKeepalive.getBindTimeouts() : 0;
+    }
+
+    /**
+     * @return the number of requests answered by the server because the processor didn't answer them in time.
+     */
+    @ManagedAttribute
+    public long getTimedOutResponses() {
+        ResponseDeadline deadline = responseDeadline;
+        return deadline != null ? deadline.getTimedOutResponses() : 0;
+    }
+
+    /**
+     * @return the PDUs, bytes and rates of all the sessions.
+     */
+    public TrafficCounters getTrafficCounters() {
+        return trafficCounters;
+    }
+
+    /**
+     * @return the number of PDUs received from the clients.
+     */
+    @ManagedAttribute
+    public long getPdusIn() {
+        return trafficCounters.getPdusIn();
+    }
+
+    /**
+     * @return the number of PDUs sent to the clients.
+     */
+    @ManagedAttribute
+    public long getPdusOut() {
+        return trafficCounters.getPdusOut();
+    }
+
+    /**
+     * @return the number of bytes read from the clients.
+     */
+    @ManagedAttribute
+    public long getBytesIn() {
+        return trafficCounters.getBytesIn();
+    }
+
+    /**
+     * @return the number of bytes written to the clients.
+     */
+    @ManagedAttribute
+    public long getBytesOut() {
+        return trafficCounters.getBytesOut();
+    }
+
+    /**
+     * @return the PDUs per second received from the clients in the last second (moving average).
+     */
+    @ManagedAttribute
+    public double getPdusInOneSecondRate() {
+        return trafficCounters.getPdusInRate().getOneSecondRate();
+    }
+
+    /**
+     * @return the PDUs per second received from the clients in the last minute (moving average).
+     */
+    @ManagedAttribute
+    public double getPdusInOneMinuteRate() {
+        return trafficCounters.getPdusInRate().getOneMinuteRate();
+    }
+
+    /**
+     * @return the PDUs per second received from the clients in the last 5 minutes (moving average).
+     */
+    @ManagedAttribute
+    public double getPdusInFiveMinutesRate() {
+        return trafficCounters.getPdusInRate().getFiveMinutesRate();
+    }
+
+    /**
+     * @return the PDUs per second sent to the clients in the last second (moving average).
+     */
+    @ManagedAttribute
+    public double getPdusOutOneSecondRate() {
+        return trafficCounters.getPdusOutRate().getOneSecondRate();
+    }
+
+    /**
+     * @return the PDUs per second sent to the clients in the last minute (moving average).
+     */
+    @ManagedAttribute
+    public double getPdusOutOneMinuteRate() {
+        return trafficCounters.getPdusOutRate().getOneMinuteRate();
+    }
+
+    /**
+     * @return the PDUs per second sent to the clients in the last 5 minutes (moving average).
+     */
+    @ManagedAttribute
+    public double getPdusOutFiveMinutesRate() {
+        return trafficCounters.getPdusOutRate().getFiveMinutesRate();
+    }
+
+    /**
+     * @return the PDUs received and sent by command.
+     */
+    @ManagedAttribute
+    public TabularData getPduCounts() {
+        return trafficCounters.getPduCounts();
+    }
+
+    /**
+     * @return the responses sent by command status.
+     */
+    @ManagedAttribute
+    public TabularData getResponseCounts() {
+        return trafficCounters.getResponseCounts();
+    }
+
+    /**
+     * @return the median latency (in micros) of the submit_sm packets, from decoding to writing the response.
+     */
+    @ManagedAttribute
+    public long getSubmitSmLatencyP50() {
+        return submitSmLatencyPercentile(50);
+    }
+
+    /**
+     * @return the 99th percentile latency (in micros) of the submit_sm packets.
+     */
+    @ManagedAttribute
+    public long getSubmitSmLatencyP99() {
+        return submitSmLatencyPercentile(99);
+    }
+
+    /**
+     * @return the 99.9th percentile latency (in micros) of the submit_sm packets.
+     */
+    @ManagedAttribute
+    public long getSubmitSmLatencyP999() {
+        return submitSmLatencyPercentile(99.9);
+    }
+
+    /**
+     * @return the maximum latency (in micros) of the submit_sm packets.
+     */
+    @ManagedAttribute
+    public long getSubmitSmLatencyMax() {
+        LatencyHistogram histogram = latencies.getCommandHistogram(SmppPacket.SUBMIT_SM);
+        return histogram != null ? CommandLatencies.toMicros(histogram.getMax()) : 0;
+    }
+
+    private long submitSmLatencyPercentile(double percentile) {
+        LatencyHistogram histogram = latencies.getCommandHistogram(SmppPacket.SUBMIT_SM);
+        return histogram != null ? CommandLatencies.toMicros(histogram.getPercentile(percentile)) : 0;
+    }
+
+    /**
+     * @return the count and the p50, p99, p999 and max latencies (in micros) of each command.
+     */
+    @ManagedAttribute
+    public TabularData getCommandLatencies() {
+        return latencies.commandTable();
+    }
+
+    /**
+     * @return the count and the p50, p99, p999 and max latencies (in micros) of the requests of each systemId.
+     */
+    @ManagedAttribute
+    public TabularData getSystemIdLatencies() {
+        return latencies.systemIdTable();
+    }
+
+    /**
+     * Forgets the recorded latencies, e.g. to measure a test from scratch.
+     */
+    @ManagedOperation(impact = Impact.ACTION)
+    public void resetLatencies() {
+        latencies.reset();
+    }
+
+    /**
+     * @return the latency histograms by command and systemId.
+     */
+    CommandLatencies getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @param commandId the command id of the requests (e.g. {@link SmppPacket#SUBMIT_SM}).
+     *
+     * @return the latency histogram of the command or null if no request with the command id has been answered.
+     */
+    public LatencyHistogram getLatencyHistogram(int commandId) {
+        return latencies.getCommandHistogram(commandId);
+    }
+
+    /**
+     * @param systemId the systemId of the sessions.
+     *
+     * @return the latency histogram of the requests of the systemId or null if none has been answered.
+     */
+    public LatencyHistogram getLatencyHistogram(String systemId) {
+        return latencies.getSystemIdHistogram(systemId);
+    }
+
+    /**
+     * @return the number of packets waiting to be processed or 0 if packets are processed in the I/O threads.
+     */
+    @ManagedAttribute
+    public int getProcessingQueueSize() {
+        OrderedExecutor executor = processingExecutor;
+        return executor != null ? executor.getQueueSize() : 0;
+    }
+
+    /**
+     * @return the number of packets waiting to be processed in the most loaded processing thread.
+     */
+    @ManagedAttribute
+    public int getMaxProcessingQueueSize() {
+        OrderedExecutor executor = processingExecutor;
+        return executor != null ? executor.getMaxStripeQueueSize() : 0;
+    }
+
+    /**
+     * @return the number of submit_sm packets waiting to be added to a batch or 0 if batching is not enabled.
+     */
+    @ManagedAttribute
+    public int getBatchQueueSize() {
+        SubmitSmBatcher batcher = submitSmBatcher;
+        return batcher != null ? batcher.getQueueSize() : 0;
+    }
+
+    /**
+     * @return the number of submit_sm batches that have been processed.
+     */
+    @ManagedAttribute
+    public long getProcessedBatches() {
+        SubmitSmBatcher batcher = submitSmBatcher;
+        return batcher != null ? batcher.getProcessedBatches() : 0;
+    }
+
+    /**
+     * @return the number of packets that were rejected with MESSAGE_QUEUE_FULL because the processing queue was full.
+     */
+    @ManagedAttribute
+    public long getRejectedPackets() {
+        OrderedExecutor executor = processingExecutor;
+        return executor != null ? executor.getRejectedTasks() : 0;
+    }
+
+    /**
+     * Sets the packet processor that will be used for new sessions. Old sessions will not be affected.
+     *
+     * @param packetProcessor the {@link PacketProcessor} implementation to be used.
+     */
+    public void setPacketProcessor(PacketProcessor packetProcessor) {
+
+        if (packetProcessor == null) {
+            throw new IllegalArgumentException("No packetProcessor specified");
+        }
+
+        this.packetProcessor = packetProcessor;
+    }
+
+    /**
+     * Sets the asynchronous packet processor that will be used for new sessions. Old sessions will not be affected.
+     *
+     * @param asyncPacketProcessor the {@link AsyncPacketProcessor} implementation to be used.
+     */
+    public void setPacketProcessor(AsyncPacketProcessor asyncPacketProcessor) {
+        setPacketProcessor(new AsyncPacketProcessorAdapter(asyncPacketProcessor));
+    }
+
+    /**
+     * Sets the maximum number of unresponded requests of each session. When a session reaches the limit, the server
+     * stops reading from its socket until half of the requests have been responded. Applies to new sessions.
+     *
+     * @param maxInflightRequests the maximum number of unresponded requests of a session or 0 (the default) for no
+     *                            limit.
+     */
+    public void setMaxInflightRequests(int maxInflightRequests) {
+
+        if (maxInflightRequests < 0) {
+            throw new IllegalArgumentException("maxInflightRequests can't be negative");
+        }
+
+        this.maxInflightRequests = maxInflightRequests;
+    }
+
+    /**
+     * Configures the window of the requests sent to the clients (e.g. deliver_sm) of new sessions. To use a different
+     * window for a systemId, call {@link SmppSession#setSendWindow(int, long, long)} from the
+     * {@link SmppSessionListener#bound(SmppSession)} method.
+     *
+     * @param size the maximum number of requests that can be waiting for a response, 10 by default.
+     * @param offerTimeout the maximum time (in millis) to wait for a free slot in the window, 30000 by default.
+     * @param expireTimeout the maximum time (in millis) to wait for the response of a request, 60000 by default.
+     */
+    public void setSendWindow(int size, long offerTimeout, long expireTimeout) {
+
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+
+        if (offerTimeout < 0 || expireTimeout <= 0) {
+            throw new IllegalArgumentException("offerTimeout can't be negative and expireTimeout must be greater " +
+                    "than 0");
+        }
+
+        this.sendWindowSize = size;
+        this.sendWindowOfferTimeout = offerTimeout;
+        this.sendWindowExpireTimeout = expireTimeout;
+    }
+
+    /**
+     * <p>Enables the batching mode: the submit_sm packets of all the sessions are collected and handed to the
+     * {@link BatchPacketProcessor} in batches of up to <code>maxBatchSize</code> packets or after
+     * <code>maxDelayMicros</code> microseconds since the first packet of the batch was received, whatever happens
+     * first. Other packets are still handled by the {@link PacketProcessor}.</p>
+     *
+     * <p>Can only be called while the server is stopped. Use null to disable the batching mode.</p>
+     *
+     * @param batchPacketProcessor the {@link BatchPacketProcessor} implementation to be used or null.
+     * @param maxBatchSize the maximum number of packets of a batch.
+     * @param maxDelayMicros the maximum time a packet waits for the batch to be completed.
+     */
+    public void setBatchPacketProcessor(BatchPacketProcessor batchPacketProcessor, int maxBatchSize,
+            long maxDelayMicros) {
+
+        if (this.status != Status.STOPPED) {
+            throw new IllegalStateException("The batch packet processor can only be set while the server is stopped");
+        }
+
+        this.submitSmBatcher = batchPacketProcessor != null ?
+                new SubmitSmBatcher(batchPacketProcessor, maxBatchSize, maxDelayMicros) : null;
+    }
+
+    /**
+     * Sets the codec used to decode and encode the SMPP packets. Applies to new sessions.
+     *
+     * @param codec {@link Codec#NATIVE} (the default) or {@link Codec#CLOUDHOPPER}.
+     */
+    public void setCodec(Codec codec) {
+
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec specified");
+        }
+
+        this.codec = codec;
+    }
+
+    /**
+     * Sets the generator used to add a message id to the submit_sm_resp of the accepted submit_sm packets that the
+     * {@link PacketProcessor} answers without one (e.g. with {@link Response#OK}). Responses created with
+     * {@link Response#withMessageId(String)} keep their message id. Applies to new sessions.
+     *
+     * @param messageIdGenerator the {@link MessageIdGenerator} to be used or null (the default) to answer them without
+     *                           message id.
+     */
+    public void setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+        this.messageIdGenerator = messageIdGenerator;
+    }
+
+    /**
+     * @return the generator of the message ids or null if there is none.
+     */
+    public MessageIdGenerator getMessageIdGenerator() {
+        return messageIdGenerator;
+    }
+
+    /**
+     * <p>Configures the keepalive of the sessions. When nothing has been received from a bound client for
+     * <code>enquireLinkInterval</code> millis, the server sends an enquire_link; if the client doesn't answer (or send
+     * anything else) after <code>maxUnansweredEnquireLinks</code> of them, the connection is closed. This detects the
+     * half-open connections, which would otherwise stay open until the operating system notices.</p>
+     *
+     * <p>Connections that are not bound within <code>bindTimeout</code> millis are closed too. Takes effect the next
+     * time the server is started.</p>
+     *
+     * @param enquireLinkInterval the idle time (in millis) after which an enquire_link is sent, 0 (the default) to
+     *                            disable them.
+     * @param maxUnansweredEnquireLinks the number of unanswered enquire_link packets after which the connection is
+     *                                  closed, 3 by default.
+     * @param bindTimeout the time (in millis) a connection has to bind, 0 (the default) for no limit.
+     */
+    public void setKeepalive(long enquireLinkInterval, int maxUnansweredEnquireLinks, long bindTimeout) {
+
+        if (enquireLinkInterval < 0 || bindTimeout < 0) {
+            throw new IllegalArgumentException("enquireLinkInterval and bindTimeout can't be negative");
+        }
+
+        if (maxUnansweredEnquireLinks <= 0) {
+            throw new IllegalArgumentException("maxUnansweredEnquireLinks must be greater than 0");
+        }
+
+        this.enquireLinkInterval = enquireLinkInterval;
+        this.maxUnansweredEnquireLinks = maxUnansweredEnquireLinks;
+        this.bindTimeout = bindTimeout;
+    }
+
+    /**
+     * Sets the time the {@link PacketProcessor} has to answer a request. When the processor doesn't call the
+     * {@link ResponseSender} in time (e.g. because of an exception or a lost callback), the server answers the request
+     * with <code>timeoutResponse</code>, so the window of the client doesn't fill with requests that will never be
+     * answered. A response sent by the processor after that is ignored. Takes effect the next time the server is
+     * started.
+     *
+     * @param responseTimeout the time (in millis) the processor has to answer a request, 0 (the default) for no limit.
+     * @param timeoutResponse the response sent when the time runs out, usually {@link Response#SYSTEM_ERROR} (the
+     *                        default) or {@link Response#MESSAGE_QUEUE_FULL}.
+     */
+    public void setResponseTimeout(long responseTimeout, CommandResponse timeoutResponse) {
+
+        if (responseTimeout < 0) {
+            throw new IllegalArgumentException("responseTimeout can't be negative");
+        }
+
+        if (timeoutResponse == null) {
+            throw new IllegalArgumentException("timeoutResponse can't be null");
+        }
+
+        this.responseTimeout = responseTimeout;
+        this.responseTimeoutResponse = timeoutResponse;
+    }
+
+    /**
+     * <p>Exposes all the sessions through a single {@link SessionTable} MBean (registered as
+     * <code>io.github.mudphilo.smppserver:type=SessionTable,server=&lt;name&gt;</code>) that returns pages of the
+     * sessions filtered by systemId and status, instead of registering an MBean for each connection. With thousands
+     * of connections this keeps the MBeanServer small and the registration out of the connection handling.</p>
+     *
+     * <p>Disabled by default. Takes effect the next time the server is started.</p>
+     *
+     * @param sessionTableEnabled true to expose the sessions through a single MBean, false to register an MBean for
+     *                            each session.
+     */
+    public void setSessionTable(boolean sessionTableEnabled) {
+        this.sessionTableEnabled = sessionTableEnabled;
+    }
+
+    /**
+     * @return the MBean that exposes all the sessions or null if each session is registered as an MBean.
+     */
+    SessionTable getSessionTable() {
+        return sessionTable;
+    }
+
+    /**
+     * <p>Exposes the metrics of the server in the OpenMetrics text format (the format scraped by Prometheus) at
+     * <code>http://&lt;host&gt;:&lt;metricsPort&gt;/metrics</code>, using the HTTP server of the JDK: the sessions,
+     * the PDUs by command, the responses by command status, the bytes, the latencies by command and systemId and the
+     * occupancy of the windows. See {@link MetricsEndpoint}.</p>
+     *
+     * <p>Disabled by default. Takes effect the next time the server is started.</p>
+     *
+     * @param metricsPort the port of the metrics endpoint, 0 to disable it.
+     */
+    public void setMetricsPort(int metricsPort) {
+
+        if (metricsPort < 0) {
+            throw new IllegalArgumentException("metricsPort can't be negative");
+        }
+
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return the endpoint that exposes the metrics or null if the metrics are not exposed.
+     */
+    MetricsEndpoint getMetricsEndpoint() {
+        return metricsEndpoint;
+    }
+
+    private String sessionTableName() {
+        return "io.github.mudphilo.smppserver:type=SessionTable,server=" + name;
+    }
+
+    /**
+     * @return the hashed wheel timer shared by the sessions or null if the server is not started.
+     */
+    Timer getTimer() {
+        return timer;
+    }
+
+    public void setSessionListener(SmppSessionListener sessionListener) {
+        this.sessionListener = sessionListener;
+    }
+
+    /**
+     * Sets the number of threads used to process the packets outside the Netty I/O threads. The packets of a session
+     * are always processed by the same thread, in the order they were received. If 0 (the default), the packets are
+     * processed in the I/O threads. Takes effect the next time the server is started.
+     *
+     * @param processingThreads the number of processing threads.
+     */
+    public void setProcessingThreads(int processingThreads) {
+
+        if (processingThreads < 0) {
+            throw new IllegalArgumentException("processingThreads can't be negative");
+        }
+
+        this.processingThreads = processingThreads;
+    }
+
+    /**
+     * Sets the maximum number of pending packets of each processing thread. When the queue is full, the packets are
+     * answered with {@link Response#MESSAGE_QUEUE_FULL}. Takes effect the next time the server is started.
+     *
+     * @param processingQueueSize the maximum number of pending packets of each processing thread.
+     */
+    public void setProcessingQueueSize(int processingQueueSize) {
+
+        if (processingQueueSize <= 0) {
+            throw new IllegalArgumentException("processingQueueSize must be greater than 0");
+        }
+
+        this.processingQueueSize = processingQueueSize;
+    }
+
+    /**
+     * Helper method. Adds a bound session to the {@link #receiverSessions} index if it can receive requests.
+     *
+     * @param session the session that was bound.
+     */
+    private void addReceiverSession(SmppSession session) {
+
+        SmppSession.BindType bindType = session.getBindType();
+        if (bindType == SmppSession.BindType.TRANSMITTER || session.getSystemId() == null) {
+            return;
+        }
+
+        receiverSessions.compute(session.getSystemId(), (k, systemIdSessions) -> {
+            Set<SmppSession> updated = systemIdSessions != null ? systemIdSessions : ConcurrentHashMap.newKeySet();
+            updated.add(session);
+            return updated;
+        });
+
+        // the session could have been disconnected while it was being added
+        if (!session.isBound() || !session.isConnected()) {
+            removeReceiverSession(session);
+        }
+    }
+
+    /**
+     * Helper method. Removes a session from the {@link #receiverSessions} index, dropping the systemId once it has
+     * no sessions left.
+     *
+     * @param session the session that was disconnected.
+     */
+    private void removeReceiverSession(SmppSession session) {
+
+        String systemId = session.getBoundSystemId();
+        if (systemId == null) {
+            return;
+        }
+
+        receiverSessions.computeIfPresent(systemId, (k, systemIdSessions) -> {
+            systemIdSessions.remove(session);
+            return systemIdSessions.isEmpty() ? null : systemIdSessions;
+        });
+    }
+
+    /**
+     * Keeps the {@link #receiverSessions} index up to date and forwards the bind to the {@link #sessionListener}.
+     * Creation and destruction of sessions are handled by the {@link ServerChannelHandler}.
+     */
+    private class BindListener implements SmppSessionListener {
+
+        @Override
+        public void created(SmppSession session) {
+        }
+
+        @Override
+        public void bound(SmppSession session) {
+
+            if (sessionListener != null) {
+
+                try {
+                    sessionListener.bound(session);
+                } catch (Exception e) {
+                    logger.warn("Exception notifying the bind of session {}: {}", session.getId(), e.getMessage(), e);
+                }
+            }
+
+            addReceiverSession(session);
+        }
+
+        @Override
+        public void destroyed(SmppSession session) {
+        }
+
+    }
+
+    /**
+     * This is the NIO server channel handler that manages connections and disconnections of clients.
+     *
+     * @author German Escobar
+     */
+    private class ServerChannelHandler extends SimpleChannelUpstreamHandler {
+
+
+        public ServerChannelHandler() {
+
+        }
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+
+            Channel channel = e.getChannel();
+
+            SmppSession session = null;
+            int id = sessionId.incrementAndGet();
+
+            try {
+
+                session = new SmppSession(id, channel, packetProcessor);
+                session.setProcessingExecutor(processingExecutor);
+                session.setSubmitSmBatcher(submitSmBatcher);
+                session.setMaxInflightRequests(maxInflightRequests);
+                session.setRateLimiter(rateLimiter);
+                session.setMessageIdGenerator(messageIdGenerator);
+                session.setResponseDeadline(responseDeadline);
+                session.setLatencies(latencies);
+                session.setServerTrafficCounters(trafficCounters);
+                session.setSendWindow(sendWindowSize, sendWindowOfferTimeout, sendWindowExpireTimeout);
+                session.setSessionListener(bindListener);
+                logger.info("created session with id {} ", id);
+
+            } catch (Exception f) {
+
+                logger.warn("Couldn't create session with id {} as a JMX MBean: {} exp {}", id, f.getMessage(), f);
+
+            }
+
+
+            if (codec == Codec.CLOUDHOPPER) {
+
+                channel.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_PDU_DECODER_NAME,
+                        new SmppSessionPduDecoder(new DefaultPduTranscoder(new DefaultPduTranscoderContext())));
+                channel.getPipeline().addLast(PIPELINE_SESSION_PACKET_DECODER_NAME, new PduPacketCodec());
+
+            } else {
+
+                channel.getPipeline().addLast(PIPELINE_SESSION_PACKET_DECODER_NAME, new PacketDecoder());
+                channel.getPipeline().addLast(PIPELINE_SESSION_PACKET_ENCODER_NAME, new PacketEncoder());
+            }
+
+            channel.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_WRAPPER_NAME, session);
+            channel.getPipeline().addFirst(PIPELINE_SESSION_TRAFFIC_NAME, new TrafficHandler(session));
+
+            //assert session != null;
+            //session.setPacketProcessor(packetProcessor);
+
+            logger.info("session.isBound {}",session.isBound());
+            logger.info("session.getStatusString() {}",session.getStatusString());
+
+            sessions.put(channel, session);
+            createdSessions.incrementAndGet();
+
+            if (keepalive != null) {
+                keepalive.watch(session);
+            }
+
+
+            if (sessionTable == null) {
+
+                try {
+
+                    Management.register(session, "io.github.mudphilo.smppserver:type=Sessions,id=" + session.getId());
+
+                } catch (Exception f) {
+
+                    logger.warn("Couldn't register session with id {} as a JMX MBean: {} {}", id, f.getMessage(), f);
+                }
+            }
+
+            if (sessionListener != null) {
+
+                sessionListener.created(session);
+            }
+
+        }
+
+        @Override
+        public void channelDisconnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
 
             SmppSession session = sessions.remove(e.getChannel());
 
@@ -337,13 +1447,18 @@ public class SmppServer {
 
                 destroyedSessions.incrementAndGet();
 
-                try {
+                removeReceiverSession(session);
 
-                    Management.unregister("io.github.mudphilo.smppserver:type=Sessions,id=" + session.getId());
+                if (sessionTable == null) {
 
-                } catch (Exception f) {
+                    try {
+
+                        Management.unregister("io.github.mudphilo.smppserver:type=Sessions,id=" + session.getId());
+
+                    } catch (Exception f) {
 
-                    logger.warn("Exception unregistering session {} : {}", session.getId(), f.getMessage(), f);
+                        logger.warn("Exception unregistering session {} : {}", session.getId(), f.getMessage(), f);
+                    }
                 }
 
                 if (sessionListener != null) {
@@ -356,4 +1471,57 @@ public class SmppServer {
 
     }
 
+    /**
+     * Updates the rates of the {@link TrafficCounters} of the server and the sessions every second, until the timer
+     * is stopped.
+     */
+    private class TrafficTick implements TimerTask {
+
+        @Override
+        public void run(Timeout timeout) {
+
+            trafficCounters.tick();
+            for (SmppSession session : sessions.values()) {
+                session.getTrafficCounters().tick();
+            }
+
+            if (!timeout.getTimer().equals(timer)) {
+                // the server was stopped (and maybe started again with another timer)
+                return;
+            }
+
+            try {
+                timeout.getTimer().newTimeout(this, TrafficCounters.TICK_INTERVAL, TimeUnit.SECONDS);
+            } catch (IllegalStateException e) {
+                // the timer was stopped
+            }
+        }
+
+    }
+
+    /**
+     * Creates the daemon threads of the {@link #timer} and the {@link #failoverExecutor}, named with a prefix and a
+     * sequence (e.g. <code>smpp-failover-&lt;name&gt;-1</code>) so they are easy to tell apart in a thread dump.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String threadNamePrefix;
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public DaemonThreadFactory(String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+
+    }
+
 }
@@ -2,29 +2,44 @@ package io.github.mudphilo.smppserver;
 
 import com.cloudhopper.commons.util.windowing.Window;
 import com.cloudhopper.commons.util.windowing.WindowFuture;
+import com.cloudhopper.commons.util.windowing.WindowListener;
 import com.cloudhopper.smpp.SmppConstants;
-import com.cloudhopper.smpp.pdu.*;
-import com.cloudhopper.smpp.tlv.Tlv;
-import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
-import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
-import com.cloudhopper.smpp.transcoder.PduTranscoder;
-import com.cloudhopper.smpp.type.RecoverablePduException;
-import com.cloudhopper.smpp.type.SmppChannelException;
-import com.cloudhopper.smpp.type.UnrecoverablePduException;
 import io.github.mudphilo.jmx.annotation.ManagedAttribute;
 import io.github.mudphilo.jmx.annotation.ManagedOperation;
+import io.github.mudphilo.smppserver.packet.Bind;
+import io.github.mudphilo.smppserver.packet.EnquireLink;
 import io.github.mudphilo.smppserver.packet.SmppPacket;
 import io.github.mudphilo.smppserver.packet.SmppRequest;
 import io.github.mudphilo.smppserver.packet.SmppResponse;
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+import io.github.mudphilo.smppserver.packet.SubmitSmResp;
+import io.github.mudphilo.smppserver.packet.Tlv;
 import io.github.mudphilo.smppserver.packet.Unbind;
-import io.github.mudphilo.smppserver.packet.ch.PacketMapper;
 import org.apache.logging.log4j.LogManager;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 
+import javax.management.openmbean.TabularData;
 import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Represents an SMPP session with an SMPP client. When it receives an SMPP packet, it calls the 
@@ -42,6 +57,71 @@ public class SmppSession extends SimpleChannelHandler {
 
 	static final org.apache.logging.log4j.Logger log = LogManager.getLogger(SmppSession.class.getSimpleName());
 
+	/**
+	 * Disconnects the channel once a write completes (successfully or not).
+	 */
+	private static final ChannelFutureListener DISCONNECT = new ChannelFutureListener() {
+		
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			future.getChannel().disconnect();
+		}
+
+	};
+
+	/**
+	 * A pre-encoded enquire_link_resp (command_length, command_id, command_status, sequence_number). Only the sequence
+	 * number, at {@link #SEQUENCE_NUMBER_OFFSET}, changes between responses.
+	 */
+	private static final byte[] ENQUIRE_LINK_RESP = new byte[] {
+			0x00, 0x00, 0x00, 0x10,
+			(byte) 0x80, 0x00, 0x00, 0x15,
+			0x00, 0x00, 0x00, 0x00,
+			0x00, 0x00, 0x00, 0x00
+	};
+
+	/**
+	 * The position of the sequence number in the header of a PDU.
+	 */
+	private static final int SEQUENCE_NUMBER_OFFSET = 12;
+
+	/**
+	 * The default maximum number of requests sent to the client that can be waiting for a response.
+	 */
+	public static final int DEFAULT_SEND_WINDOW_SIZE = 10;
+
+	/**
+	 * The default time (in millis) to wait for a free slot in the send window.
+	 */
+	public static final long DEFAULT_SEND_WINDOW_OFFER_TIMEOUT = 30000;
+
+	/**
+	 * The default time (in millis) to wait for the response of a request sent to the client.
+	 */
+	public static final long DEFAULT_SEND_WINDOW_EXPIRE_TIMEOUT = 60000;
+
+	/**
+	 * How often (in millis) the send windows are checked for expired requests.
+	 */
+	private static final long SEND_WINDOW_MONITOR_INTERVAL = 1000;
+
+	/**
+	 * Checks the send windows of all the sessions for expired requests.
+	 */
+	private static final ScheduledExecutorService SEND_WINDOW_MONITOR = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+
+			Thread thread = new Thread(runnable, "smpp-window-monitor");
+			thread.setDaemon(true);
+
+			return thread;
+		}
+
+	});
+
 	/**
 	 * Possible values for the status of the session.
 	 * 
@@ -85,7 +165,7 @@ public class SmppSession extends SimpleChannelHandler {
 	/**
 	 * The status of the session.
 	 */
-	private Status status = Status.OPEN;
+	private volatile Status status = Status.OPEN;
 
 	/**
 	 * The bind type of the session. Null if not bound.
@@ -112,7 +192,40 @@ public class SmppSession extends SimpleChannelHandler {
 	 */
 	private PacketProcessor packetProcessor;
 	
-	private final PduTranscoder transcoder;
+	/**
+	 * Used to process the packets outside the I/O thread. If null, the packets are processed in the I/O thread.
+	 */
+	private OrderedExecutor processingExecutor;
+	
+	/**
+	 * Collects the submit_sm packets in batches. If null, submit_sm packets are handled by the packet processor.
+	 */
+	private SubmitSmBatcher submitSmBatcher;
+	
+	/**
+	 * Limits the submit_sm packets per second of the systemId. If null, there is no limit.
+	 */
+	private RateLimiter rateLimiter;
+	
+	/**
+	 * Generates the message id of the accepted submit_sm answered without one, null to leave them without message id.
+	 */
+	private MessageIdGenerator messageIdGenerator;
+	
+	/**
+	 * Answers the requests that the packet processor doesn't answer in time. If null, there is no deadline.
+	 */
+	private ResponseDeadline responseDeadline;
+	
+	/**
+	 * Records the latency of the requests. If null, latencies are not recorded.
+	 */
+	private CommandLatencies latencies;
+	
+	/**
+	 * Counts the PDUs and bytes of the session.
+	 */
+	private volatile TrafficCounters trafficCounters = new TrafficCounters();
 	
 	/**
 	 * Used to set the sequence number to packets sent to clients
@@ -120,11 +233,89 @@ public class SmppSession extends SimpleChannelHandler {
 	private final AtomicInteger sequenceId = new AtomicInteger(0);
 	
 	/**
-	 * Reusing the cloudhopper window mechanism to handle the response of packets sent through the 
-	 *  method.
+	 * The number of requests received from the client that haven't been responded.
+	 */
+	private final AtomicInteger inflightRequests = new AtomicInteger();
+	
+	/**
+	 * The maximum number of requests that can be waiting for a response before we stop reading from the channel. If 
+	 * 0, there is no limit.
+	 */
+	private volatile int maxInflightRequests;
+	
+	/**
+	 * Counts the PDUs that couldn't be written to the channel.
+	 */
+	private final AtomicLong failedWrites = new AtomicLong();
+	
+	/**
+	 * Notified when a write completes. Failures are counted and logged instead of being thrown back to the caller.
+	 */
+	private final ChannelFutureListener writeFailureListener = new ChannelFutureListener() {
+		
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			
+			if (!future.isSuccess()) {
+				
+				failedWrites.incrementAndGet();
+				log.error("[{}] fatal exception thrown while attempting to send PDU to client: {}", getId(), 
+						future.getCause() != null ? future.getCause().getMessage() : "cancelled");
+			}
+		}
+		
+	};
+	
+	/**
+	 * Reusing the cloudhopper window mechanism to handle the response of packets sent through the
+	 * {@link #sendRequestAsync(SmppRequest)} method. Replaced when the size of the window changes.
+	 */
+	private volatile Window<Integer, SmppRequest, SmppResponse> sendWindow;
+
+	/**
+	 * The maximum time (in millis) to wait for a free slot in the send window.
+	 */
+	private volatile long sendWindowOfferTimeout = DEFAULT_SEND_WINDOW_OFFER_TIMEOUT;
+
+	/**
+	 * The maximum time (in millis) to wait for the response of a request sent to the client.
+	 */
+	private volatile long sendWindowExpireTimeout = DEFAULT_SEND_WINDOW_EXPIRE_TIMEOUT;
+
+	/**
+	 * The futures of the requests sent to the client that are waiting for a response, by sequence number.
+	 */
+	private final ConcurrentMap<Integer, CompletableFuture<SmppResponse>> pendingResponses =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Called by the monitor of the send window when a request expires without a response.
+	 */
+	private final WindowListener<Integer, SmppRequest, SmppResponse> sendWindowListener =
+			new WindowListener<Integer, SmppRequest, SmppResponse>() {
+
+		@Override
+		public void expired(WindowFuture<Integer, SmppRequest, SmppResponse> future) {
+			failResponse(future.getKey(), new TimeoutException("No response received for the request with sequence " +
+					"number " + future.getKey()));
+		}
+
+	};
+
+	/**
+	 * Notified when the session is bound. If null, nobody is notified.
 	 */
-	@SuppressWarnings("rawtypes")
-	private final Window<Integer, PduRequest, PduResponse> sendWindow = new Window<>(10);
+	private SmppSessionListener sessionListener;
+
+	/**
+	 * When (System.nanoTime()) the last packet was received from the client, used to detect idle sessions.
+	 */
+	private volatile long lastReceivedTime = System.nanoTime();
+
+	/**
+	 * The enquire_link packets sent by the {@link SessionKeepalive} since the last packet was received.
+	 */
+	private volatile int unansweredEnquireLinks;
 
 	public SmppSession(int sessionId,Channel channel, PacketProcessor packetProcessor) {
 		
@@ -139,8 +330,8 @@ public class SmppSession extends SimpleChannelHandler {
 		this.sessionId = sessionId;
 		this.channel = channel;
 		this.packetProcessor = packetProcessor;
-		this.transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
 		this.creationTime = new Date();
+		this.sendWindow = createSendWindow(DEFAULT_SEND_WINDOW_SIZE);
 	}
 	
 	@ManagedAttribute
@@ -149,98 +340,182 @@ public class SmppSession extends SimpleChannelHandler {
 	}
 
 	/**
-	 * This is called when a message is received through the channel link. it handles request and response PDU's
+	 * @return the numeric id of the session, unique within the server.
+	 */
+	int getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * This is called when a packet is received through the channel link (already decoded by the codec of the 
+	 * pipeline). It handles request and response packets.
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
 
-		Pdu pdu = (Pdu) e.getMessage();
+		SmppPacket packet = (SmppPacket) e.getMessage();
+		trafficCounters.pduReceived(packet.getCommandId());
+
+		// any packet shows that the client is alive
+		lastReceivedTime = System.nanoTime();
+		if (unansweredEnquireLinks != 0) {
+			unansweredEnquireLinks = 0;
+		}
 
 		// handle responses to packets that were sent using the sendRequest(...) method
-		if (pdu.isResponse()) {
-			
-			PduResponse pduResponse = (PduResponse) pdu;
-			this.sendWindow.complete(pduResponse.getSequenceNumber(), pduResponse);
+		if (packet.isResponse()) {
 			
+			SmppResponse smppResponse = (SmppResponse) packet;
+			this.sendWindow.complete(smppResponse.getSequenceNumber(), smppResponse);
+
+			CompletableFuture<SmppResponse> response = pendingResponses.remove(smppResponse.getSequenceNumber());
+			if (response != null) {
+				response.complete(smppResponse);
+			}
+
 			return;
 		}
 		
+		final SmppRequest request = (SmppRequest) packet;
+		
 		// if packet is a bind request and session is already bound, respond with error
-		if (pdu instanceof BaseBind && isBound()) {
+		if (request.isBind() && isBound()) {
 			
 			log.warn("session with system id {}  is already bound",systemId);
-			
-			PduResponse response = createResponse((PduRequest) pdu, Response.ALREADY_BOUND);
-			send(response);
+			send( createResponse(request, Response.ALREADY_BOUND) );
 			
 			return;
 		}
 		
 		// if not a bind packet and session is not bound, respond with error
-		if (!(pdu instanceof BaseBind) && !isBound()) {
+		if (!request.isBind() && !isBound()) {
 			
-			PduResponse response = createResponse((PduRequest) pdu, Response.INVALID_BIND_STATUS);
-			send(response);
+			send( createResponse(request, Response.INVALID_BIND_STATUS) );
 			
 			return;
 		}
 
-		ResponseSender responseSender = new OnlyOnceResponse( (PduRequest) pdu );
+		// keepalives are answered right here so they never wait behind other packets or depend on the packet processor
+		if (request.getCommandId() == SmppPacket.ENQUIRE_LINK) {
+			
+			sendEnquireLinkResp(request.getSequenceNumber());
+			return;
+		}
 
-   	 	try {
-   	 		packetProcessor.processPacket(sessionId, (SmppRequest) PacketMapper.map(pdu), responseSender );
-   	 	} catch (Exception f) {
-   	 		log.error("Exception calling the packet processor: {}",f.getMessage(), f);
-   	 	}
+		// answer the submit_sm over the limit of the systemId without bothering the packet processor
+		if (rateLimiter != null && request.isSubmitSm() && !rateLimiter.tryAcquire(systemId)) {
+			
+			send( createResponse(request, Response.THROTTLING_ERROR) );
+			
+			return;
+		}
+
+		final ResponseSender responseSender = new OnlyOnceResponse(request);
+		
+		// in batching mode the submit_sm packets are queued in the batcher, which keeps the order of the packets
+		if (submitSmBatcher != null && request instanceof SubmitSm) {
+			
+			try {
+				submitSmBatcher.submit(sessionId, (SubmitSm) request, responseSender);
+			} catch (RejectedExecutionException f) {
+				log.warn("[{}] {}, rejecting packet", getId(), f.getMessage());
+				responseSender.send(Response.MESSAGE_QUEUE_FULL);
+			}
+			
+			return;
+		}
+		
+		// without a processing executor the packet is processed in the I/O thread
+		if (processingExecutor == null) {
+			process(request, responseSender);
+			return;
+		}
+		
+		try {
+			
+			processingExecutor.execute(sessionId, new Runnable() {
+				
+				@Override
+				public void run() {
+					process(request, responseSender);
+				}
+				
+			});
+			
+		} catch (RejectedExecutionException f) {
+			
+			log.warn("[{}] processing queue is full, rejecting packet", getId());
+			responseSender.send(Response.MESSAGE_QUEUE_FULL);
+		}
    	 	
 	}
 	
 	/**
-	 * Helper method. Creates a response PDU from the request and sets the command status from the {@link Response} 
-	 * object. 
+	 * Helper method. Calls the {@link PacketProcessor} with the request.
+	 * 
+	 * @param request the request received from the client.
+	 * @param responseSender used by the {@link PacketProcessor} to respond the request.
+	 */
+	private void process(SmppRequest request, ResponseSender responseSender) {
+		
+		try {
+			packetProcessor.processPacket(sessionId, request, responseSender );
+		} catch (Exception f) {
+			log.error("Exception calling the packet processor: {}",f.getMessage(), f);
+		}
+		
+	}
+	
+	/**
+	 * Helper method. Creates a response packet from the request and sets the command status from the 
+	 * {@link CommandResponse} object. 
 	 * 
 	 * @param request
 	 * @param response
 	 * 
-	 * @return the created PduResponse object
+	 * @return the created SmppResponse object
 	 */
-	private PduResponse createResponse(PduRequest<PduResponse> request, Response response) {
+	private SmppResponse createResponse(SmppRequest request, CommandResponse response) {
 		
-		PduResponse pduResponse = request.createResponse();
-		pduResponse.setCommandStatus( response.getCommandStatus() );
-		return pduResponse;
+		SmppResponse smppResponse = request.createResponse();
+		smppResponse.setCommandStatus( response.getCommandStatus() );
+		return smppResponse;
 		
 	}
 	
 	/**
-	 * Helper method. Sends a PDU through the channel link
+	 * Helper method. Sends a packet through the channel link, where it is encoded by the codec of the pipeline. The 
+	 * write is asynchronous: this method returns as soon as the packet is queued in the channel and write failures 
+	 * are reported to the {@link #writeFailureListener}.
 	 * 
-	 * @param pdu the Pdu to be sent.
+	 * @param packet the SmppPacket to be sent.
+	 * 
+	 * @return the ChannelFuture of the write, used by callers that need to act once the packet is written.
 	 */
-	private void send(Pdu pdu) throws UnrecoverablePduException, SmppChannelException, InterruptedException, RecoverablePduException {
-		
-		try {
-			
-			// encode the pdu into a buffer
-	        ChannelBuffer buffer = transcoder.encode(pdu);
-	
-	        // always log the PDU
+	private ChannelFuture send(SmppPacket packet) {
 
-	        // write the pdu out & wait till its written
-	        ChannelFuture channelFuture = this.channel.write(buffer).await();
-	
-	        // check if the write was a success
-	        if (!channelFuture.isSuccess()) {
-	        	throw new SmppChannelException(channelFuture.getCause().getMessage(), channelFuture.getCause());
-	        }
-	        
-		} catch (Exception e) {
+		trafficCounters.pduSent(packet.getCommandId(), packet.getCommandStatus());
 
-			log.error("fatal exception thrown while attempting to send PDU to client: {}", e.getMessage());
-			throw e;
+		// write the packet out without blocking the calling (usually I/O) thread
+		ChannelFuture channelFuture = this.channel.write(packet);
+		channelFuture.addListener(writeFailureListener);
 
-		}
+		return channelFuture;
+	}
+	
+	/**
+	 * Helper method. Sends an enquire_link_resp copying the pre-encoded {@link #ENQUIRE_LINK_RESP} and patching its 
+	 * sequence number, without going through the codec.
+	 * 
+	 * @param sequenceNumber the sequence number of the enquire_link.
+	 */
+	private void sendEnquireLinkResp(int sequenceNumber) {
+		
+		ChannelBuffer buffer = ChannelBuffers.copiedBuffer(ENQUIRE_LINK_RESP);
+		buffer.setInt(SEQUENCE_NUMBER_OFFSET, sequenceNumber);
+		
+		trafficCounters.pduSent(SmppPacket.ENQUIRE_LINK_RESP, 0);
+		this.channel.write(buffer).addListener(writeFailureListener);
 	}
 	
 	/**
@@ -260,21 +535,73 @@ public class SmppSession extends SimpleChannelHandler {
 				Thread.currentThread().interrupt();
 			}
 		} else {
-			sendRequest( new Unbind(), 500);
+
+			// the connection is closed even if the client doesn't answer the unbind
+			try {
+				sendRequest( new Unbind(), 500);
+			} catch (SmppException e) {
+				log.warn("[{}] unbind not answered, connection closed anyway: {}", getId(), e.getMessage());
+			}
 		}
 	}
 	
 	/**
-	 * Sends an {@link SmppRequest} to the client.
+	 * Sends an {@link SmppRequest} to the client and waits for the response.
 	 * 
 	 * @param packet the request packet to send to the client.
+	 * @param timeout the maximum time (in millis) to wait for the response.
 	 * 
 	 * @return the received {@link SmppResponse}
-	 * @throws SmppException
+	 * @throws SmppException if the request couldn't be sent or the response didn't arrive in time. An unbind closes
+	 * the connection anyway.
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public SmppResponse sendRequest(SmppRequest packet, long timeout) throws SmppException {
 		
+		try {
+			
+			return sendRequestAsync(packet).get(timeout, TimeUnit.MILLISECONDS);
+			
+		} catch (ExecutionException e) {
+			
+			throw new SmppException("Couldn't send the request to the client", e.getCause());
+			
+		} catch (TimeoutException e) {
+			
+			// release the window slot, nobody is waiting for the response anymore
+			cancelRequest(packet.getSequenceNumber());
+			throw new SmppException("No response received from the client in " + timeout + " millis", e);
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			throw new SmppException(e);
+			
+		} finally {
+			
+			if (packet != null && packet.getCommandId() == SmppPacket.UNBIND) {
+				disconnectQuietly();
+			}
+		}
+		
+	}
+	
+	/**
+	 * <p>Sends an {@link SmppRequest} to the client without waiting for the response. The returned future is 
+	 * completed when the response arrives, or exceptionally if the request couldn't be written (with a 
+	 * {@link SmppWriteException}), the response didn't arrive before the expire timeout of the send window (with a 
+	 * <code>TimeoutException</code>) or the connection was closed.</p>
+	 * 
+	 * <p>Up to {@link #getSendWindowSize()} requests can be waiting for a response. When the window is full, the 
+	 * caller is blocked until a slot is released or the offer timeout of the window expires, so don't call this 
+	 * method from the Netty I/O threads (e.g. from a callback of the returned future) unless the window is big 
+	 * enough.</p>
+	 * 
+	 * @param packet the request packet to send to the client.
+	 * 
+	 * @return a future that is completed with the received {@link SmppResponse}.
+	 */
+	public CompletableFuture<SmppResponse> sendRequestAsync(SmppRequest packet) {
+		
 		if (packet == null) {
 			throw new IllegalArgumentException("No packet specified");
 		}
@@ -297,30 +624,101 @@ public class SmppSession extends SimpleChannelHandler {
 			packet.setSequenceNumber( sequenceId.incrementAndGet() );
 		}
 		
+		CompletableFuture<SmppResponse> response = new CompletableFuture<>();
+		
 		try {
-			PduRequest pdu = (PduRequest) PacketMapper.map(packet);
-	        
-	        WindowFuture<Integer,PduRequest,PduResponse> future = null;
-
-			future = sendWindow.offer(pdu.getSequenceNumber(), pdu, 30000, 60000, true);
-
-			send(pdu);
-	        
-	        // wait for the response to arrive
-	        future.await(timeout);
-	        
-	        if (packet.getCommandId() == SmppPacket.UNBIND) {
-	        	disconnect();
-	        }
-	        
-	        return (SmppResponse) PacketMapper.map( future.getResponse() );
-	        
+			
+			final int sequenceNumber = packet.getSequenceNumber();
+			
+			// blocks only while the window is full
+			final Window<Integer, SmppRequest, SmppResponse> window = sendWindow;
+			window.offer(sequenceNumber, packet, sendWindowOfferTimeout, sendWindowExpireTimeout, false);
+			pendingResponses.put(sequenceNumber, response);
+			
+			// release the window slot right away if the request couldn't be written
+			send(packet).addListener(new ChannelFutureListener() {
+				
+				@Override
+				public void operationComplete(ChannelFuture channelFuture) throws Exception {
+					if (!channelFuture.isSuccess()) {
+						window.fail(sequenceNumber, channelFuture.getCause());
+						failResponse(sequenceNumber, new SmppWriteException("Couldn't write the request to the client", 
+								channelFuture.getCause()));
+					}
+				}
+				
+			});
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			response.completeExceptionally(e);
+			
 		} catch (Exception e) {
-
+			
+			response.completeExceptionally(e);
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Helper method. Completes exceptionally the future of a request that is waiting for a response.
+	 * 
+	 * @param sequenceNumber the sequence number of the request.
+	 * @param cause the reason why the request failed.
+	 */
+	private void failResponse(int sequenceNumber, Throwable cause) {
+		
+		CompletableFuture<SmppResponse> response = pendingResponses.remove(sequenceNumber);
+		if (response != null) {
+			response.completeExceptionally(cause);
+		}
+	}
+	
+	/**
+	 * Helper method. Releases the window slot of a request that is not going to be waited anymore.
+	 * 
+	 * @param sequenceNumber the sequence number of the request.
+	 */
+	private void cancelRequest(int sequenceNumber) {
+		
+		pendingResponses.remove(sequenceNumber);
+		
+		try {
+			sendWindow.cancel(sequenceNumber);
+		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
-			throw new SmppException(e);
+		}
+	}
+	
+	/**
+	 * Fails the requests that are still waiting for a response when the connection is closed.
+	 */
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		
+		this.status = Status.CLOSED;
+		this.sendWindow.destroy();
+		
+		for (Integer sequenceNumber : pendingResponses.keySet()) {
+			failResponse(sequenceNumber, new ClosedChannelException());
 		}
 		
+		super.channelClosed(ctx, e);
+	}
+	
+	/**
+	 * Helper method. Creates a send window of the specified size that is checked for expired requests by the 
+	 * {@link #SEND_WINDOW_MONITOR}.
+	 * 
+	 * @param size the maximum number of requests waiting for a response.
+	 * 
+	 * @return the created Window object.
+	 */
+	private Window<Integer, SmppRequest, SmppResponse> createSendWindow(int size) {
+		return new Window<>(size, SEND_WINDOW_MONITOR, SEND_WINDOW_MONITOR_INTERVAL, sendWindowListener, 
+				"smpp-window-monitor");
 	}
 	
 	/**
@@ -336,6 +734,18 @@ public class SmppSession extends SimpleChannelHandler {
 
 	}
 
+	/**
+	 * Helper method. Disconnects without throwing, preserving the interrupt status of the thread.
+	 */
+	private void disconnectQuietly() {
+		
+		try {
+			disconnect();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	/**
 	 * @return the status of the session.
 	 */
@@ -348,6 +758,91 @@ public class SmppSession extends SimpleChannelHandler {
 		return status.name();
 	}
 	
+	/**
+	 * @return the number of requests received from the client that haven't been responded.
+	 */
+	@ManagedAttribute
+	public int getInflightRequests() {
+		return inflightRequests.get();
+	}
+	
+	/**
+	 * @return the maximum number of requests that can be waiting for a response, 0 if there is no limit.
+	 */
+	@ManagedAttribute
+	public int getMaxInflightRequests() {
+		return maxInflightRequests;
+	}
+	
+	/**
+	 * Sets the maximum number of requests that can be waiting for a response. When the limit is reached, the session
+	 * stops reading from the socket (so the client is slowed down by TCP flow control) until half of the requests
+	 * have been responded. 
+	 * 
+	 * @param maxInflightRequests the maximum number of requests waiting for a response or 0 for no limit.
+	 */
+	public void setMaxInflightRequests(int maxInflightRequests) {
+		
+		if (maxInflightRequests < 0) {
+			throw new IllegalArgumentException("maxInflightRequests can't be negative");
+		}
+		
+		this.maxInflightRequests = maxInflightRequests;
+		
+		// the limit could have been raised or removed while reads were suspended
+		if (maxInflightRequests == 0 || inflightRequests.get() < maxInflightRequests) {
+			resumeReading();
+		}
+	}
+	
+	/**
+	 * Helper method. Called when a request is received. Suspends the reads from the channel if the maximum of 
+	 * inflight requests is reached.
+	 */
+	private void requestReceived() {
+		
+		int inflight = inflightRequests.incrementAndGet();
+		int max = maxInflightRequests;
+		
+		if (max > 0 && inflight >= max && channel.isReadable()) {
+			log.debug("[{}] {} inflight requests, suspending reads", getId(), inflight);
+			channel.setReadable(false);
+		}
+	}
+	
+	/**
+	 * Helper method. Called when a request is responded. Resumes the reads from the channel once the inflight 
+	 * requests have drained to half of the maximum.
+	 */
+	private void requestResponded() {
+		
+		int inflight = inflightRequests.decrementAndGet();
+		int max = maxInflightRequests;
+		
+		if (max > 0 && inflight <= max / 2) {
+			resumeReading();
+		}
+	}
+	
+	/**
+	 * Helper method. Resumes the reads from the channel if they were suspended.
+	 */
+	private void resumeReading() {
+		
+		if (!channel.isReadable() && channel.isOpen()) {
+			log.debug("[{}] resuming reads", getId());
+			channel.setReadable(true);
+		}
+	}
+	
+	/**
+	 * @return the number of PDUs that couldn't be written to the client.
+	 */
+	@ManagedAttribute
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+	
 	/**
 	 * A utility method to easily check if the session is bound.
 	 * 
@@ -395,6 +890,65 @@ public class SmppSession extends SimpleChannelHandler {
 		return systemId;
 	}
 	
+	/**
+	 * @return the system id which was used by the client to bind the session, even if the session is not bound 
+	 * anymore, or null if the session was never bound.
+	 */
+	String getBoundSystemId() {
+		return systemId;
+	}
+
+	/**
+	 * @return the nanoseconds since the last packet was received from the client.
+	 */
+	long getIdleNanos() {
+		return System.nanoTime() - lastReceivedTime;
+	}
+
+	/**
+	 * @return the number of enquire_link packets sent since the last packet was received from the client.
+	 */
+	int getUnansweredEnquireLinks() {
+		return unansweredEnquireLinks;
+	}
+
+	/**
+	 * Sends an enquire_link to the client without going through the send window, so it never waits for a free slot.
+	 * The response (or any other packet) received from the client resets {@link #getUnansweredEnquireLinks()}.
+	 */
+	void sendEnquireLink() {
+
+		EnquireLink enquireLink = new EnquireLink();
+		enquireLink.setSequenceNumber( sequenceId.incrementAndGet() );
+
+		unansweredEnquireLinks++;
+		send(enquireLink);
+	}
+
+	/**
+	 * Closes the connection right away without sending an unbind (unlike {@link #close()}, it doesn't wait), e.g. 
+	 * because the client is not responding.
+	 */
+	void abort() {
+
+		this.status = Status.CLOSED;
+		channel.close();
+	}
+	
+	/**
+	 * @return true if the connection with the client is still open, false otherwise.
+	 */
+	boolean isConnected() {
+		return channel.isConnected();
+	}
+
+	/**
+	 * @return the address of the client or null if it's not connected.
+	 */
+	SocketAddress getRemoteAddress() {
+		return channel.getRemoteAddress();
+	}
+	
 	public Date creationTime() {
 		return creationTime;
 	}
@@ -442,6 +996,253 @@ public class SmppSession extends SimpleChannelHandler {
 		return packetProcessor;
 	}
 	
+	/**
+	 * Sets the executor in which the packets of this session are processed. Packets are processed in the I/O thread
+	 * if null.
+	 * 
+	 * @param processingExecutor the {@link OrderedExecutor} to be used or null.
+	 */
+	public void setProcessingExecutor(OrderedExecutor processingExecutor) {
+		this.processingExecutor = processingExecutor;
+	}
+	
+	/**
+	 * Sets the batcher that collects the submit_sm packets of this session.
+	 * 
+	 * @param submitSmBatcher the batcher to be used or null to handle submit_sm packets with the packet processor.
+	 */
+	void setSubmitSmBatcher(SubmitSmBatcher submitSmBatcher) {
+		this.submitSmBatcher = submitSmBatcher;
+	}
+	
+	/**
+	 * Sets the rate limiter used to throttle the submit_sm packets of this session.
+	 * 
+	 * @param rateLimiter the {@link RateLimiter} to be used or null for no limit.
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Sets the generator of the message ids of the accepted submit_sm packets that are answered without one (e.g. with
+	 * {@link Response#OK}).
+	 * 
+	 * @param messageIdGenerator the {@link MessageIdGenerator} to be used or null to answer them without message id.
+	 */
+	public void setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+		this.messageIdGenerator = messageIdGenerator;
+	}
+
+	/**
+	 * Sets the deadline of the requests received from the client.
+	 * 
+	 * @param responseDeadline the {@link ResponseDeadline} to be used or null for no deadline.
+	 */
+	void setResponseDeadline(ResponseDeadline responseDeadline) {
+		this.responseDeadline = responseDeadline;
+	}
+
+	/**
+	 * Sets the histograms in which the latency of the requests (from the moment they're decoded to the moment the 
+	 * response is written) is recorded.
+	 * 
+	 * @param latencies the {@link CommandLatencies} to be used or null to not record latencies.
+	 */
+	void setLatencies(CommandLatencies latencies) {
+		this.latencies = latencies;
+	}
+
+	/**
+	 * Counts the traffic of the session in the counters of the server too. Must be called before the session handles
+	 * any packet.
+	 * 
+	 * @param serverCounters the {@link TrafficCounters} of the server.
+	 */
+	void setServerTrafficCounters(TrafficCounters serverCounters) {
+		this.trafficCounters = new TrafficCounters(serverCounters);
+	}
+
+	/**
+	 * @return the PDUs, bytes and rates of the session.
+	 */
+	public TrafficCounters getTrafficCounters() {
+		return trafficCounters;
+	}
+
+	/**
+	 * @return the number of PDUs received from the client.
+	 */
+	@ManagedAttribute
+	public long getPdusIn() {
+		return trafficCounters.getPdusIn();
+	}
+
+	/**
+	 * @return the number of PDUs sent to the client.
+	 */
+	@ManagedAttribute
+	public long getPdusOut() {
+		return trafficCounters.getPdusOut();
+	}
+
+	/**
+	 * @return the number of bytes read from the client.
+	 */
+	@ManagedAttribute
+	public long getBytesIn() {
+		return trafficCounters.getBytesIn();
+	}
+
+	/**
+	 * @return the number of bytes written to the client.
+	 */
+	@ManagedAttribute
+	public long getBytesOut() {
+		return trafficCounters.getBytesOut();
+	}
+
+	/**
+	 * @return the PDUs per second received from the client in the last second (moving average).
+	 */
+	@ManagedAttribute
+	public double getPdusInOneSecondRate() {
+		return trafficCounters.getPdusInRate().getOneSecondRate();
+	}
+
+	/**
+	 * @return the PDUs per second received from the client in the last minute (moving average).
+	 */
+	@ManagedAttribute
+	public double getPdusInOneMinuteRate() {
+		return trafficCounters.getPdusInRate().getOneMinuteRate();
+	}
+
+	/**
+	 * @return the PDUs per second received from the client in the last 5 minutes (moving average).
+	 */
+	@ManagedAttribute
+	public double getPdusInFiveMinutesRate() {
+		return trafficCounters.getPdusInRate().getFiveMinutesRate();
+	}
+
+	/**
+	 * @return the PDUs per second sent to the client in the last second (moving average).
+	 */
+	@ManagedAttribute
+	public double getPdusOutOneSecondRate() {
+		return trafficCounters.getPdusOutRate().getOneSecondRate();
+	}
+
+	/**
+	 * @return the PDUs per second sent to the client in the last minute (moving average).
+	 */
+	@ManagedAttribute
+	public double getPdusOutOneMinuteRate() {
+		return trafficCounters.getPdusOutRate().getOneMinuteRate();
+	}
+
+	/**
+	 * @return the PDUs per second sent to the client in the last 5 minutes (moving average).
+	 */
+	@ManagedAttribute
+	public double getPdusOutFiveMinutesRate() {
+		return trafficCounters.getPdusOutRate().getFiveMinutesRate();
+	}
+
+	/**
+	 * @return the PDUs received and sent by command.
+	 */
+	@ManagedAttribute
+	public TabularData getPduCounts() {
+		return trafficCounters.getPduCounts();
+	}
+
+	/**
+	 * @return the responses sent by command status.
+	 */
+	@ManagedAttribute
+	public TabularData getResponseCounts() {
+		return trafficCounters.getResponseCounts();
+	}
+
+	/**
+	 * Configures the window of the requests sent to the client. Can't be called while there are requests waiting for
+	 * a response, which is why the best place to configure the window of a systemId is the
+	 * {@link SmppSessionListener#bound(SmppSession)} method.
+	 *
+	 * @param size the maximum number of requests that can be waiting for a response.
+	 * @param offerTimeout the maximum time (in millis) to wait for a free slot in the window.
+	 * @param expireTimeout the maximum time (in millis) to wait for the response of a request.
+	 *
+	 * @throws IllegalStateException if there are requests waiting for a response.
+	 */
+	public synchronized void setSendWindow(int size, long offerTimeout, long expireTimeout)
+			throws IllegalStateException {
+
+		if (size <= 0) {
+			throw new IllegalArgumentException("size must be greater than 0");
+		}
+
+		if (offerTimeout < 0 || expireTimeout <= 0) {
+			throw new IllegalArgumentException("offerTimeout can't be negative and expireTimeout must be greater " +
+					"than 0");
+		}
+
+		Window<Integer, SmppRequest, SmppResponse> window = sendWindow;
+		if (window.getSize() > 0) {
+			throw new IllegalStateException("Can't change the send window while there are requests waiting for a " +
+					"response");
+		}
+
+		if (window.getMaxSize() != size) {
+			this.sendWindow = createSendWindow(size);
+			window.destroy();
+		}
+
+		this.sendWindowOfferTimeout = offerTimeout;
+		this.sendWindowExpireTimeout = expireTimeout;
+	}
+
+	/**
+	 * @return the maximum number of requests sent to the client that can be waiting for a response.
+	 */
+	@ManagedAttribute
+	public int getSendWindowSize() {
+		return sendWindow.getMaxSize();
+	}
+
+	/**
+	 * @return the number of requests sent to the client that are waiting for a response.
+	 */
+	@ManagedAttribute
+	public int getPendingRequests() {
+		return sendWindow.getSize();
+	}
+
+	/**
+	 * @return the maximum time (in millis) to wait for a free slot in the send window.
+	 */
+	public long getSendWindowOfferTimeout() {
+		return sendWindowOfferTimeout;
+	}
+
+	/**
+	 * @return the maximum time (in millis) to wait for the response of a request sent to the client.
+	 */
+	public long getSendWindowExpireTimeout() {
+		return sendWindowExpireTimeout;
+	}
+
+	/**
+	 * Sets the listener that is notified when the session is bound.
+	 *
+	 * @param sessionListener the {@link SmppSessionListener} to be notified or null.
+	 */
+	void setSessionListener(SmppSessionListener sessionListener) {
+		this.sessionListener = sessionListener;
+	}
+	
 	/**
 	 * This is the {@link ResponseSender} implementation that is passed to the 
 	 *  method. It checks that the response is sent
@@ -449,77 +1250,155 @@ public class SmppSession extends SimpleChannelHandler {
 	 * 
 	 * @author German Escobar
 	 */
-    private class OnlyOnceResponse implements ResponseSender {
+    private class OnlyOnceResponse implements ResponseSender, TimerTask {
+
+		private final SmppRequest request;
+
+    	/**
+    	 * Responses can be sent from any thread (e.g. when an asynchronous processor completes), so the flag is set 
+    	 * atomically.
+    	 */
+    	private final AtomicBoolean responseSent = new AtomicBoolean();
+
+    	/**
+    	 * The deadline of the request in the timer or null if there is no deadline.
+    	 */
+    	private final Timeout deadline;
 
-		private final PduRequest<PduResponse> pduRequest;
+    	/**
+    	 * When the request was received (in nanos), to record the latency of the response.
+    	 */
+    	private final long receivedTime = System.nanoTime();
 
-    	private boolean responseSent = false;
+		public OnlyOnceResponse(SmppRequest request) {
+    		this.request = request;
+    		requestReceived();
 
-		public OnlyOnceResponse(PduRequest<PduResponse> pduRequest) {
-    		this.pduRequest = pduRequest;
+    		ResponseDeadline responseDeadline = SmppSession.this.responseDeadline;
+    		this.deadline = responseDeadline != null ? responseDeadline.start(this) : null;
     	}
 
-		@SuppressWarnings("rawtypes")
 		@Override
-		public void send(Response response) {
-
-			if (responseSent) {
+		public void send(CommandResponse response) {
 
+			if (!doSend(response)) {
 				log.warn("response for this request was already sent to the client ... ignoring");
+			}
+		}
+
+		/**
+		 * Called by the timer when the deadline of the request expires.
+		 */
+		@Override
+		public void run(Timeout timeout) {
+
+			if (responseSent.get() || status == Status.CLOSED || !channel.isConnected()) {
 				return;
 			}
+
+			ResponseDeadline responseDeadline = SmppSession.this.responseDeadline;
+			if (doSend(responseDeadline.getTimeoutResponse())) {
+
+				log.warn("[{}] request with sequence number {} not answered after {} millis, answering with {}", 
+						getId(), request.getSequenceNumber(), responseDeadline.getTimeout(), 
+						responseDeadline.getTimeoutResponse().getCommandStatus());
+
+				responseDeadline.timedOut();
+			}
+		}
+
+		/**
+		 * Helper method. Sends the response if it hasn't been sent yet.
+		 * 
+		 * @return true if the response was sent, false if the request was already answered.
+		 */
+		private boolean doSend(CommandResponse response) {
+
+			if (!responseSent.compareAndSet(false, true)) {
+				return false;
+			}
+			
+			if (deadline != null) {
+				deadline.cancel();
+			}
+			
+			requestResponded();
 			
 			try {
 				
-				PduResponse pduResponse = createResponse(pduRequest, response);
+				SmppResponse smppResponse = createResponse(request, response);
 				
-				int commandId = pduRequest.getCommandId();
+				int commandId = request.getCommandId();
 				int commandStatus = response.getCommandStatus();
 				
-				if (pduRequest instanceof BaseBind) {
+				if (request.isBind()) {
 					
 					if (commandStatus == Response.OK.getCommandStatus()) {
-						
-						status = Status.BOUND;
 
-		   	 			if (commandId == SmppConstants.CMD_ID_BIND_RECEIVER) {
+		   	 			if (commandId == SmppPacket.BIND_RECEIVER) {
 				   			bindType = BindType.RECEIVER;
-				   		} else if (commandId == SmppConstants.CMD_ID_BIND_TRANSMITTER) {
+				   		} else if (commandId == SmppPacket.BIND_TRANSMITTER) {
 				   			bindType = BindType.TRANSMITTER;
-				   		} else if (commandId == SmppConstants.CMD_ID_BIND_TRANSCEIVER) {
+				   		} else if (commandId == SmppPacket.BIND_TRANSCEIVER) {
 				   			bindType = BindType.TRANSCIEVER;
 				   		}
 
-		   	 			BaseBind bind = (BaseBind) pduRequest;
+		   	 			Bind bind = (Bind) request;
 		   	 			systemId = bind.getSystemId();
 		   	 			
+		   	 			status = Status.BOUND;
+		   	 			
 		   	 			// this is important to support tlv parameters
-		   	 			pduResponse.addOptionalParameter( new Tlv(SmppConstants.TAG_SC_INTERFACE_VERSION, new byte[] { SmppConstants.VERSION_3_4 }) );
+		   	 			smppResponse.addOptionalParameter( new Tlv(SmppConstants.TAG_SC_INTERFACE_VERSION, 
+		   	 					new byte[] { SmppConstants.VERSION_3_4 }, "sc_interface_version") );
 		   	 			
 					}
 					
 				} else {
 					
-					if (commandId == SmppPacket.SUBMIT_SM && response.getMessageId() != null) {
+					if (commandId == SmppPacket.SUBMIT_SM) {
 
-							SubmitSmResp submitResp = (SubmitSmResp) pduResponse;
-							submitResp.setMessageId( response.getMessageId() );
+							String messageId = response.getMessageId();
+							if (messageId == null && messageIdGenerator != null 
+									&& commandStatus == Response.OK.getCommandStatus()) {
+								// generated by the encoder, which writes it without creating a String
+								((SubmitSmResp) smppResponse).setMessageIdGenerator(messageIdGenerator);
+							} else {
+								((SubmitSmResp) smppResponse).setMessageId(messageId);
+							}
 					}
 					
 				}
 				
-				SmppSession.this.send(pduResponse);
+				ChannelFuture channelFuture = SmppSession.this.send(smppResponse);
 				
-				// handle unbind request
-				if (commandId == SmppPacket.UNBIND) {	
-					disconnect();
+				CommandLatencies commandLatencies = latencies;
+				if (commandLatencies != null) {
+					commandLatencies.record(commandId, systemId, System.nanoTime() - receivedTime);
+				}
+				
+				// notify the bind once the bind_resp is queued, so no request can be sent to the client before it
+				if (request.isBind() && isBound() && sessionListener != null) {
+					
+					try {
+						sessionListener.bound(SmppSession.this);
+					} catch (Exception e) {
+						log.error("[{}] exception notifying the bind: {}", getId(), e.getMessage(), e);
+					}
+				}
+				
+				// handle unbind request, the channel is disconnected once the unbind_resp is written
+				if (commandId == SmppPacket.UNBIND) {
+					status = Status.CLOSED;
+					channelFuture.addListener(DISCONNECT);
 				}
 				
 			} catch (Exception e) {
 
 				log.error("Exception sending response: {} ",e.getMessage());
-				Thread.currentThread().interrupt();
 			}
+			
+			return true;
 		}
     	
     }
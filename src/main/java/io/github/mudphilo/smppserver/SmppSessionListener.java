@@ -14,7 +14,18 @@ public interface SmppSessionListener {
 	 * @param session the {@link SmppSession} that was created.
 	 */
 	void created(SmppSession session);
-	
+
+	/**
+	 * Called when a bind request is accepted, right after the response is queued to be sent to the client and before
+	 * the session is returned by {@link SmppServer#getReceiverSessions(String)}. The systemId and bind type of the
+	 * session are already available, so this is the place to configure the session for a systemId (e.g. using
+	 * {@link SmppSession#setSendWindow(int, long, long)}). Does nothing by default.
+	 *
+	 * @param session the {@link SmppSession} that was bound.
+	 */
+	default void bound(SmppSession session) {
+	}
+
 	/**
 	 * Called when a session is destroyed. Notice that this is not called when the session is unbound, it is called 
 	 * when the connection actually was disconnected.
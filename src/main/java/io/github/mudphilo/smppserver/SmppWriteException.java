@@ -0,0 +1,15 @@
+package io.github.mudphilo.smppserver;
+
+/**
+ * Thrown (or used to complete a future exceptionally) when a request couldn't be written to the client, which means
+ * that the client never received it and it is safe to send it again, possibly through another session.
+ */
+public class SmppWriteException extends SmppException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SmppWriteException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,229 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+import org.apache.logging.log4j.LogManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the submit_sm packets of all the sessions and hands them to a {@link BatchPacketProcessor} in batches of up
+ * to <code>maxBatchSize</code> packets or after <code>maxDelayMicros</code> have elapsed since the first packet of the
+ * batch was received, whatever happens first. Each response is sent back through the {@link ResponseSender} of its 
+ * own request.
+ */
+class SubmitSmBatcher implements Runnable {
+
+	static final org.apache.logging.log4j.Logger log = LogManager.getLogger(SubmitSmBatcher.class.getSimpleName());
+
+	/**
+	 * The maximum number of batches that can be waiting to be processed.
+	 */
+	private static final int MAX_PENDING_BATCHES = 100;
+
+	private final BatchPacketProcessor batchPacketProcessor;
+
+	private final int maxBatchSize;
+
+	private final long maxDelayNanos;
+
+	private final BlockingQueue<PendingSubmit> queue;
+
+	private final AtomicLong processedBatches = new AtomicLong();
+
+	private volatile boolean running;
+
+	private Thread thread;
+
+	public SubmitSmBatcher(BatchPacketProcessor batchPacketProcessor, int maxBatchSize, long maxDelayMicros) {
+
+		if (batchPacketProcessor == null) {
+			throw new IllegalArgumentException("No batchPacketProcessor specified");
+		}
+
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+		}
+
+		if (maxDelayMicros < 0) {
+			throw new IllegalArgumentException("maxDelayMicros can't be negative");
+		}
+
+		this.batchPacketProcessor = batchPacketProcessor;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+		this.queue = new LinkedBlockingQueue<>(maxBatchSize * MAX_PENDING_BATCHES);
+	}
+
+	/**
+	 * Adds a packet to the current batch.
+	 *
+	 * @param sessionId the id of the session that received the packet.
+	 * @param submitSm the received packet.
+	 * @param responseSender used to send the response of the packet.
+	 *
+	 * @throws RejectedExecutionException if there are too many packets waiting to be processed or the batcher is not
+	 * running, as nobody would answer the packet.
+	 */
+	public void submit(int sessionId, SubmitSm submitSm, ResponseSender responseSender)
+			throws RejectedExecutionException {
+
+		if (!running) {
+			throw new RejectedExecutionException("batcher is not running");
+		}
+
+		PendingSubmit pendingSubmit = new PendingSubmit(new BatchPacketProcessor.Entry(sessionId, submitSm),
+				responseSender);
+		if (!queue.offer(pendingSubmit)) {
+			throw new RejectedExecutionException("batch queue is full");
+		}
+
+		// stopped while offering: if the packet is still queued, the thread may have already exited
+		if (!running && queue.remove(pendingSubmit)) {
+			throw new RejectedExecutionException("batcher is not running");
+		}
+	}
+
+	public synchronized void start() {
+
+		if (running) {
+			return;
+		}
+
+		running = true;
+		thread = new Thread(this, "smpp-batcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the batcher after processing the packets that are already queued.
+	 */
+	public synchronized void stop() throws InterruptedException {
+
+		if (!running) {
+			return;
+		}
+
+		running = false;
+		thread.join();
+		thread = null;
+	}
+
+	@Override
+	public void run() {
+
+		List<PendingSubmit> batch = new ArrayList<>(maxBatchSize);
+
+		while (running || !queue.isEmpty()) {
+
+			try {
+
+				PendingSubmit first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+
+				batch.add(first);
+				long deadline = System.nanoTime() + maxDelayNanos;
+
+				while (batch.size() < maxBatchSize) {
+
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						queue.drainTo(batch, maxBatchSize - batch.size());
+						break;
+					}
+
+					PendingSubmit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+
+					batch.add(next);
+				}
+
+				flush(batch);
+
+			} catch (InterruptedException e) {
+
+				Thread.currentThread().interrupt();
+				return;
+
+			} finally {
+				batch.clear();
+			}
+		}
+
+	}
+
+	/**
+	 * Helper method. Calls the {@link BatchPacketProcessor} and sends the responses.
+	 *
+	 * @param batch the packets to process.
+	 */
+	private void flush(List<PendingSubmit> batch) {
+
+		List<BatchPacketProcessor.Entry> entries = new ArrayList<>(batch.size());
+		for (PendingSubmit pendingSubmit : batch) {
+			entries.add(pendingSubmit.entry);
+		}
+
+		List<? extends CommandResponse> responses = null;
+		try {
+			responses = batchPacketProcessor.processBatch(entries);
+		} catch (Exception e) {
+			log.error("Exception calling the batch packet processor: {}", e.getMessage(), e);
+		}
+
+		processedBatches.incrementAndGet();
+
+		for (int i=0; i < batch.size(); i++) {
+
+			CommandResponse response = responses != null && i < responses.size() ? responses.get(i) : null;
+
+			try {
+				batch.get(i).responseSender.send(response != null ? response : Response.SYSTEM_ERROR);
+			} catch (Exception e) {
+				log.error("Exception sending batch response: {}", e.getMessage(), e);
+			}
+		}
+
+	}
+
+	/**
+	 * @return the number of packets waiting to be added to a batch.
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of batches that have been processed.
+	 */
+	public long getProcessedBatches() {
+		return processedBatches.get();
+	}
+
+	/**
+	 * A queued packet with the {@link ResponseSender} of its request.
+	 */
+	private static class PendingSubmit {
+
+		private final BatchPacketProcessor.Entry entry;
+
+		private final ResponseSender responseSender;
+
+		public PendingSubmit(BatchPacketProcessor.Entry entry, ResponseSender responseSender) {
+			this.entry = entry;
+			this.responseSender = responseSender;
+		}
+
+	}
+
+}
@@ -0,0 +1,480 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Counts the traffic of a session or a server: the PDUs received and sent by command, the responses sent by
+ * command status and the bytes read and written, plus the 1 second, 1 minute and 5 minutes exponentially weighted
+ * moving averages of the PDUs per second.</p>
+ *
+ * <p>The counters are <code>LongAdder</code>s, so the I/O and processing threads don't contend when they count. The
+ * counters of a session have the counters of the server as parent, which count everything the sessions count.
+ * The rates are updated by {@link #tick()}, which the server calls every second.</p>
+ */
+public class TrafficCounters {
+
+	/**
+	 * The interval (in seconds) at which {@link #tick()} is called.
+	 */
+	static final int TICK_INTERVAL = 1;
+
+	/**
+	 * The command ids that are counted separately, the rest are counted together.
+	 */
+	private static final int[] COMMAND_IDS = { SmppPacket.GENERIC_NACK,
+			SmppPacket.BIND_RECEIVER, SmppPacket.BIND_RECEIVER_RESP,
+			SmppPacket.BIND_TRANSMITTER, SmppPacket.BIND_TRANSMITTER_RESP,
+			SmppPacket.QUERY_SM, SmppPacket.QUERY_SM_RESP,
+			SmppPacket.SUBMIT_SM, SmppPacket.SUBMIT_SM_RESP,
+			SmppPacket.DELIVER_SM, SmppPacket.DELIVER_SM_RESP,
+			SmppPacket.UNBIND, SmppPacket.UNBIND_RESP,
+			SmppPacket.REPLACE_SM, SmppPacket.REPLACE_SM_RESP,
+			SmppPacket.CANCEL_SM, SmppPacket.CANCEL_SM_RESP,
+			SmppPacket.BIND_TRANSCEIVER, SmppPacket.BIND_TRANSCEIVER_RESP,
+			SmppPacket.ENQUIRE_LINK, SmppPacket.ENQUIRE_LINK_RESP,
+			SmppPacket.SUBMIT_MULTI, SmppPacket.SUBMIT_MULTI_RESP,
+			SmppPacket.ALERT_NOTIFICATION,
+			SmppPacket.DATA_SM, SmppPacket.DATA_SM_RESP };
+
+	/**
+	 * The slot of the command ids that are not in {@link #COMMAND_IDS}.
+	 */
+	private static final int OTHER_COMMANDS = COMMAND_IDS.length;
+
+	/**
+	 * The bits of the command ids that are counted separately, besides the response bit.
+	 */
+	private static final int COMMAND_ID_MASK = 0x1FF;
+
+	/**
+	 * The slot of each command id, indexed by the bits of {@link #COMMAND_ID_MASK} plus the response bit moved right
+	 * after them, so finding the slot of a PDU is a lookup instead of a scan of {@link #COMMAND_IDS}.
+	 */
+	private static final byte[] SLOTS = new byte[(COMMAND_ID_MASK + 1) * 2];
+
+	static {
+
+		Arrays.fill(SLOTS, (byte) OTHER_COMMANDS);
+		for (int i = 0; i < COMMAND_IDS.length; i++) {
+			SLOTS[slotIndex(COMMAND_IDS[i])] = (byte) i;
+		}
+	}
+
+	private static final CompositeType PDU_ROW_TYPE;
+
+	private static final TabularType PDU_TABLE_TYPE;
+
+	private static final CompositeType STATUS_ROW_TYPE;
+
+	private static final TabularType STATUS_TABLE_TYPE;
+
+	static {
+
+		try {
+
+			PDU_ROW_TYPE = new CompositeType("PduCount", "The PDUs of a command",
+					new String[] { "command", "received", "sent" },
+					new String[] { "The command", "The PDUs received", "The PDUs sent" },
+					new OpenType<?>[] { SimpleType.STRING, SimpleType.LONG, SimpleType.LONG });
+			PDU_TABLE_TYPE = new TabularType("PduCounts", "The PDUs by command", PDU_ROW_TYPE,
+					new String[] { "command" });
+
+			STATUS_ROW_TYPE = new CompositeType("ResponseCount", "The responses sent with a command status",
+					new String[] { "status", "name", "count" },
+					new String[] { "The command status", "The name of the command status", "The responses sent" },
+					new OpenType<?>[] { SimpleType.INTEGER, SimpleType.STRING, SimpleType.LONG });
+			STATUS_TABLE_TYPE = new TabularType("ResponseCounts", "The responses by command status",
+					STATUS_ROW_TYPE, new String[] { "status" });
+
+		} catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The counters that also count everything counted by this instance or null.
+	 */
+	private final TrafficCounters parent;
+
+	private final LongAdder[] pdusIn = newAdders(COMMAND_IDS.length + 1);
+
+	private final LongAdder[] pdusOut = newAdders(COMMAND_IDS.length + 1);
+
+	/**
+	 * The responses sent by command status, created when a status is first sent.
+	 */
+	private final ConcurrentMap<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+
+	private final LongAdder bytesIn = new LongAdder();
+
+	private final LongAdder bytesOut = new LongAdder();
+
+	private final Rate pdusInRate = new Rate();
+
+	private final Rate pdusOutRate = new Rate();
+
+	/**
+	 * Constructor. Creates an instance without parent, e.g. the counters of a server.
+	 */
+	public TrafficCounters() {
+		this(null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parent the counters that also count everything counted by this instance (e.g. the counters of the server
+	 *               for the counters of a session) or null.
+	 */
+	public TrafficCounters(TrafficCounters parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Counts a PDU received from the client.
+	 *
+	 * @param commandId the command id of the PDU.
+	 */
+	public void pduReceived(int commandId) {
+
+		pdusIn[slot(commandId)].increment();
+		pdusInRate.mark();
+
+		if (parent != null) {
+			parent.pduReceived(commandId);
+		}
+	}
+
+	/**
+	 * Counts a PDU sent to the client.
+	 *
+	 * @param commandId the command id of the PDU.
+	 * @param commandStatus the command status of the PDU, only counted if the PDU is a response.
+	 */
+	public void pduSent(int commandId, int commandStatus) {
+
+		pdusOut[slot(commandId)].increment();
+		pdusOutRate.mark();
+
+		if ((commandId & SmppPacket.GENERIC_NACK) != 0) {
+
+			// get first, so the common case doesn't lock
+			LongAdder counter = responses.get(commandStatus);
+			if (counter == null) {
+				responses.putIfAbsent(commandStatus, new LongAdder());
+				counter = responses.get(commandStatus);
+			}
+
+			counter.increment();
+		}
+
+		if (parent != null) {
+			parent.pduSent(commandId, commandStatus);
+		}
+	}
+
+	/**
+	 * Counts the bytes read from the client.
+	 */
+	public void bytesRead(int bytes) {
+
+		bytesIn.add(bytes);
+
+		if (parent != null) {
+			parent.bytesRead(bytes);
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the client.
+	 */
+	public void bytesWritten(int bytes) {
+
+		bytesOut.add(bytes);
+
+		if (parent != null) {
+			parent.bytesWritten(bytes);
+		}
+	}
+
+	/**
+	 * Updates the rates, must be called every {@link #TICK_INTERVAL} seconds. Doesn't tick the parent.
+	 */
+	void tick() {
+		pdusInRate.tick();
+		pdusOutRate.tick();
+	}
+
+	/**
+	 * @return the number of PDUs received from the client.
+	 */
+	public long getPdusIn() {
+		return sum(pdusIn);
+	}
+
+	/**
+	 * @return the number of PDUs sent to the client.
+	 */
+	public long getPdusOut() {
+		return sum(pdusOut);
+	}
+
+	/**
+	 * @param commandId the command id of the PDUs.
+	 *
+	 * @return the number of PDUs with the command id received from the client.
+	 */
+	public long getPdusIn(int commandId) {
+		return slot(commandId) == OTHER_COMMANDS ? 0 : pdusIn[slot(commandId)].sum();
+	}
+
+	/**
+	 * @param commandId the command id of the PDUs.
+	 *
+	 * @return the number of PDUs with the command id sent to the client.
+	 */
+	public long getPdusOut(int commandId) {
+		return slot(commandId) == OTHER_COMMANDS ? 0 : pdusOut[slot(commandId)].sum();
+	}
+
+	/**
+	 * @param commandStatus the command status of the responses.
+	 *
+	 * @return the number of responses with the command status sent to the client.
+	 */
+	public long getResponses(int commandStatus) {
+		LongAdder counter = responses.get(commandStatus);
+		return counter != null ? counter.sum() : 0;
+	}
+
+	/**
+	 * @return the number of bytes read from the client.
+	 */
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	/**
+	 * @return the number of bytes written to the client.
+	 */
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	/**
+	 * @return the rates of the PDUs received from the client.
+	 */
+	public Rate getPdusInRate() {
+		return pdusInRate;
+	}
+
+	/**
+	 * @return the rates of the PDUs sent to the client.
+	 */
+	public Rate getPdusOutRate() {
+		return pdusOutRate;
+	}
+
+	/**
+	 * @return the command ids that are counted separately, the array must not be modified.
+	 */
+	static int[] getCountedCommandIds() {
+		return COMMAND_IDS;
+	}
+
+	/**
+	 * @return a live view of the counters of the responses by command status.
+	 */
+	Map<Integer, LongAdder> getResponseCounters() {
+		return responses;
+	}
+
+	/**
+	 * @return a row with the PDUs received and sent of each command that has been counted.
+	 */
+	public TabularData getPduCounts() {
+
+		TabularDataSupport table = new TabularDataSupport(PDU_TABLE_TYPE);
+		for (int i = 0; i <= OTHER_COMMANDS; i++) {
+
+			long received = pdusIn[i].sum();
+			long sent = pdusOut[i].sum();
+			if (received == 0 && sent == 0) {
+				continue;
+			}
+
+			String command = i == OTHER_COMMANDS ? "other" : SmppPacket.getCommandName(COMMAND_IDS[i]);
+			table.put(toCompositeData(PDU_ROW_TYPE, new String[] { "command", "received", "sent" },
+					new Object[] { command, received, sent }));
+		}
+
+		return table;
+	}
+
+	/**
+	 * @return a row with the responses sent of each command status.
+	 */
+	public TabularData getResponseCounts() {
+
+		TabularDataSupport table = new TabularDataSupport(STATUS_TABLE_TYPE);
+		for (Map.Entry<Integer, LongAdder> entry : responses.entrySet()) {
+
+			int status = entry.getKey();
+			table.put(toCompositeData(STATUS_ROW_TYPE, new String[] { "status", "name", "count" },
+					new Object[] { status, statusName(status), entry.getValue().sum() }));
+		}
+
+		return table;
+	}
+
+	/**
+	 * Helper method. Finds the slot of the counters of a command id.
+	 */
+	private static int slot(int commandId) {
+
+		// command ids with other bits set are not counted separately
+		if ((commandId & ~(SmppPacket.GENERIC_NACK | COMMAND_ID_MASK)) != 0) {
+			return OTHER_COMMANDS;
+		}
+
+		return SLOTS[slotIndex(commandId)];
+	}
+
+	private static int slotIndex(int commandId) {
+		return (commandId & COMMAND_ID_MASK) | ((commandId >>> 31) << 9);
+	}
+
+	static String statusName(int commandStatus) {
+
+		for (Response response : Response.values()) {
+			if (response.getCommandStatus() == commandStatus) {
+				return response.name();
+			}
+		}
+
+		return String.format("0x%08x", commandStatus);
+	}
+
+	private static LongAdder[] newAdders(int length) {
+
+		LongAdder[] adders = new LongAdder[length];
+		for (int i = 0; i < length; i++) {
+			adders[i] = new LongAdder();
+		}
+
+		return adders;
+	}
+
+	private static long sum(LongAdder[] adders) {
+
+		long sum = 0;
+		for (LongAdder adder : adders) {
+			sum += adder.sum();
+		}
+
+		return sum;
+	}
+
+	private static CompositeDataSupport toCompositeData(CompositeType type, String[] names, Object[] values) {
+
+		try {
+			return new CompositeDataSupport(type, names, values);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * <p>The 1 second, 1 minute and 5 minutes exponentially weighted moving averages of the events per second, like
+	 * the load average of Unix. The events are counted in a <code>LongAdder</code> and folded into the averages on
+	 * each tick.</p>
+	 */
+	public static class Rate {
+
+		private static final double ALPHA_1_SECOND = alpha(1);
+
+		private static final double ALPHA_1_MINUTE = alpha(60);
+
+		private static final double ALPHA_5_MINUTES = alpha(300);
+
+		/**
+		 * The events since the last tick.
+		 */
+		private final LongAdder uncounted = new LongAdder();
+
+		private volatile double rate1Second;
+
+		private volatile double rate1Minute;
+
+		private volatile double rate5Minutes;
+
+		/**
+		 * Only the first tick sets the rates to the current rate, the next ones average it.
+		 */
+		private boolean initialized;
+
+		void mark() {
+			uncounted.increment();
+		}
+
+		/**
+		 * Folds the events since the last tick into the averages. Called from a single thread.
+		 */
+		void tick() {
+
+			double instantRate = (double) uncounted.sumThenReset() / TICK_INTERVAL;
+
+			if (initialized) {
+				rate1Second += ALPHA_1_SECOND * (instantRate - rate1Second);
+				rate1Minute += ALPHA_1_MINUTE * (instantRate - rate1Minute);
+				rate5Minutes += ALPHA_5_MINUTES * (instantRate - rate5Minutes);
+			} else {
+				rate1Second = instantRate;
+				rate1Minute = instantRate;
+				rate5Minutes = instantRate;
+				initialized = true;
+			}
+		}
+
+		/**
+		 * @return the events per second, averaged over the last second.
+		 */
+		public double getOneSecondRate() {
+			return rate1Second;
+		}
+
+		/**
+		 * @return the events per second, averaged over the last minute.
+		 */
+		public double getOneMinuteRate() {
+			return rate1Minute;
+		}
+
+		/**
+		 * @return the events per second, averaged over the last 5 minutes.
+		 */
+		public double getFiveMinutesRate() {
+			return rate5Minutes;
+		}
+
+		private static double alpha(int seconds) {
+			return 1 - Math.exp(-(double) TICK_INTERVAL / seconds);
+		}
+
+	}
+
+}
@@ -0,0 +1,40 @@
+package io.github.mudphilo.smppserver;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.WriteCompletionEvent;
+
+/**
+ * The first handler of the pipeline of a session. Counts the bytes read from the socket and written to it (before
+ * decoding and after encoding, whatever the codec) in the {@link TrafficCounters} of the session.
+ */
+class TrafficHandler extends SimpleChannelUpstreamHandler {
+
+	private final SmppSession session;
+
+	TrafficHandler(SmppSession session) {
+		this.session = session;
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+
+		Object message = e.getMessage();
+		if (message instanceof ChannelBuffer) {
+			session.getTrafficCounters().bytesRead(((ChannelBuffer) message).readableBytes());
+		}
+
+		super.messageReceived(ctx, e);
+	}
+
+	@Override
+	public void writeComplete(ChannelHandlerContext ctx, WriteCompletionEvent e) throws Exception {
+
+		session.getTrafficCounters().bytesWritten((int) e.getWrittenAmount());
+
+		super.writeComplete(ctx, e);
+	}
+
+}
@@ -18,6 +18,12 @@ public class Bind extends SmppRequest {
 		super(commandId);
 	}
 	
+	@Override
+	public BindResp createResponse() {
+		// the command id of a response is the one of the request with the most significant bit set
+		return withSequenceNumber(new BindResp(commandId | 0x80000000));
+	}
+	
 	public boolean isTransceiver() {
 		return commandId == SmppPacket.BIND_TRANSCEIVER;
 	}
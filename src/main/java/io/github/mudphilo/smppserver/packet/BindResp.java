@@ -0,0 +1,22 @@
+package io.github.mudphilo.smppserver.packet;
+
+/**
+ * The response to a bind_receiver, bind_transmitter or bind_transceiver request.
+ */
+public class BindResp extends SmppResponse {
+
+	private String systemId;
+
+	public BindResp(int commandId) {
+		super(commandId);
+	}
+
+	public String getSystemId() {
+		return systemId;
+	}
+
+	public void setSystemId(String systemId) {
+		this.systemId = systemId;
+	}
+
+}
@@ -35,6 +35,11 @@ public class DeliverSm extends SmppRequest {
     	super(SmppPacket.DELIVER_SM);
     }
 
+	@Override
+	public DeliverSmResp createResponse() {
+		return withSequenceNumber(new DeliverSmResp());
+	}
+
 	public String getServiceType() {
 		return serviceType;
 	}
@@ -0,0 +1,285 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Builds the delivery receipts (DLR) that are sent to the clients as deliver_sm packets. The receipt text</p>
+ *
+ * <pre>id:IIIIIIIIII sub:SSS dlvrd:DDD submit date:YYMMDDhhmm done date:YYMMDDhhmm stat:DDDDDDD err:E text:...</pre>
+ *
+ * <p>is written straight into a byte buffer that is reused by each build, without formatting strings. The packet
+ * has the esm_class of a delivery receipt (0x04) and the receipted_message_id and message_state optional
+ * parameters, ready to be sent with {@link io.github.mudphilo.smppserver.SmppSession#sendRequest(SmppRequest, long)}.</p>
+ *
+ * <p>The builder is not thread-safe: use one per thread (e.g. in a ThreadLocal) and set all the fields before each
+ * build, as they keep their values between builds.</p>
+ */
+public class DeliveryReceiptBuilder {
+
+	/**
+	 * The esm_class of the delivery receipts.
+	 */
+	public static final byte ESM_CLASS_DELIVERY_RECEIPT = 0x04;
+
+	/**
+	 * The maximum number of bytes of the original message that are copied to the text field.
+	 */
+	public static final int MAX_TEXT_LENGTH = 20;
+
+	private static final int MAX_SHORT_MESSAGE_LENGTH = 255;
+
+	private static final byte[] ID = ascii("id:");
+	private static final byte[] SUB = ascii(" sub:");
+	private static final byte[] DLVRD = ascii(" dlvrd:");
+	private static final byte[] SUBMIT_DATE = ascii(" submit date:");
+	private static final byte[] DONE_DATE = ascii(" done date:");
+	private static final byte[] STAT = ascii(" stat:");
+	private static final byte[] ERR = ascii(" err:");
+	private static final byte[] TEXT = ascii(" text:");
+
+	/**
+	 * The buffer in which the receipt text is written.
+	 */
+	private final byte[] buffer = new byte[MAX_SHORT_MESSAGE_LENGTH];
+
+	private int position;
+
+	private Address sourceAddress;
+
+	private Address destAddress;
+
+	private byte[] messageId;
+
+	private int submitted = 1;
+
+	private int delivered;
+
+	private long submitDate;
+
+	private long doneDate;
+
+	private MessageState state = MessageState.DELIVERED;
+
+	private int error;
+
+	private byte[] text;
+
+	private int zoneOffsetSeconds;
+
+	/**
+	 * @param sourceAddress the source address of the receipt, usually the destination of the original message.
+	 */
+	public DeliveryReceiptBuilder sourceAddress(Address sourceAddress) {
+		this.sourceAddress = sourceAddress;
+		return this;
+	}
+
+	/**
+	 * @param destAddress the destination address of the receipt, usually the source of the original message.
+	 */
+	public DeliveryReceiptBuilder destAddress(Address destAddress) {
+		this.destAddress = destAddress;
+		return this;
+	}
+
+	/**
+	 * @param messageId the message id returned in the submit_sm_resp of the original message.
+	 */
+	public DeliveryReceiptBuilder messageId(String messageId) {
+
+		if (messageId == null || messageId.length() > 64) {
+			throw new IllegalArgumentException("The message id must have between 0 and 64 characters");
+		}
+
+		this.messageId = ascii(messageId);
+		return this;
+	}
+
+	/**
+	 * @param messageId the message id returned in the submit_sm_resp of the original message as ASCII bytes, without
+	 * null terminator (e.g. written by {@link io.github.mudphilo.smppserver.MessageIdGenerator}). The array is not
+	 * copied.
+	 */
+	public DeliveryReceiptBuilder messageId(byte[] messageId) {
+
+		if (messageId == null || messageId.length > 64) {
+			throw new IllegalArgumentException("The message id must have between 0 and 64 characters");
+		}
+
+		this.messageId = messageId;
+		return this;
+	}
+
+	/**
+	 * @param submitted the number of messages originally submitted (sub), 1 by default.
+	 * @param delivered the number of messages delivered (dlvrd), 0 by default.
+	 */
+	public DeliveryReceiptBuilder count(int submitted, int delivered) {
+
+		if (submitted < 0 || submitted > 999 || delivered < 0 || delivered > 999) {
+			throw new IllegalArgumentException("submitted and delivered must be between 0 and 999");
+		}
+
+		this.submitted = submitted;
+		this.delivered = delivered;
+		return this;
+	}
+
+	/**
+	 * @param submitDate when the original message was submitted, in millis since the epoch.
+	 * @param doneDate when the message reached its final state, in millis since the epoch.
+	 */
+	public DeliveryReceiptBuilder dates(long submitDate, long doneDate) {
+		this.submitDate = submitDate;
+		this.doneDate = doneDate;
+		return this;
+	}
+
+	/**
+	 * @param state the state of the message, {@link MessageState#DELIVERED} by default.
+	 */
+	public DeliveryReceiptBuilder state(MessageState state) {
+
+		if (state == null) {
+			throw new IllegalArgumentException("No state specified");
+		}
+
+		this.state = state;
+		return this;
+	}
+
+	/**
+	 * @param error the network specific error code (err), 0 by default.
+	 */
+	public DeliveryReceiptBuilder error(int error) {
+
+		if (error < 0 || error > 999) {
+			throw new IllegalArgumentException("error must be between 0 and 999");
+		}
+
+		this.error = error;
+		return this;
+	}
+
+	/**
+	 * @param text the original short message, only the first {@link #MAX_TEXT_LENGTH} bytes are used. Can be null.
+	 */
+	public DeliveryReceiptBuilder text(byte[] text) {
+		this.text = text;
+		return this;
+	}
+
+	/**
+	 * @param zoneOffset the time zone of the dates, UTC by default.
+	 */
+	public DeliveryReceiptBuilder zoneOffset(ZoneOffset zoneOffset) {
+		this.zoneOffsetSeconds = zoneOffset.getTotalSeconds();
+		return this;
+	}
+
+	/**
+	 * Builds the deliver_sm packet of the receipt.
+	 *
+	 * @return a new {@link DeliverSm} with the receipt.
+	 */
+	public DeliverSm build() {
+
+		if (messageId == null) {
+			throw new IllegalStateException("No message id specified");
+		}
+
+		position = 0;
+
+		write(ID);
+		write(messageId);
+		write(SUB);
+		writeNumber(submitted, 3);
+		write(DLVRD);
+		writeNumber(delivered, 3);
+		write(SUBMIT_DATE);
+		writeDate(submitDate);
+		write(DONE_DATE);
+		writeDate(doneDate);
+		write(STAT);
+		write(state.statBytes());
+		write(ERR);
+		writeNumber(error, 3);
+		write(TEXT);
+
+		if (text != null) {
+			int length = Math.min(Math.min(text.length, MAX_TEXT_LENGTH), buffer.length - position);
+			System.arraycopy(text, 0, buffer, position, length);
+			position += length;
+		}
+
+		byte[] shortMessage = new byte[position];
+		System.arraycopy(buffer, 0, shortMessage, 0, position);
+
+		byte[] receiptedMessageId = new byte[messageId.length + 1];
+		System.arraycopy(messageId, 0, receiptedMessageId, 0, messageId.length);
+
+		DeliverSm deliverSm = new DeliverSm();
+		deliverSm.setSourceAddress(sourceAddress);
+		deliverSm.setDestAddress(destAddress);
+		deliverSm.setEsmClass(ESM_CLASS_DELIVERY_RECEIPT);
+		deliverSm.setShortMessage(shortMessage);
+		deliverSm.addOptionalParameter(new Tlv(Tlv.TAG_RECEIPTED_MESSAGE_ID, receiptedMessageId,
+				"receipted_message_id"));
+		deliverSm.addOptionalParameter(new Tlv(Tlv.TAG_MESSAGE_STATE, new byte[] { state.getValue() },
+				"message_state"));
+
+		return deliverSm;
+	}
+
+	private void write(byte[] bytes) {
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	/**
+	 * Helper method. Writes a number with leading zeros.
+	 */
+	private void writeNumber(int value, int digits) {
+
+		for (int i = digits - 1; i >= 0; i--) {
+			buffer[position + i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+
+		position += digits;
+	}
+
+	/**
+	 * Helper method. Writes a date as YYMMDDhhmm.
+	 */
+	private void writeDate(long millis) {
+
+		long seconds = Math.floorDiv(millis, 1000L) + zoneOffsetSeconds;
+		long days = Math.floorDiv(seconds, TimeUnit.DAYS.toSeconds(1));
+		int secondOfDay = (int) Math.floorMod(seconds, TimeUnit.DAYS.toSeconds(1));
+
+		// civil date from the days since the epoch (http://howardhinnant.github.io/date_algorithms.html)
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		writeNumber((int) Math.floorMod(year, 100), 2);
+		writeNumber(month, 2);
+		writeNumber(day, 2);
+		writeNumber(secondOfDay / 3600, 2);
+		writeNumber((secondOfDay / 60) % 60, 2);
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+}
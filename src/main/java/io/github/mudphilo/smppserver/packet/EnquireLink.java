@@ -10,4 +10,9 @@ public class EnquireLink extends SmppRequest {
 	public EnquireLink() {
 		super(SmppPacket.ENQUIRE_LINK);
 	}
+
+	@Override
+	public EnquireLinkResp createResponse() {
+		return withSequenceNumber(new EnquireLinkResp());
+	}
 }
@@ -0,0 +1,339 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * <p>A {@link SubmitSm} backed by the bytes of the received packet. The packet is scanned once when it is created to
+ * find where each field starts (which also validates it), but the strings, addresses, short message and optional
+ * parameters are only created the first time they are accessed. Processors that only look at a few fields (e.g. the
+ * destination address and the data coding) don't pay for the rest.</p>
+ *
+ * <p>The one-byte fields are read right away as they don't allocate anything. The setters work as usual and replace
+ * the value of the received packet.</p>
+ */
+public class LazySubmitSm extends SubmitSm {
+
+	private static final Charset C_STRING_CHARSET = Charset.forName("ISO-8859-1");
+
+	private static final int HEADER_LENGTH = 16;
+
+	private static final int SERVICE_TYPE = 1;
+	private static final int SOURCE_ADDRESS = 1 << 1;
+	private static final int DEST_ADDRESS = 1 << 2;
+	private static final int SCHEDULE_DELIVERY_TIME = 1 << 3;
+	private static final int VALIDITY_PERIOD = 1 << 4;
+	private static final int SHORT_MESSAGE = 1 << 5;
+	private static final int OPTIONAL_PARAMETERS = 1 << 6;
+
+	/**
+	 * The received packet, header included.
+	 */
+	private final byte[] pdu;
+
+	private final int sourceAddressOffset;
+
+	private final int destAddressOffset;
+
+	private final int scheduleDeliveryTimeOffset;
+
+	private final int validityPeriodOffset;
+
+	private final int shortMessageOffset;
+
+	private final int optionalParametersOffset;
+
+	/**
+	 * The fields that were already parsed (or set), one bit for each field.
+	 */
+	private int materialized;
+
+	/**
+	 * Constructor. Scans the packet to find the offsets of the fields.
+	 *
+	 * @param pdu the bytes of the whole submit_sm packet, header included. The array is not copied.
+	 *
+	 * @throws IllegalArgumentException if the packet is malformed.
+	 */
+	public LazySubmitSm(byte[] pdu) {
+
+		if (pdu.length < HEADER_LENGTH || readInt(pdu, 0) != pdu.length) {
+			throw new IllegalArgumentException("The command length doesn't match the length of the packet");
+		}
+
+		this.pdu = pdu;
+		this.commandStatus = readInt(pdu, 8);
+		this.sequenceNumber = readInt(pdu, 12);
+
+		// service_type, then source and dest addresses (ton, npi and address)
+		this.sourceAddressOffset = skipCString(HEADER_LENGTH);
+		this.destAddressOffset = skipCString(checkAvailable(sourceAddressOffset, 2) + 2);
+
+		int offset = skipCString(checkAvailable(destAddressOffset, 2) + 2);
+
+		checkAvailable(offset, 3);
+		this.esmClass = pdu[offset];
+		super.setProtocolId(pdu[offset + 1]);
+		super.setPriority(pdu[offset + 2]);
+
+		this.scheduleDeliveryTimeOffset = offset + 3;
+		this.validityPeriodOffset = skipCString(scheduleDeliveryTimeOffset);
+		offset = skipCString(validityPeriodOffset);
+
+		checkAvailable(offset, 5);
+		this.registeredDelivery = pdu[offset];
+		super.setReplaceIfPresent(pdu[offset + 1]);
+		this.dataCoding = pdu[offset + 2];
+		super.setDefaultMsgId(pdu[offset + 3]);
+
+		// sm_length followed by the short message
+		this.shortMessageOffset = offset + 4;
+		checkAvailable(shortMessageOffset, 1);
+		this.optionalParametersOffset = checkAvailable(shortMessageOffset + 1, pdu[shortMessageOffset] & 0xFF)
+				+ (pdu[shortMessageOffset] & 0xFF);
+
+		// the optional parameters go until the end of the packet, check that they are well formed
+		offset = optionalParametersOffset;
+		while (offset < pdu.length) {
+			offset = checkAvailable(offset + 4, readTlvLength(offset)) + readTlvLength(offset);
+		}
+	}
+
+	@Override
+	public String getServiceType() {
+
+		if (isPending(SERVICE_TYPE)) {
+			super.setServiceType( readCString(HEADER_LENGTH) );
+		}
+
+		return super.getServiceType();
+	}
+
+	@Override
+	public void setServiceType(String serviceType) {
+		materialized |= SERVICE_TYPE;
+		super.setServiceType(serviceType);
+	}
+
+	@Override
+	public Address getSourceAddress() {
+
+		if (isPending(SOURCE_ADDRESS)) {
+			super.setSourceAddress( readAddress(sourceAddressOffset) );
+		}
+
+		return super.getSourceAddress();
+	}
+
+	@Override
+	public void setSourceAddress(Address sourceAddress) {
+		materialized |= SOURCE_ADDRESS;
+		super.setSourceAddress(sourceAddress);
+	}
+
+	@Override
+	public Address getDestAddress() {
+
+		if (isPending(DEST_ADDRESS)) {
+			super.setDestAddress( readAddress(destAddressOffset) );
+		}
+
+		return super.getDestAddress();
+	}
+
+	@Override
+	public void setDestAddress(Address destAddress) {
+		materialized |= DEST_ADDRESS;
+		super.setDestAddress(destAddress);
+	}
+
+	@Override
+	public String getScheduleDeliveryTime() {
+
+		if (isPending(SCHEDULE_DELIVERY_TIME)) {
+			super.setScheduleDeliveryTime( readCString(scheduleDeliveryTimeOffset) );
+		}
+
+		return super.getScheduleDeliveryTime();
+	}
+
+	@Override
+	public void setScheduleDeliveryTime(String scheduleDeliveryTime) {
+		materialized |= SCHEDULE_DELIVERY_TIME;
+		super.setScheduleDeliveryTime(scheduleDeliveryTime);
+	}
+
+	@Override
+	public String getValidityPeriod() {
+
+		if (isPending(VALIDITY_PERIOD)) {
+			super.setValidityPeriod( readCString(validityPeriodOffset) );
+		}
+
+		return super.getValidityPeriod();
+	}
+
+	@Override
+	public void setValidityPeriod(String validityPeriod) {
+		materialized |= VALIDITY_PERIOD;
+		super.setValidityPeriod(validityPeriod);
+	}
+
+	/**
+	 * @return the length of the received packet, header included, which is retained as long as this object.
+	 */
+	public int getPduLength() {
+		return pdu.length;
+	}
+
+	@Override
+	public String getShortMessage() {
+
+		materializeShortMessage();
+		return super.getShortMessage();
+	}
+
+	@Override
+	public byte[] getShortMessageBytes() {
+
+		materializeShortMessage();
+		return super.getShortMessageBytes();
+	}
+
+	@Override
+	public void setShortMessage(String shortMessage) {
+		materialized |= SHORT_MESSAGE;
+		super.setShortMessage(shortMessage);
+	}
+
+	@Override
+	public void setShortMessage(byte[] shortMessage) {
+		materialized |= SHORT_MESSAGE;
+		super.setShortMessage(shortMessage);
+	}
+
+	@Override
+	public List<Tlv> getOptionalParameters() {
+
+		materializeOptionalParameters();
+		return super.getOptionalParameters();
+	}
+
+	@Override
+	public void addOptionalParameter(Tlv optionalParameter) {
+
+		materializeOptionalParameters();
+		super.addOptionalParameter(optionalParameter);
+	}
+
+	@Override
+	public Tlv getOptionalParameter(short tag) {
+
+		materializeOptionalParameters();
+		return super.getOptionalParameter(tag);
+	}
+
+	private void materializeShortMessage() {
+
+		if (isPending(SHORT_MESSAGE)) {
+
+			int length = pdu[shortMessageOffset] & 0xFF;
+
+			byte[] shortMessage = new byte[length];
+			System.arraycopy(pdu, shortMessageOffset + 1, shortMessage, 0, length);
+
+			super.setShortMessage(shortMessage);
+		}
+	}
+
+	private void materializeOptionalParameters() {
+
+		if (!isPending(OPTIONAL_PARAMETERS)) {
+			return;
+		}
+
+		// the constructor already checked that the optional parameters are well formed
+		int offset = optionalParametersOffset;
+		while (offset < pdu.length) {
+
+			short tag = (short) (((pdu[offset] & 0xFF) << 8) | (pdu[offset + 1] & 0xFF));
+			int length = readTlvLength(offset);
+
+			byte[] value = new byte[length];
+			System.arraycopy(pdu, offset + 4, value, 0, length);
+
+			super.addOptionalParameter( new Tlv(tag, value, null) );
+			offset += 4 + length;
+		}
+	}
+
+	/**
+	 * Helper method. Checks if a field still has to be parsed and marks it as parsed.
+	 */
+	private boolean isPending(int field) {
+
+		if ((materialized & field) != 0) {
+			return false;
+		}
+
+		materialized |= field;
+		return true;
+	}
+
+	private Address readAddress(int offset) {
+
+		return new Address()
+			.withTon(pdu[offset])
+			.withNpi(pdu[offset + 1])
+			.withAddress( readCString(offset + 2) );
+	}
+
+	/**
+	 * Helper method. Reads the C-Octet string that starts at the offset.
+	 *
+	 * @return the string or null if it is empty.
+	 */
+	private String readCString(int offset) {
+
+		int length = skipCString(offset) - offset - 1;
+		return length == 0 ? null : new String(pdu, offset, length, C_STRING_CHARSET);
+	}
+
+	/**
+	 * Helper method. Finds the end of the C-Octet string that starts at the offset.
+	 *
+	 * @return the offset right after the null terminator.
+	 */
+	private int skipCString(int offset) {
+
+		for (int i = offset; i < pdu.length; i++) {
+			if (pdu[i] == 0) {
+				return i + 1;
+			}
+		}
+
+		throw new IllegalArgumentException("C-Octet string without null terminator at index " + offset);
+	}
+
+	private int checkAvailable(int offset, int length) {
+
+		if (offset + length > pdu.length) {
+			throw new IllegalArgumentException("Field of " + length + " bytes at index " + offset + " goes beyond " +
+					"the end of the packet");
+		}
+
+		return offset;
+	}
+
+	private int readTlvLength(int offset) {
+
+		checkAvailable(offset, 4);
+		return ((pdu[offset + 2] & 0xFF) << 8) | (pdu[offset + 3] & 0xFF);
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8)
+				| (bytes[offset + 3] & 0xFF);
+	}
+
+}
@@ -0,0 +1,46 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The message_state values of the SMPP specification, with the stat text used in the delivery receipts.
+ */
+public enum MessageState {
+
+	ENROUTE(1, "ENROUTE"),
+	DELIVERED(2, "DELIVRD"),
+	EXPIRED(3, "EXPIRED"),
+	DELETED(4, "DELETED"),
+	UNDELIVERABLE(5, "UNDELIV"),
+	ACCEPTED(6, "ACCEPTD"),
+	UNKNOWN(7, "UNKNOWN"),
+	REJECTED(8, "REJECTD");
+
+	private final byte value;
+
+	private final byte[] stat;
+
+	private MessageState(int value, String stat) {
+		this.value = (byte) value;
+		this.stat = stat.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the value of the message_state optional parameter.
+	 */
+	public byte getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the text of the stat field of the delivery receipts (e.g. DELIVRD).
+	 */
+	public String getStat() {
+		return new String(stat, StandardCharsets.US_ASCII);
+	}
+
+	byte[] statBytes() {
+		return stat;
+	}
+
+}
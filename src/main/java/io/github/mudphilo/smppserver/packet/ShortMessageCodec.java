@@ -0,0 +1,497 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>Encodes and decodes the short messages according to their data_coding. Each of the 256 data_coding values is
+ * mapped once to an {@link Alphabet}, so there is no branching on the data_coding per message:</p>
+ *
+ * <ul>
+ * 	<li>0x00 (SMSC default): GSM 03.38, one septet per octet, with the extension table.</li>
+ * 	<li>0x01 (IA5): US-ASCII.</li>
+ * 	<li>0x02, 0x04 and 0x09 (octet unspecified, pictogram): binary, each octet is decoded to the char with the same
+ * 	value, so nothing is lost.</li>
+ * 	<li>0x03: ISO-8859-1, 0x06: ISO-8859-5, 0x07: ISO-8859-8, 0x08: UCS-2 (big endian, no BOM).</li>
+ * 	<li>0x05 and 0x0A (JIS X 0208, music codes): ISO-2022-JP, 0x0D (JIS X 0212): EUC-JP, 0x0E: EUC-KR.</li>
+ * 	<li>0x10-0x1F, 0x40-0x5F (marked for automatic deletion), 0xC0-0xEF and 0xF0-0xFF: the alphabet is taken from
+ * 	the coding group bits as in GSM 03.38.</li>
+ * 	<li>0x20-0x3F and 0x60-0x7F (compressed): binary, the octets are kept as they are.</li>
+ * 	<li>Reserved values (0x0B, 0x0C, 0x0F and 0x80-0xBF): GSM 03.38.</li>
+ * </ul>
+ *
+ * <p>GSM 03.38, UCS-2, ISO-8859-1, US-ASCII and binary are decoded with lookup tables into a char buffer that is
+ * reused by each thread, the other alphabets use the JDK charsets. Characters that can't be encoded are replaced
+ * with '?'.</p>
+ */
+public final class ShortMessageCodec {
+
+	/**
+	 * The escape to the extension table of GSM 03.38.
+	 */
+	private static final int GSM_ESCAPE = 0x1B;
+
+	/**
+	 * The basic table, the septet 0x1B is the escape so its character is never used.
+	 */
+	private static final char[] GSM_BASIC = (
+			"@\u00A3$\u00A5\u00E8\u00E9\u00F9\u00EC\u00F2\u00C7\n\u00D8\u00F8\r\u00C5\u00E5" +
+			"\u0394_\u03A6\u0393\u039B\u03A9\u03A0\u03A8\u03A3\u0398\u039E \u00C6\u00E6\u00DF\u00C9" +
+			" !\"#\u00A4%&'()*+,-./" +
+			"0123456789:;<=>?" +
+			"\u00A1ABCDEFGHIJKLMNO" +
+			"PQRSTUVWXYZ\u00C4\u00D6\u00D1\u00DC\u00A7" +
+			"\u00BFabcdefghijklmno" +
+			"pqrstuvwxyz\u00E4\u00F6\u00F1\u00FC\u00E0").toCharArray();
+
+	/**
+	 * The extension table, 0 for the septets without an extension character.
+	 */
+	private static final char[] GSM_EXTENSION = new char[128];
+
+	/**
+	 * The chars up to this value are encoded with {@link #GSM_ENCODE}, the euro sign is the only one above it.
+	 */
+	private static final int GSM_ENCODE_LIMIT = 0x0400;
+
+	/**
+	 * The GSM 03.38 code of each char: the septet for the basic table, <code>0x1B00 | septet</code> for the
+	 * extension table or -1 if the char can't be encoded.
+	 */
+	private static final short[] GSM_ENCODE = new short[GSM_ENCODE_LIMIT];
+
+	private static final short GSM_EURO = 0x1B65;
+
+	private static final short GSM_QUESTION_MARK = 0x3F;
+
+	static {
+
+		GSM_EXTENSION[0x0A] = '\f';
+		GSM_EXTENSION[0x14] = '^';
+		GSM_EXTENSION[0x28] = '{';
+		GSM_EXTENSION[0x29] = '}';
+		GSM_EXTENSION[0x2F] = '\\';
+		GSM_EXTENSION[0x3C] = '[';
+		GSM_EXTENSION[0x3D] = '~';
+		GSM_EXTENSION[0x3E] = ']';
+		GSM_EXTENSION[0x40] = '|';
+		GSM_EXTENSION[0x65] = '\u20AC';
+
+		Arrays.fill(GSM_ENCODE, (short) -1);
+
+		for (int i = 0; i < GSM_EXTENSION.length; i++) {
+			if (GSM_EXTENSION[i] != 0 && GSM_EXTENSION[i] < GSM_ENCODE_LIMIT) {
+				GSM_ENCODE[GSM_EXTENSION[i]] = (short) ((GSM_ESCAPE << 8) | i);
+			}
+		}
+
+		for (int i = 0; i < GSM_BASIC.length; i++) {
+			if (i != GSM_ESCAPE) {
+				GSM_ENCODE[GSM_BASIC[i]] = (short) i;
+			}
+		}
+	}
+
+	/**
+	 * The alphabet of each data_coding value.
+	 */
+	private static final Alphabet[] ALPHABETS = new Alphabet[256];
+
+	static {
+
+		// binary data is decoded as ISO-8859-1 so the text can be encoded back to the same octets
+		Alphabet binary = new Latin1(0xFF);
+		Alphabet gsm = new Gsm();
+		Alphabet ucs2 = new Ucs2();
+
+		for (int i = 0; i < ALPHABETS.length; i++) {
+
+			if (i >= 0x10 && i <= 0x7F && (i & 0x20) != 0) {
+				// general data coding or automatic deletion group with the compressed bit, not decompressed
+				ALPHABETS[i] = binary;
+			} else if (i >= 0x10 && i <= 0x7F) {
+				// general data coding or automatic deletion group, bits 3..2 are the alphabet
+				ALPHABETS[i] = codingGroupAlphabet((i >> 2) & 0x03, gsm, binary, ucs2);
+			} else if (i >= 0xC0 && i <= 0xDF) {
+				// message waiting indication group, discard or store message
+				ALPHABETS[i] = gsm;
+			} else if (i >= 0xE0 && i <= 0xEF) {
+				// message waiting indication group, store message
+				ALPHABETS[i] = ucs2;
+			} else if (i >= 0xF0) {
+				// data coding/message class group, bit 2 is the alphabet
+				ALPHABETS[i] = (i & 0x04) == 0 ? gsm : binary;
+			} else {
+				ALPHABETS[i] = gsm;
+			}
+		}
+
+		ALPHABETS[DataCoding.DEFAULT] = gsm;
+		ALPHABETS[DataCoding.GSM] = new Latin1(0x7F);
+		ALPHABETS[DataCoding.EIGHT_BITA] = binary;
+		ALPHABETS[DataCoding.LATIN1] = binary;
+		ALPHABETS[DataCoding.EIGHT_BIT] = binary;
+		ALPHABETS[DataCoding.JIS] = charsetAlphabet("ISO-2022-JP", binary);
+		ALPHABETS[DataCoding.CYRLLIC] = charsetAlphabet("ISO-8859-5", binary);
+		ALPHABETS[DataCoding.HEBREW] = charsetAlphabet("ISO-8859-8", binary);
+		ALPHABETS[DataCoding.UCS2] = ucs2;
+		ALPHABETS[DataCoding.PICTO] = binary;
+		ALPHABETS[DataCoding.MUSIC] = charsetAlphabet("ISO-2022-JP", binary);
+		ALPHABETS[DataCoding.EXKANJI] = charsetAlphabet("EUC-JP", binary);
+		ALPHABETS[DataCoding.KSC5601] = charsetAlphabet("EUC-KR", binary);
+	}
+
+	/**
+	 * The buffer in which each thread decodes the short messages before creating the string.
+	 */
+	private static final ThreadLocal<char[]> DECODE_BUFFER = new ThreadLocal<char[]>() {
+
+		@Override
+		protected char[] initialValue() {
+			return new char[256];
+		}
+
+	};
+
+	private ShortMessageCodec() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * Decodes a short message.
+	 *
+	 * @param bytes the short message, can be null.
+	 * @param dataCoding the data_coding of the packet.
+	 *
+	 * @return the decoded text or null if <code>bytes</code> is null.
+	 */
+	public static String decode(byte[] bytes, byte dataCoding) {
+
+		if (bytes == null) {
+			return null;
+		}
+
+		return decode(bytes, 0, bytes.length, dataCoding);
+	}
+
+	/**
+	 * Decodes part of a short message, e.g. to skip the user data header.
+	 *
+	 * @param bytes the short message.
+	 * @param offset the index of the first byte to decode.
+	 * @param length the number of bytes to decode.
+	 * @param dataCoding the data_coding of the packet.
+	 *
+	 * @return the decoded text.
+	 */
+	public static String decode(byte[] bytes, int offset, int length, byte dataCoding) {
+
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", bytes: " + bytes.length);
+		}
+
+		return ALPHABETS[dataCoding & 0xFF].decode(bytes, offset, length);
+	}
+
+	/**
+	 * Encodes a short message.
+	 *
+	 * @param text the text to encode, can be null.
+	 * @param dataCoding the data_coding of the packet.
+	 *
+	 * @return the encoded short message or null if <code>text</code> is null.
+	 */
+	public static byte[] encode(String text, byte dataCoding) {
+
+		if (text == null) {
+			return null;
+		}
+
+		return ALPHABETS[dataCoding & 0xFF].encode(text);
+	}
+
+	/**
+	 * Decodes a GSM 03.38 text packed in septets (7 bits per character), e.g. from a message_payload or the user data
+	 * of a SIM.
+	 *
+	 * @param packed the packed septets.
+	 * @param offset the index of the first byte.
+	 * @param septets the number of septets to decode.
+	 *
+	 * @return the decoded text.
+	 */
+	public static String decodePackedGsm(byte[] packed, int offset, int septets) {
+
+		if (offset < 0 || septets < 0 || offset + (septets * 7 + 7) / 8 > packed.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", septets: " + septets + ", bytes: "
+					+ packed.length);
+		}
+
+		char[] chars = decodeBuffer(septets);
+		int count = 0;
+		boolean escaped = false;
+
+		for (int i = 0; i < septets; i++) {
+
+			int bit = i * 7;
+			int index = offset + (bit >> 3);
+			int shift = bit & 0x07;
+
+			int septet = (packed[index] & 0xFF) >> shift;
+			if (shift > 1) {
+				septet |= (packed[index + 1] & 0xFF) << (8 - shift);
+			}
+			septet &= 0x7F;
+
+			if (escaped) {
+				chars[count++] = gsmExtension(septet);
+				escaped = false;
+			} else if (septet == GSM_ESCAPE) {
+				escaped = true;
+			} else {
+				chars[count++] = GSM_BASIC[septet];
+			}
+		}
+
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * Encodes a text to GSM 03.38 packed in septets (7 bits per character).
+	 *
+	 * @param text the text to encode.
+	 *
+	 * @return the packed septets, the number of septets is <code>(length * 8) / 7</code> or one less if the last
+	 * septet is just padding.
+	 */
+	public static byte[] encodePackedGsm(String text) {
+
+		byte[] septets = ALPHABETS[DataCoding.DEFAULT].encode(text);
+		byte[] packed = new byte[(septets.length * 7 + 7) / 8];
+
+		for (int i = 0; i < septets.length; i++) {
+
+			int bit = i * 7;
+			int index = bit >> 3;
+			int shift = bit & 0x07;
+
+			packed[index] |= (byte) (septets[i] << shift);
+			if (shift > 1) {
+				packed[index + 1] |= (byte) ((septets[i] & 0x7F) >> (8 - shift));
+			}
+		}
+
+		return packed;
+	}
+
+	private static char gsmExtension(int septet) {
+
+		// an unknown extension is displayed as the character of the basic table
+		char c = GSM_EXTENSION[septet];
+		return c != 0 ? c : GSM_BASIC[septet];
+	}
+
+	private static char[] decodeBuffer(int length) {
+
+		char[] chars = DECODE_BUFFER.get();
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+			DECODE_BUFFER.set(chars);
+		}
+
+		return chars;
+	}
+
+	private static Alphabet codingGroupAlphabet(int alphabet, Alphabet gsm, Alphabet binary, Alphabet ucs2) {
+
+		switch (alphabet) {
+			case 1:
+				return binary;
+			case 2:
+				return ucs2;
+			default:
+				// 3 is reserved
+				return gsm;
+		}
+	}
+
+	private static Alphabet charsetAlphabet(String charsetName, Alphabet fallback) {
+		return Charset.isSupported(charsetName) ? new CharsetAlphabet(Charset.forName(charsetName)) : fallback;
+	}
+
+	/**
+	 * Encodes and decodes the short messages of one or more data_coding values.
+	 */
+	private abstract static class Alphabet {
+
+		abstract String decode(byte[] bytes, int offset, int length);
+
+		abstract byte[] encode(String text);
+
+	}
+
+	/**
+	 * GSM 03.38, one septet per octet.
+	 */
+	private static class Gsm extends Alphabet {
+
+		@Override
+		String decode(byte[] bytes, int offset, int length) {
+
+			char[] chars = decodeBuffer(length);
+			int count = 0;
+
+			for (int i = offset, end = offset + length; i < end; i++) {
+
+				int septet = bytes[i] & 0x7F;
+
+				if (septet == GSM_ESCAPE) {
+					// a trailing escape is ignored
+					if (++i < end) {
+						chars[count++] = gsmExtension(bytes[i] & 0x7F);
+					}
+				} else {
+					chars[count++] = GSM_BASIC[septet];
+				}
+			}
+
+			return new String(chars, 0, count);
+		}
+
+		@Override
+		byte[] encode(String text) {
+
+			// first pass to find the length, the extension characters take two septets
+			int length = 0;
+			for (int i = 0; i < text.length(); i++) {
+				length += gsmCode(text.charAt(i)) > 0xFF ? 2 : 1;
+			}
+
+			byte[] bytes = new byte[length];
+			int index = 0;
+
+			for (int i = 0; i < text.length(); i++) {
+
+				int code = gsmCode(text.charAt(i));
+				if (code > 0xFF) {
+					bytes[index++] = GSM_ESCAPE;
+				}
+
+				bytes[index++] = (byte) (code & 0x7F);
+			}
+
+			return bytes;
+		}
+
+		private static int gsmCode(char c) {
+
+			if (c < GSM_ENCODE_LIMIT) {
+				short code = GSM_ENCODE[c];
+				return code >= 0 ? code : GSM_QUESTION_MARK;
+			}
+
+			return c == '\u20AC' ? GSM_EURO : GSM_QUESTION_MARK;
+		}
+
+	}
+
+	/**
+	 * UCS-2, two octets per character in big endian order. Characters outside the BMP are encoded as surrogate
+	 * pairs, which is what the handsets do. An odd trailing octet is ignored.
+	 */
+	private static class Ucs2 extends Alphabet {
+
+		@Override
+		String decode(byte[] bytes, int offset, int length) {
+
+			int count = length / 2;
+			char[] chars = decodeBuffer(count);
+
+			for (int i = 0; i < count; i++) {
+				int index = offset + i * 2;
+				chars[i] = (char) (((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF));
+			}
+
+			return new String(chars, 0, count);
+		}
+
+		@Override
+		byte[] encode(String text) {
+
+			byte[] bytes = new byte[text.length() * 2];
+
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				bytes[i * 2] = (byte) (c >> 8);
+				bytes[i * 2 + 1] = (byte) c;
+			}
+
+			return bytes;
+		}
+
+	}
+
+	/**
+	 * The single octet alphabets whose characters have the same value as the octet: US-ASCII (up to 0x7F) and
+	 * ISO-8859-1 or binary (up to 0xFF).
+	 */
+	private static class Latin1 extends Alphabet {
+
+		private final int maxChar;
+
+		Latin1(int maxChar) {
+			this.maxChar = maxChar;
+		}
+
+		@Override
+		String decode(byte[] bytes, int offset, int length) {
+
+			char[] chars = decodeBuffer(length);
+
+			for (int i = 0; i < length; i++) {
+				int c = bytes[offset + i] & 0xFF;
+				chars[i] = c <= maxChar ? (char) c : '\uFFFD';
+			}
+
+			return new String(chars, 0, length);
+		}
+
+		@Override
+		byte[] encode(String text) {
+
+			byte[] bytes = new byte[text.length()];
+
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				bytes[i] = c <= maxChar ? (byte) c : (byte) '?';
+			}
+
+			return bytes;
+		}
+
+	}
+
+	/**
+	 * The alphabets that use a JDK charset.
+	 */
+	private static class CharsetAlphabet extends Alphabet {
+
+		private final Charset charset;
+
+		CharsetAlphabet(Charset charset) {
+			this.charset = charset;
+		}
+
+		@Override
+		String decode(byte[] bytes, int offset, int length) {
+			return new String(bytes, offset, length, charset);
+		}
+
+		@Override
+		byte[] encode(String text) {
+			return text.getBytes(charset);
+		}
+
+	}
+
+}
@@ -1,6 +1,7 @@
 package io.github.mudphilo.smppserver.packet;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.List;
 
 /**
@@ -43,12 +44,20 @@ public abstract class SmppPacket {
     
     protected int sequenceNumber = -1;
     
-    private final List<Tlv> optionalParameters;
+    /**
+     * The optional parameters indexed by tag, created when the first one is added.
+     */
+    private TlvTable optionalParameters;
+    
+    /**
+     * The list returned by {@link #getOptionalParameters()} while the packet doesn't have optional parameters,
+     * created the first time it's requested.
+     */
+    private List<Tlv> optionalParametersView;
     
 
     protected SmppPacket(int commandId) {
     	this.commandId = commandId;
-    	this.optionalParameters = new ArrayList<>();
     }
 
     public int getCommandId() {
@@ -71,26 +80,170 @@ public abstract class SmppPacket {
     	this.sequenceNumber = sequenceNumber;
     }
 
+    /**
+     * @return a live, modifiable list of the optional parameters in the order they were added. Changes to the list
+     * (e.g. add, set or remove) change the optional parameters of the packet.
+     */
     public List<Tlv> getOptionalParameters() {
-    	return optionalParameters;
+    	
+    	if (optionalParameters != null) {
+    		return optionalParameters.asList();
+    	}
+    	
+    	if (optionalParametersView == null) {
+    		optionalParametersView = new OptionalParameters();
+    	}
+    	
+    	return optionalParametersView;
     }
 
     public void addOptionalParameter(Tlv optionalParameter) {
-    	optionalParameters.add(optionalParameter);
+    	optionalParameters().add(optionalParameter);
     }
     
+    /**
+     * Helper method. Returns the table of optional parameters, creating it if it doesn't exist.
+     */
+    private TlvTable optionalParameters() {
+    	
+    	if (optionalParameters == null) {
+    		optionalParameters = new TlvTable();
+    	}
+    	
+    	return optionalParameters;
+    }
+    
+    /**
+     * @param tag the tag of the optional parameter.
+     * 
+     * @return the first optional parameter with the tag or null if there is none.
+     */
     public Tlv getOptionalParameter(short tag) {
+    	return optionalParameters == null ? null : optionalParameters.get(tag);
+    }
+    
+    /**
+     * @return the value of the sar_msg_ref_num optional parameter or -1 if it's not present or malformed.
+     */
+    public int getSarMsgRefNum() {
+    	return getUnsignedValue(Tlv.TAG_SAR_MSG_REF_NUM, 2);
+    }
+    
+    /**
+     * @return the value of the sar_total_segments optional parameter or -1 if it's not present or malformed.
+     */
+    public int getSarTotalSegments() {
+    	return getUnsignedValue(Tlv.TAG_SAR_TOTAL_SEGMENTS, 1);
+    }
+    
+    /**
+     * @return the value of the sar_segment_seqnum optional parameter or -1 if it's not present or malformed.
+     */
+    public int getSarSegmentSeqnum() {
+    	return getUnsignedValue(Tlv.TAG_SAR_SEGMENT_SEQNUM, 1);
+    }
+    
+    /**
+     * @return the value of the user_message_reference optional parameter or -1 if it's not present or malformed.
+     */
+    public int getUserMessageReference() {
+    	return getUnsignedValue(Tlv.TAG_USER_MESSAGE_REFERENCE, 2);
+    }
+    
+    /**
+     * @return the value of the message_payload optional parameter (not a copy) or null if it's not present.
+     */
+    public byte[] getMessagePayload() {
+    	
+    	Tlv tlv = getOptionalParameter(Tlv.TAG_MESSAGE_PAYLOAD);
+    	return tlv == null ? null : tlv.getValue();
+    }
+    
+    /**
+     * @return the value of the receipted_message_id optional parameter without the null terminator or null if it's 
+     * not present.
+     */
+    public String getReceiptedMessageId() {
     	
-    	for (Tlv tlv : optionalParameters) {
-    		if (tag == tlv.getTag()) {
-    			return tlv;
+    	Tlv tlv = getOptionalParameter(Tlv.TAG_RECEIPTED_MESSAGE_ID);
+    	if (tlv == null || tlv.getValue() == null) {
+    		return null;
+    	}
+    	
+    	byte[] value = tlv.getValue();
+    	
+    	int length = 0;
+    	while (length < value.length && value[length] != 0) {
+    		length++;
+    	}
+    	
+    	return new String(value, 0, length, StandardCharsets.ISO_8859_1);
+    }
+    
+    /**
+     * Helper method. Reads the value of an optional parameter as an unsigned integer of <code>length</code> bytes.
+     * 
+     * @return the value or -1 if the optional parameter is not present or doesn't have the expected length.
+     */
+    private int getUnsignedValue(short tag, int length) {
+    	
+    	Tlv tlv = getOptionalParameter(tag);
+    	if (tlv == null || tlv.getValue() == null || tlv.getValue().length != length) {
+    		return -1;
+    	}
+    	
+    	byte[] value = tlv.getValue();
+    	return length == 1 ? value[0] & 0xFF : ((value[0] & 0xFF) << 8) | (value[1] & 0xFF);
+    }
+    
+    /**
+     * The list of optional parameters of a packet that didn't have any when it was requested. It delegates to the 
+     * table of the packet, which is created by the first add.
+     */
+    private final class OptionalParameters extends AbstractList<Tlv> {
+    	
+    	@Override
+    	public Tlv get(int index) {
+    		
+    		if (optionalParameters == null) {
+    			throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
     		}
+    		
+    		return optionalParameters.asList().get(index);
+    	}
+    	
+    	@Override
+    	public int size() {
+    		return optionalParameters == null ? 0 : optionalParameters.asList().size();
+    	}
+    	
+    	@Override
+    	public void add(int index, Tlv tlv) {
+    		optionalParameters().asList().add(index, tlv);
+    		modCount++;
     	}
     	
-    	return null;
+    	@Override
+    	public Tlv set(int index, Tlv tlv) {
+    		get(index);
+    		return optionalParameters.asList().set(index, tlv);
+    	}
+    	
+    	@Override
+    	public Tlv remove(int index) {
+    		
+    		get(index);
+    		modCount++;
+    		
+    		return optionalParameters.asList().remove(index);
+    	}
     	
     }
     
+    public boolean isResponse() {
+    	return (commandId & 0x80000000) != 0;
+    }
+    
     public boolean isBind() {
     	return commandId == SmppPacket.BIND_TRANSCEIVER 
     			|| commandId == SmppPacket.BIND_RECEIVER 
@@ -100,5 +253,35 @@ public abstract class SmppPacket {
     public boolean isSubmitSm() {
     	return commandId == SmppPacket.SUBMIT_SM;
     }
+    
+    /**
+     * @param commandId the command id of a packet.
+     * 
+     * @return the name of the command as in the SMPP specification (e.g. submit_sm_resp) or the hexadecimal command
+     * id if it's unknown.
+     */
+    public static String getCommandName(int commandId) {
+    	
+    	String name;
+    	switch (commandId & ~GENERIC_NACK) {
+    		case BIND_RECEIVER: name = "bind_receiver"; break;
+    		case BIND_TRANSMITTER: name = "bind_transmitter"; break;
+    		case QUERY_SM: name = "query_sm"; break;
+    		case SUBMIT_SM: name = "submit_sm"; break;
+    		case DELIVER_SM: name = "deliver_sm"; break;
+    		case UNBIND: name = "unbind"; break;
+    		case REPLACE_SM: name = "replace_sm"; break;
+    		case CANCEL_SM: name = "cancel_sm"; break;
+    		case BIND_TRANSCEIVER: name = "bind_transceiver"; break;
+    		case ENQUIRE_LINK: name = "enquire_link"; break;
+    		case SUBMIT_MULTI: name = "submit_multi"; break;
+    		case ALERT_NOTIFICATION: name = "alert_notification"; break;
+    		case DATA_SM: name = "data_sm"; break;
+    		case 0: return commandId == GENERIC_NACK ? "generic_nack" : String.format("0x%08x", commandId);
+    		default: return String.format("0x%08x", commandId);
+    	}
+    	
+    	return (commandId & GENERIC_NACK) != 0 ? name + "_resp" : name;
+    }
 
 }
\ No newline at end of file
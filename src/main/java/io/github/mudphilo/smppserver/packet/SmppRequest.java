@@ -10,4 +10,23 @@ public abstract class SmppRequest extends SmppPacket {
 		super(commandId);
 	}
 	
+	/**
+	 * Creates the response of this request with the same sequence number and an OK command status.
+	 * 
+	 * @return the created {@link SmppResponse}.
+	 */
+	public abstract SmppResponse createResponse();
+	
+	/**
+	 * Helper method. Copies the sequence number of this request to the response.
+	 * 
+	 * @param response the response of this request.
+	 * 
+	 * @return the same response.
+	 */
+	protected <T extends SmppResponse> T withSequenceNumber(T response) {
+		response.setSequenceNumber(sequenceNumber);
+		return response;
+	}
+	
 }
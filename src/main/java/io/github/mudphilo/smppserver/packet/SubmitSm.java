@@ -1,6 +1,5 @@
 package io.github.mudphilo.smppserver.packet;
 
-import com.cloudhopper.commons.charset.CharsetUtil;
 import com.cloudhopper.smpp.SmppConstants;
 
 /**
@@ -35,10 +34,21 @@ public class SubmitSm extends SmppRequest {
     
     private byte[] shortMessage;
     
+    /**
+     * The decoded short message, cached as content based routing and filtering decode every message. It's cleared 
+     * when the short message or the data_coding change.
+     */
+    private String text;
+    
     public SubmitSm() {
     	super(SmppPacket.SUBMIT_SM);
     }
 
+	@Override
+	public SubmitSmResp createResponse() {
+		return withSequenceNumber(new SubmitSmResp());
+	}
+
 	public String getServiceType() {
 		return serviceType;
 	}
@@ -125,6 +135,7 @@ public class SubmitSm extends SmppRequest {
 
 	public void setDataCoding(byte dataCoding) {
 		this.dataCoding = dataCoding;
+		this.text = null;
 	}
 
 	public byte getDefaultMsgId() {
@@ -135,43 +146,37 @@ public class SubmitSm extends SmppRequest {
 		this.defaultMsgId = defaultMsgId;
 	}
 
+	/**
+	 * @return the short message decoded with the alphabet of the data_coding (see {@link ShortMessageCodec}).
+	 */
 	public String getShortMessage() {
-		return CharsetUtil.decode( shortMessage, getCharsetName(dataCoding) );
+		
+		if (text == null) {
+			text = ShortMessageCodec.decode(shortMessage, dataCoding);
+		}
+		
+		return text;
+	}
+
+	/**
+	 * @return the short message as it was received (not a copy), including the user data header if any.
+	 */
+	public byte[] getShortMessageBytes() {
+		return shortMessage;
 	}
 
+	/**
+	 * Encodes the text with the alphabet of the data_coding (see {@link ShortMessageCodec}), so the data_coding must 
+	 * be set first.
+	 */
 	public void setShortMessage(String shortMessage) {
-		this.shortMessage = CharsetUtil.encode( shortMessage, getCharsetName(dataCoding) );
+		this.shortMessage = ShortMessageCodec.encode(shortMessage, dataCoding);
+		this.text = null;
 	}
 	
 	public void setShortMessage(byte[] shortMessage) {
 		this.shortMessage = shortMessage;
-	}
-	
-	private String getCharsetName(byte dataCoding) {
-		
-		String charset = null;
-		
-		if (dataCoding == SmppConstants.DATA_CODING_DEFAULT || dataCoding == SmppConstants.DATA_CODING_GSM) {
-			charset = CharsetUtil.NAME_GSM;
-		} else if (dataCoding == SmppConstants.DATA_CODING_8BITA) {
-			charset = CharsetUtil.NAME_UTF_8;
-		} else if (dataCoding == SmppConstants.DATA_CODING_LATIN1) {
-			charset = CharsetUtil.NAME_ISO_8859_1;
-		} else if (dataCoding == SmppConstants.DATA_CODING_8BIT) {
-			charset = CharsetUtil.NAME_GSM8;
-		} else if (dataCoding == SmppConstants.DATA_CODING_JIS) {
-			charset = CharsetUtil.NAME_GSM; //  is this right?
-		} else if (dataCoding == SmppConstants.DATA_CODING_CYRLLIC) {
-			charset = CharsetUtil.NAME_GSM; // is this right?
-		} else if (dataCoding == SmppConstants.DATA_CODING_HEBREW) {
-			charset = CharsetUtil.NAME_UCS_2; // is this right?
-		} else if (dataCoding == SmppConstants.DATA_CODING_UCS2) {
-			charset = CharsetUtil.NAME_UCS_2;
-		} else {
-			charset = CharsetUtil.NAME_GSM;
-		}
-		
-		return charset;
+		this.text = null;
 	}
 	
 }
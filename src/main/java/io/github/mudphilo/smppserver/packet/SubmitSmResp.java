@@ -0,0 +1,50 @@
+package io.github.mudphilo.smppserver.packet;
+
+import io.github.mudphilo.smppserver.MessageIdGenerator;
+
+/**
+ * The response to a submit_sm request. The message id is either set explicitly or generated by a
+ * {@link MessageIdGenerator} when the response is encoded.
+ */
+public class SubmitSmResp extends SmppResponse {
+
+	private String messageId;
+
+	private MessageIdGenerator messageIdGenerator;
+
+	public SubmitSmResp() {
+		super(SmppPacket.SUBMIT_SM_RESP);
+	}
+
+	/**
+	 * @return the message id set explicitly or null if there is none (including when it's generated on encoding).
+	 */
+	public String getMessageId() {
+		return messageId;
+	}
+
+	public void setMessageId(String messageId) {
+		this.messageId = messageId;
+		this.messageIdGenerator = null;
+	}
+
+	/**
+	 * @return the generator of the message id or null if the message id was set explicitly (or there is none).
+	 */
+	public MessageIdGenerator getMessageIdGenerator() {
+		return messageIdGenerator;
+	}
+
+	/**
+	 * Makes the message id generated when the response is encoded, which lets the native encoder write it straight
+	 * into the buffer with {@link MessageIdGenerator#nextId(byte[], int)} instead of creating a String. Replaces the
+	 * message id set explicitly, if any.
+	 *
+	 * @param messageIdGenerator the generator of the message id.
+	 */
+	public void setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+		this.messageIdGenerator = messageIdGenerator;
+		this.messageId = null;
+	}
+
+}
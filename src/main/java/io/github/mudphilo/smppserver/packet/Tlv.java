@@ -11,6 +11,14 @@ import java.io.UnsupportedEncodingException;
  */
 public class Tlv {
 	
+	public static final short TAG_RECEIPTED_MESSAGE_ID = 0x001E;
+	public static final short TAG_USER_MESSAGE_REFERENCE = 0x0204;
+	public static final short TAG_SAR_MSG_REF_NUM = 0x020C;
+	public static final short TAG_SAR_TOTAL_SEGMENTS = 0x020E;
+	public static final short TAG_SAR_SEGMENT_SEQNUM = 0x020F;
+	public static final short TAG_MESSAGE_PAYLOAD = 0x0424;
+	public static final short TAG_MESSAGE_STATE = 0x0427;
+	
 	private final short tag;
     
 	private final byte[] value;
@@ -0,0 +1,213 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Holds the optional parameters of a {@link SmppPacket}. The parameters are kept in the order they were added and
+ * indexed by tag in a small open addressing table keyed by the primitive <code>short</code>, so a lookup doesn't
+ * walk the parameters nor box the tag.</p>
+ *
+ * <p>Most packets don't have optional parameters, so the packet only creates the table when the first one is
+ * added. Like the packets, this class is not thread-safe.</p>
+ */
+final class TlvTable {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	/**
+	 * The parameters in the order they were added.
+	 */
+	private Tlv[] entries = new Tlv[INITIAL_CAPACITY];
+
+	private int size;
+
+	/**
+	 * The tags of the index, the length is always a power of two and at least twice the number of parameters.
+	 */
+	private short[] keys = new short[INITIAL_CAPACITY * 2];
+
+	/**
+	 * The position + 1 in <code>entries</code> of the first parameter with the tag of the same slot in
+	 * <code>keys</code>, 0 if the slot is empty.
+	 */
+	private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+	private final List<Tlv> view = new AbstractList<Tlv>() {
+
+		@Override
+		public Tlv get(int index) {
+
+			if (index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+
+			return entries[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void add(int index, Tlv tlv) {
+
+			if (index < 0 || index > size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+
+			TlvTable.this.add(index, tlv);
+			modCount++;
+		}
+
+		@Override
+		public Tlv set(int index, Tlv tlv) {
+
+			Tlv previous = get(index);
+			TlvTable.this.set(index, tlv);
+
+			return previous;
+		}
+
+		@Override
+		public Tlv remove(int index) {
+
+			Tlv removed = get(index);
+			TlvTable.this.remove(index);
+			modCount++;
+
+			return removed;
+		}
+
+	};
+
+	/**
+	 * Adds a parameter. If there is already a parameter with the same tag, both are kept but {@link #get(short)}
+	 * keeps returning the first one.
+	 */
+	public void add(Tlv tlv) {
+
+		if (size == entries.length) {
+			grow();
+		}
+
+		entries[size++] = tlv;
+		index(tlv.getTag(), size);
+	}
+
+	/**
+	 * Inserts a parameter at a position of the order they were added, the index is rebuilt.
+	 */
+	public void add(int index, Tlv tlv) {
+
+		if (index == size) {
+			add(tlv);
+			return;
+		}
+
+		if (size == entries.length) {
+			grow();
+		}
+
+		System.arraycopy(entries, index, entries, index + 1, size - index);
+		entries[index] = tlv;
+		size++;
+
+		reindex();
+	}
+
+	/**
+	 * Replaces the parameter at a position, the index is rebuilt.
+	 */
+	public void set(int index, Tlv tlv) {
+		entries[index] = tlv;
+		reindex();
+	}
+
+	/**
+	 * Removes the parameter at a position, the index is rebuilt.
+	 */
+	public void remove(int index) {
+
+		System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+		entries[--size] = null;
+
+		reindex();
+	}
+
+	/**
+	 * @return the first parameter with the tag or null if there is none.
+	 */
+	public Tlv get(short tag) {
+
+		int mask = keys.length - 1;
+		for (int slot = hash(tag) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == tag) {
+				return entries[slots[slot] - 1];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return a live list of the parameters in the order they were added. Changes to the list change the table.
+	 */
+	public List<Tlv> asList() {
+		return view;
+	}
+
+	private void index(short tag, int position) {
+
+		int mask = keys.length - 1;
+		int slot = hash(tag) & mask;
+
+		while (slots[slot] != 0) {
+
+			// the first parameter with the tag wins
+			if (keys[slot] == tag) {
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = tag;
+		slots[slot] = position;
+	}
+
+	private void grow() {
+
+		Tlv[] oldEntries = entries;
+
+		entries = new Tlv[oldEntries.length * 2];
+		System.arraycopy(oldEntries, 0, entries, 0, size);
+
+		keys = new short[entries.length * 2];
+		slots = new int[entries.length * 2];
+
+		reindex();
+	}
+
+	/**
+	 * Helper method. Rebuilds the index after the positions of the parameters changed.
+	 */
+	private void reindex() {
+
+		Arrays.fill(slots, 0);
+
+		for (int i = 0; i < size; i++) {
+			index(entries[i].getTag(), i + 1);
+		}
+	}
+
+	private static int hash(short tag) {
+
+		// the tags are mostly consecutive numbers, spread them a bit
+		int h = tag * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+
+}
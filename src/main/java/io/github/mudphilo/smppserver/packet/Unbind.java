@@ -6,4 +6,9 @@ public class Unbind extends SmppRequest {
 		super(SmppPacket.UNBIND);
 	}
 
+	@Override
+	public UnbindResp createResponse() {
+		return withSequenceNumber(new UnbindResp());
+	}
+
 }
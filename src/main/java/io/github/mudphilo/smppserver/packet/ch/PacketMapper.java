@@ -2,6 +2,7 @@ package io.github.mudphilo.smppserver.packet.ch;
 import com.cloudhopper.smpp.pdu.BaseBind;
 import com.cloudhopper.smpp.pdu.Pdu;
 import com.cloudhopper.smpp.type.SmppInvalidArgumentException;
+import io.github.mudphilo.smppserver.MessageIdGenerator;
 import io.github.mudphilo.smppserver.packet.*;
 
 /**
@@ -36,6 +37,8 @@ public class PacketMapper {
 			packet = new EnquireLink();
 		} else if (pdu.getCommandId() == SmppPacket.ENQUIRE_LINK_RESP) {
 			packet = new EnquireLinkResp();
+		} else if (pdu.getCommandId() == SmppPacket.UNBIND_RESP) {
+			packet = new UnbindResp();
 		} else if (pdu.getCommandId() == SmppPacket.GENERIC_NACK) {
 			packet = new GenericNack();
 		}
@@ -105,6 +108,17 @@ public class PacketMapper {
 		
 	}
 	
+	private static String messageId(SubmitSmResp submitSmResp) {
+		
+		// the cloudhopper PDUs only take the message id as a String
+		MessageIdGenerator messageIdGenerator = submitSmResp.getMessageIdGenerator();
+		if (messageIdGenerator != null) {
+			return messageIdGenerator.nextId();
+		}
+		
+		return submitSmResp.getMessageId();
+	}
+	
 	private static Tlv map(com.cloudhopper.smpp.tlv.Tlv tlv) {
 		return new Tlv( tlv.getTag(), tlv.getValue(), tlv.getTagName() );
 	}
@@ -119,10 +133,24 @@ public class PacketMapper {
 		
 		if (packet.getCommandId() == SmppPacket.DELIVER_SM) {
 			pdu = map( (DeliverSm) packet );
+		} else if (packet.getCommandId() == SmppPacket.SUBMIT_SM_RESP) {
+			com.cloudhopper.smpp.pdu.SubmitSmResp submitSmResp = new com.cloudhopper.smpp.pdu.SubmitSmResp();
+			submitSmResp.setMessageId( messageId((SubmitSmResp) packet) );
+			pdu = submitSmResp;
+		} else if (packet instanceof BindResp) {
+			pdu = map( (BindResp) packet );
+		} else if (packet.getCommandId() == SmppPacket.DELIVER_SM_RESP) {
+			pdu = new com.cloudhopper.smpp.pdu.DeliverSmResp();
 		} else if (packet.getCommandId() == SmppPacket.ENQUIRE_LINK) {
 			pdu = new com.cloudhopper.smpp.pdu.EnquireLink();
+		} else if (packet.getCommandId() == SmppPacket.ENQUIRE_LINK_RESP) {
+			pdu = new com.cloudhopper.smpp.pdu.EnquireLinkResp();
 		} else if (packet.getCommandId() == SmppPacket.UNBIND) {
 			pdu = new com.cloudhopper.smpp.pdu.Unbind();
+		} else if (packet.getCommandId() == SmppPacket.UNBIND_RESP) {
+			pdu = new com.cloudhopper.smpp.pdu.UnbindResp();
+		} else if (packet.getCommandId() == SmppPacket.GENERIC_NACK) {
+			pdu = new com.cloudhopper.smpp.pdu.GenericNack();
 		}
 		
 		if (pdu == null) {
@@ -132,10 +160,32 @@ public class PacketMapper {
 		pdu.setCommandStatus( packet.getCommandStatus() );
 		pdu.setSequenceNumber( packet.getSequenceNumber() );
 		
+		for (Tlv tlv : packet.getOptionalParameters()) {
+			pdu.addOptionalParameter( new com.cloudhopper.smpp.tlv.Tlv(tlv.getTag(), tlv.getValue(), tlv.getTagName()) );
+		}
+		
 		return pdu;
 		
 	}
 	
+	private static Pdu map(BindResp bindResp) {
+		
+		com.cloudhopper.smpp.pdu.BaseBindResp chBindResp;
+		
+		if (bindResp.getCommandId() == SmppPacket.BIND_RECEIVER_RESP) {
+			chBindResp = new com.cloudhopper.smpp.pdu.BindReceiverResp();
+		} else if (bindResp.getCommandId() == SmppPacket.BIND_TRANSMITTER_RESP) {
+			chBindResp = new com.cloudhopper.smpp.pdu.BindTransmitterResp();
+		} else {
+			chBindResp = new com.cloudhopper.smpp.pdu.BindTransceiverResp();
+		}
+		
+		chBindResp.setSystemId( bindResp.getSystemId() );
+		
+		return chBindResp;
+		
+	}
+	
 	private static Pdu map(DeliverSm deliverSm) throws SmppInvalidArgumentException {
 		
 		com.cloudhopper.smpp.pdu.DeliverSm chDeliverSm = new com.cloudhopper.smpp.pdu.DeliverSm();
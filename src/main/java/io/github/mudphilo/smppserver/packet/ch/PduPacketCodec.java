@@ -0,0 +1,76 @@
+package io.github.mudphilo.smppserver.packet.ch;
+
+import com.cloudhopper.smpp.pdu.Pdu;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+import io.github.mudphilo.smppserver.Response;
+import io.github.mudphilo.smppserver.packet.GenericNack;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+/**
+ * <p>Compatibility mode of the codec. Placed after the cloudhopper <code>SmppSessionPduDecoder</code>, it maps the
+ * decoded cloudhopper PDUs to our {@link SmppPacket} classes and encodes the packets written by the session using the
+ * cloudhopper transcoder. Both directions go through the {@link PacketMapper}.</p>
+ *
+ * <p>Requests that can't be mapped are answered with a generic_nack (ESME_RINVCMDID).</p>
+ *
+ * @see io.github.mudphilo.smppserver.packet.codec.PacketDecoder
+ */
+public class PduPacketCodec extends SimpleChannelHandler {
+
+	private final PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+
+		if (!(e.getMessage() instanceof Pdu)) {
+			ctx.sendUpstream(e);
+			return;
+		}
+
+		Pdu pdu = (Pdu) e.getMessage();
+		SmppPacket packet = PacketMapper.map(pdu);
+
+		if (packet == null) {
+
+			if (pdu.isRequest()) {
+
+				GenericNack genericNack = new GenericNack();
+				genericNack.setSequenceNumber(pdu.getSequenceNumber());
+				genericNack.setCommandStatus(Response.INVALID_COMMAND_ID.getCommandStatus());
+
+				e.getChannel().write(genericNack);
+			}
+
+			return;
+		}
+
+		Channels.fireMessageReceived(ctx, packet);
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+
+		if (!(e.getMessage() instanceof SmppPacket)) {
+			ctx.sendDownstream(e);
+			return;
+		}
+
+		SmppPacket packet = (SmppPacket) e.getMessage();
+
+		Pdu pdu = PacketMapper.map(packet);
+		if (pdu == null) {
+			e.getFuture().setFailure(new IllegalArgumentException("Can't encode packet with command id " +
+					Integer.toHexString(packet.getCommandId())));
+			return;
+		}
+
+		Channels.write(ctx, e.getFuture(), transcoder.encode(pdu));
+	}
+
+}
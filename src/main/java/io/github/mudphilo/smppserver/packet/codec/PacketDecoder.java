@@ -0,0 +1,359 @@
+package io.github.mudphilo.smppserver.packet.codec;
+
+import io.github.mudphilo.smppserver.Response;
+import io.github.mudphilo.smppserver.packet.Address;
+import io.github.mudphilo.smppserver.packet.Bind;
+import io.github.mudphilo.smppserver.packet.DeliverSm;
+import io.github.mudphilo.smppserver.packet.DeliverSmResp;
+import io.github.mudphilo.smppserver.packet.EnquireLink;
+import io.github.mudphilo.smppserver.packet.EnquireLinkResp;
+import io.github.mudphilo.smppserver.packet.GenericNack;
+import io.github.mudphilo.smppserver.packet.LazySubmitSm;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+import io.github.mudphilo.smppserver.packet.Tlv;
+import io.github.mudphilo.smppserver.packet.Unbind;
+import io.github.mudphilo.smppserver.packet.UnbindResp;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+import java.nio.charset.Charset;
+
+/**
+ * <p>Decodes the SMPP packets received from the client straight from the Netty buffer into our {@link SmppPacket}
+ * classes, without going through the cloudhopper PDUs.</p>
+ *
+ * <p>Packets with an unknown or unsupported command id are answered with a generic_nack (ESME_RINVCMDID) and
+ * malformed packets with a generic_nack (ESME_RINVCMDLEN); neither reaches the session. If the command length is out
+ * of range the stream can't be framed anymore, so the connection is closed.</p>
+ */
+public class PacketDecoder extends FrameDecoder {
+
+	private static final Logger log = LogManager.getLogger(PacketDecoder.class.getSimpleName());
+
+	/**
+	 * The length of the header: command_length, command_id, command_status and sequence_number.
+	 */
+	public static final int HEADER_LENGTH = 16;
+
+	/**
+	 * The default maximum length of a packet.
+	 */
+	public static final int DEFAULT_MAX_PACKET_LENGTH = 65536;
+
+	/**
+	 * The charset of the C-Octet strings.
+	 */
+	static final Charset C_STRING_CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The maximum length of a packet, longer packets close the connection.
+	 */
+	private final int maxPacketLength;
+
+	public PacketDecoder() {
+		this(DEFAULT_MAX_PACKET_LENGTH);
+	}
+
+	public PacketDecoder(int maxPacketLength) {
+
+		if (maxPacketLength < HEADER_LENGTH) {
+			throw new IllegalArgumentException("maxPacketLength must be at least " + HEADER_LENGTH);
+		}
+
+		this.maxPacketLength = maxPacketLength;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+
+		// wait for the command_length
+		if (buffer.readableBytes() < 4) {
+			return null;
+		}
+
+		int start = buffer.readerIndex();
+		int commandLength = buffer.getInt(start);
+
+		if (commandLength < HEADER_LENGTH || commandLength > maxPacketLength) {
+
+			log.warn("invalid command length {} received from {}, closing the connection", commandLength,
+					channel.getRemoteAddress());
+
+			buffer.skipBytes(buffer.readableBytes());
+			channel.write(createGenericNack(0, Response.INVALID_COMMAND_LEN)).addListener(ChannelFutureListener.CLOSE);
+
+			return null;
+		}
+
+		// wait for the whole packet
+		if (buffer.readableBytes() < commandLength) {
+			return null;
+		}
+
+		int end = start + commandLength;
+		int commandId = buffer.getInt(start + 4);
+		int sequenceNumber = buffer.getInt(start + 12);
+
+		try {
+
+			SmppPacket packet = decodePacket(buffer, end);
+
+			if (packet == null) {
+
+				log.debug("unsupported command id {} received from {}", Integer.toHexString(commandId),
+						channel.getRemoteAddress());
+
+				// responses can't be answered with a generic_nack
+				if ((commandId & 0x80000000) == 0) {
+					channel.write(createGenericNack(sequenceNumber, Response.INVALID_COMMAND_ID));
+				}
+			}
+
+			return packet;
+
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+
+			log.warn("malformed packet received from {}: {}", channel.getRemoteAddress(), e.getMessage());
+			channel.write(createGenericNack(sequenceNumber, Response.INVALID_COMMAND_LEN));
+
+			return null;
+
+		} finally {
+
+			// skip whatever was not read, the next packet starts right after this one
+			buffer.readerIndex(end);
+		}
+	}
+
+	/**
+	 * Decodes the packet that starts at the reader index of the buffer and ends at <code>end</code>.
+	 *
+	 * @param buffer the buffer that holds the whole packet.
+	 * @param end the index right after the last byte of the packet.
+	 *
+	 * @return the decoded {@link SmppPacket} or null if the command id is not supported.
+	 * @throws IndexOutOfBoundsException if a field goes beyond the end of the packet.
+	 * @throws IllegalArgumentException if a field is malformed.
+	 */
+	public static SmppPacket decodePacket(ChannelBuffer buffer, int end) {
+
+		int start = buffer.readerIndex();
+
+		int commandId = buffer.getInt(start + 4);
+		int commandStatus = buffer.getInt(start + 8);
+		int sequenceNumber = buffer.getInt(start + 12);
+
+		if (commandId == SmppPacket.SUBMIT_SM) {
+			return decodeSubmitSm(buffer, end);
+		}
+
+		buffer.readerIndex(start + HEADER_LENGTH);
+
+		SmppPacket packet;
+
+		switch (commandId) {
+
+			case SmppPacket.BIND_RECEIVER:
+			case SmppPacket.BIND_TRANSMITTER:
+			case SmppPacket.BIND_TRANSCEIVER:
+				packet = decodeBind(commandId, buffer, end);
+				break;
+
+			case SmppPacket.DELIVER_SM:
+				packet = decodeDeliverSm(buffer, end);
+				break;
+
+			case SmppPacket.DELIVER_SM_RESP:
+				packet = new DeliverSmResp();
+				// the message_id of a deliver_sm_resp is unused
+				if (buffer.readerIndex() < end) {
+					readCString(buffer, end);
+				}
+				break;
+
+			case SmppPacket.ENQUIRE_LINK:
+				packet = new EnquireLink();
+				break;
+
+			case SmppPacket.ENQUIRE_LINK_RESP:
+				packet = new EnquireLinkResp();
+				break;
+
+			case SmppPacket.UNBIND:
+				packet = new Unbind();
+				break;
+
+			case SmppPacket.UNBIND_RESP:
+				packet = new UnbindResp();
+				break;
+
+			case SmppPacket.GENERIC_NACK:
+				packet = new GenericNack();
+				break;
+
+			default:
+				return null;
+		}
+
+		packet.setCommandStatus(commandStatus);
+		packet.setSequenceNumber(sequenceNumber);
+
+		// the optional parameters go until the end of the packet
+		while (buffer.readerIndex() < end) {
+			packet.addOptionalParameter( readTlv(buffer, end) );
+		}
+
+		return packet;
+	}
+
+	private static Bind decodeBind(int commandId, ChannelBuffer buffer, int end) {
+
+		Bind bind = new Bind(commandId);
+		bind.setSystemId( readCString(buffer, end) );
+		bind.setPassword( readCString(buffer, end) );
+		bind.setSystemType( readCString(buffer, end) );
+
+		// interface_version
+		readByte(buffer, end);
+
+		bind.setAddressRange( readAddress(buffer, end) );
+
+		return bind;
+	}
+
+	/**
+	 * Helper method. The submit_sm is the packet we receive the most, so we only copy its bytes here and let the
+	 * {@link LazySubmitSm} parse each field the first time it's accessed.
+	 */
+	private static SubmitSm decodeSubmitSm(ChannelBuffer buffer, int end) {
+
+		int start = buffer.readerIndex();
+
+		byte[] pdu = new byte[end - start];
+		buffer.getBytes(start, pdu);
+		buffer.readerIndex(end);
+
+		return new LazySubmitSm(pdu);
+	}
+
+	private static DeliverSm decodeDeliverSm(ChannelBuffer buffer, int end) {
+
+		DeliverSm deliverSm = new DeliverSm();
+		deliverSm.setServiceType( readCString(buffer, end) );
+		deliverSm.setSourceAddress( readAddress(buffer, end) );
+		deliverSm.setDestAddress( readAddress(buffer, end) );
+		deliverSm.setEsmClass( readByte(buffer, end) );
+		deliverSm.setProtocolId( readByte(buffer, end) );
+		deliverSm.setPriority( readByte(buffer, end) );
+		deliverSm.setScheduleDeliveryTime( readCString(buffer, end) );
+		deliverSm.setValidityPeriod( readCString(buffer, end) );
+		deliverSm.setRegisteredDelivery( readByte(buffer, end) );
+		deliverSm.setReplaceIfPresent( readByte(buffer, end) );
+		deliverSm.setDataCoding( readByte(buffer, end) );
+
+		// sm_default_msg_id
+		readByte(buffer, end);
+
+		deliverSm.setShortMessage( readShortMessage(buffer, end) );
+
+		return deliverSm;
+	}
+
+	/**
+	 * Helper method. Reads a byte checking that it doesn't go beyond the end of the packet.
+	 */
+	static byte readByte(ChannelBuffer buffer, int end) {
+
+		checkAvailable(buffer, end, 1);
+		return buffer.readByte();
+	}
+
+	/**
+	 * Helper method. Reads a null terminated string (C-Octet string).
+	 *
+	 * @return the read string or null if it was empty.
+	 */
+	static String readCString(ChannelBuffer buffer, int end) {
+
+		int index = buffer.readerIndex();
+
+		int length = buffer.bytesBefore(index, end - index, (byte) 0);
+		if (length < 0) {
+			throw new IllegalArgumentException("C-Octet string without null terminator at index " + index);
+		}
+
+		String value = length == 0 ? null : buffer.toString(index, length, C_STRING_CHARSET);
+		buffer.readerIndex(index + length + 1);
+
+		return value;
+	}
+
+	/**
+	 * Helper method. Reads the ton, npi and address fields.
+	 */
+	static Address readAddress(ChannelBuffer buffer, int end) {
+
+		byte ton = readByte(buffer, end);
+		byte npi = readByte(buffer, end);
+
+		return new Address()
+			.withTon(ton)
+			.withNpi(npi)
+			.withAddress( readCString(buffer, end) );
+	}
+
+	/**
+	 * Helper method. Reads the sm_length and short_message fields.
+	 */
+	static byte[] readShortMessage(ChannelBuffer buffer, int end) {
+
+		int length = readByte(buffer, end) & 0xFF;
+		checkAvailable(buffer, end, length);
+
+		byte[] shortMessage = new byte[length];
+		buffer.readBytes(shortMessage);
+
+		return shortMessage;
+	}
+
+	/**
+	 * Helper method. Reads an optional parameter.
+	 */
+	static Tlv readTlv(ChannelBuffer buffer, int end) {
+
+		checkAvailable(buffer, end, 4);
+
+		short tag = buffer.readShort();
+		int length = buffer.readUnsignedShort();
+		checkAvailable(buffer, end, length);
+
+		byte[] value = new byte[length];
+		buffer.readBytes(value);
+
+		return new Tlv(tag, value, null);
+	}
+
+	private static void checkAvailable(ChannelBuffer buffer, int end, int length) {
+
+		if (buffer.readerIndex() + length > end) {
+			throw new IndexOutOfBoundsException("Field of " + length + " bytes at index " + buffer.readerIndex() +
+					" goes beyond the end of the packet");
+		}
+	}
+
+	private static GenericNack createGenericNack(int sequenceNumber, Response response) {
+
+		GenericNack genericNack = new GenericNack();
+		genericNack.setSequenceNumber(sequenceNumber);
+		genericNack.setCommandStatus(response.getCommandStatus());
+
+		return genericNack;
+	}
+
+}
@@ -0,0 +1,213 @@
+package io.github.mudphilo.smppserver.packet.codec;
+
+import io.github.mudphilo.smppserver.MessageIdGenerator;
+import io.github.mudphilo.smppserver.packet.Address;
+import io.github.mudphilo.smppserver.packet.BindResp;
+import io.github.mudphilo.smppserver.packet.DeliverSm;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+import io.github.mudphilo.smppserver.packet.SubmitSmResp;
+import io.github.mudphilo.smppserver.packet.Tlv;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * Encodes our {@link SmppPacket} classes straight into a Netty buffer, without going through the cloudhopper PDUs.
+ * Messages that are not packets (e.g. buffers that were already encoded) are written as they are.
+ */
+public class PacketEncoder extends OneToOneEncoder {
+
+	/**
+	 * The initial capacity of the buffer of packets with a body. Enough for most deliver_sm without growing.
+	 */
+	private static final int INITIAL_BODY_CAPACITY = 256;
+
+	@Override
+	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+
+		if (!(msg instanceof SmppPacket)) {
+			return msg;
+		}
+
+		return encodePacket((SmppPacket) msg);
+	}
+
+	/**
+	 * Encodes a packet.
+	 *
+	 * @param packet the packet to encode.
+	 *
+	 * @return a buffer with the encoded packet.
+	 * @throws IllegalArgumentException if the packet can't be sent by the server.
+	 */
+	public static ChannelBuffer encodePacket(SmppPacket packet) {
+
+		boolean headerOnly = packet.getOptionalParameters().isEmpty() && !hasBody(packet.getCommandId());
+
+		ChannelBuffer buffer = headerOnly ? ChannelBuffers.buffer(PacketDecoder.HEADER_LENGTH) :
+			ChannelBuffers.dynamicBuffer(INITIAL_BODY_CAPACITY);
+
+		// the command_length is set once we know it
+		buffer.writeInt(0);
+		buffer.writeInt(packet.getCommandId());
+		buffer.writeInt(packet.getCommandStatus());
+		buffer.writeInt(packet.getSequenceNumber());
+
+		switch (packet.getCommandId()) {
+
+			case SmppPacket.SUBMIT_SM_RESP:
+				writeMessageId(buffer, (SubmitSmResp) packet);
+				break;
+
+			case SmppPacket.BIND_RECEIVER_RESP:
+			case SmppPacket.BIND_TRANSMITTER_RESP:
+			case SmppPacket.BIND_TRANSCEIVER_RESP:
+				writeCString(buffer, ((BindResp) packet).getSystemId());
+				break;
+
+			case SmppPacket.DELIVER_SM:
+				writeDeliverSm(buffer, (DeliverSm) packet);
+				break;
+
+			case SmppPacket.DELIVER_SM_RESP:
+				// empty message_id
+				buffer.writeByte(0);
+				break;
+
+			case SmppPacket.ENQUIRE_LINK:
+			case SmppPacket.ENQUIRE_LINK_RESP:
+			case SmppPacket.UNBIND:
+			case SmppPacket.UNBIND_RESP:
+			case SmppPacket.GENERIC_NACK:
+				break;
+
+			default:
+				throw new IllegalArgumentException("Can't encode packet with command id " +
+						Integer.toHexString(packet.getCommandId()));
+		}
+
+		for (Tlv tlv : packet.getOptionalParameters()) {
+			writeTlv(buffer, tlv);
+		}
+
+		buffer.setInt(0, buffer.writerIndex());
+
+		return buffer;
+	}
+
+	private static boolean hasBody(int commandId) {
+		return commandId != SmppPacket.ENQUIRE_LINK && commandId != SmppPacket.ENQUIRE_LINK_RESP
+				&& commandId != SmppPacket.UNBIND && commandId != SmppPacket.UNBIND_RESP
+				&& commandId != SmppPacket.GENERIC_NACK;
+	}
+
+	private static void writeDeliverSm(ChannelBuffer buffer, DeliverSm deliverSm) {
+
+		writeCString(buffer, deliverSm.getServiceType());
+		writeAddress(buffer, deliverSm.getSourceAddress());
+		writeAddress(buffer, deliverSm.getDestAddress());
+		buffer.writeByte(deliverSm.getEsmClass());
+		buffer.writeByte(deliverSm.getProtocolId());
+		buffer.writeByte(deliverSm.getPriority());
+		writeCString(buffer, deliverSm.getScheduleDeliveryTime());
+		writeCString(buffer, deliverSm.getValidityPeriod());
+		buffer.writeByte(deliverSm.getRegisteredDelivery());
+		buffer.writeByte(deliverSm.getReplaceIfPresent());
+		buffer.writeByte(deliverSm.getDataCoding());
+
+		// sm_default_msg_id
+		buffer.writeByte(0);
+
+		byte[] shortMessage = deliverSm.getShortMessage();
+		if (shortMessage == null) {
+			buffer.writeByte(0);
+		} else {
+
+			if (shortMessage.length > 255) {
+				throw new IllegalArgumentException("The short message can't be longer than 255 bytes, use the " +
+						"message_payload optional parameter instead");
+			}
+
+			buffer.writeByte(shortMessage.length);
+			buffer.writeBytes(shortMessage);
+		}
+	}
+
+	/**
+	 * Helper method. Writes the message_id of a submit_sm_resp. A generated id is written straight into the array of
+	 * the buffer, so no String is created for it.
+	 */
+	private static void writeMessageId(ChannelBuffer buffer, SubmitSmResp submitSmResp) {
+
+		MessageIdGenerator messageIdGenerator = submitSmResp.getMessageIdGenerator();
+		if (messageIdGenerator == null) {
+			writeCString(buffer, submitSmResp.getMessageId());
+			return;
+		}
+
+		buffer.ensureWritableBytes(MessageIdGenerator.ID_LENGTH + 1);
+
+		if (buffer.hasArray()) {
+
+			int writerIndex = buffer.writerIndex();
+			messageIdGenerator.nextId(buffer.array(), buffer.arrayOffset() + writerIndex);
+			buffer.writerIndex(writerIndex + MessageIdGenerator.ID_LENGTH);
+
+		} else {
+
+			byte[] messageId = new byte[MessageIdGenerator.ID_LENGTH];
+			messageIdGenerator.nextId(messageId, 0);
+			buffer.writeBytes(messageId);
+		}
+
+		buffer.writeByte(0);
+	}
+
+	/**
+	 * Helper method. Writes a null terminated string (C-Octet string), just the terminator if the value is null.
+	 */
+	static void writeCString(ChannelBuffer buffer, String value) {
+
+		if (value != null) {
+			buffer.writeBytes(value.getBytes(PacketDecoder.C_STRING_CHARSET));
+		}
+
+		buffer.writeByte(0);
+	}
+
+	/**
+	 * Helper method. Writes the ton, npi and address fields, all empty if the address is null.
+	 */
+	static void writeAddress(ChannelBuffer buffer, Address address) {
+
+		if (address == null) {
+			buffer.writeByte(0);
+			buffer.writeByte(0);
+			buffer.writeByte(0);
+			return;
+		}
+
+		buffer.writeByte(address.getTon());
+		buffer.writeByte(address.getNpi());
+		writeCString(buffer, address.getAddressField());
+	}
+
+	/**
+	 * Helper method. Writes an optional parameter.
+	 */
+	static void writeTlv(ChannelBuffer buffer, Tlv tlv) {
+
+		byte[] value = tlv.getValue();
+		int length = value != null ? value.length : 0;
+
+		buffer.writeShort(tlv.getTag());
+		buffer.writeShort(length);
+
+		if (length > 0) {
+			buffer.writeBytes(value);
+		}
+	}
+
+}
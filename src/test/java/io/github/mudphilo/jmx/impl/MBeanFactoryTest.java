@@ -0,0 +1,111 @@
+package io.github.mudphilo.jmx.impl;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import io.github.mudphilo.jmx.annotation.ManagedAttribute;
+import io.github.mudphilo.jmx.annotation.ManagedOperation;
+
+public class MBeanFactoryTest {
+
+	@Test
+	public void shouldShareMetadataOfClass() throws Exception {
+
+		DynamicMBean first = MBeanFactory.createMBean(new Counter());
+		DynamicMBean second = MBeanFactory.createMBean(new Counter());
+
+		Assert.assertSame(first.getMBeanInfo(), second.getMBeanInfo());
+		Assert.assertEquals(first.getMBeanInfo().getAttributes().length, 3);
+		Assert.assertEquals(first.getMBeanInfo().getOperations().length, 2);
+
+	}
+
+	@Test
+	public void shouldAccessAttributesAndOperations() throws Exception {
+
+		Counter counter = new Counter();
+		DynamicMBean mBean = MBeanFactory.createMBean(counter);
+
+		Assert.assertEquals(mBean.getAttribute("count"), 0L);
+		Assert.assertEquals(mBean.getAttribute("active"), false);
+
+		mBean.setAttribute(new Attribute("name", "test"));
+		Assert.assertEquals(mBean.getAttribute("name"), "test");
+
+		Assert.assertEquals(mBean.invoke("add", new Object[] { 5 }, new String[] { "int" }), 5L);
+		Assert.assertNull(mBean.invoke("reset", null, null));
+		Assert.assertEquals(counter.getCount(), 0L);
+
+		Assert.assertEquals(mBean.getAttributes(new String[] { "count", "name" }).size(), 2);
+
+	}
+
+	@Test(expectedExceptions = AttributeNotFoundException.class)
+	public void shouldFailWithUnknownAttribute() throws Exception {
+		MBeanFactory.createMBean(new Counter()).getAttribute("unknown");
+	}
+
+	@Test
+	public void shouldWrapExceptionOfGetter() throws Exception {
+
+		Counter counter = new Counter();
+		counter.setName(null);
+
+		try {
+			MBeanFactory.createMBean(counter).getAttribute("name");
+			Assert.fail("should have thrown MBeanException");
+		} catch (MBeanException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+	}
+
+	public static class Counter {
+
+		private long count;
+
+		private String name = "";
+
+		@ManagedAttribute
+		public long getCount() {
+			return count;
+		}
+
+		@ManagedAttribute
+		public boolean isActive() {
+			return count > 0;
+		}
+
+		@ManagedAttribute
+		public String getName() {
+
+			if (name == null) {
+				throw new IllegalStateException("no name");
+			}
+
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		@ManagedOperation
+		public long add(int value) {
+			count += value;
+			return count;
+		}
+
+		@ManagedOperation
+		public void reset() {
+			count = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,169 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.ConcatenationReassembler.ConcatenatedMessage;
+import io.github.mudphilo.smppserver.packet.Address;
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+import io.github.mudphilo.smppserver.packet.Tlv;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ConcatenationReassemblerTest {
+
+	@Test
+	public void shouldReassembleUdhParts() throws Exception {
+
+		ConcatenationReassembler reassembler = new ConcatenationReassembler();
+
+		Assert.assertNull(reassembler.add("test", udhPart(7, 2, 2, "world")));
+		Assert.assertEquals(reassembler.getPendingMessages(), 1);
+
+		// same reference from another systemId is a different message
+		Assert.assertNull(reassembler.add("other", udhPart(7, 2, 1, "hello ")));
+
+		ConcatenatedMessage message = reassembler.add("test", udhPart(7, 2, 1, "hello "));
+		Assert.assertNotNull(message);
+		Assert.assertEquals(message.getParts().size(), 2);
+		Assert.assertEquals(message.getText(), "hello world");
+		Assert.assertEquals(reassembler.getPendingMessages(), 1);
+		Assert.assertEquals(reassembler.getCompletedMessages(), 1);
+
+	}
+
+	@Test
+	public void shouldReassembleSarParts() throws Exception {
+
+		ConcatenationReassembler reassembler = new ConcatenationReassembler();
+
+		Assert.assertNull(reassembler.add("test", sarPart(300, 2, 2, "world")));
+
+		ConcatenatedMessage message = reassembler.add("test", sarPart(300, 2, 1, "hello "));
+		Assert.assertNotNull(message);
+		Assert.assertEquals(message.getText(), "hello world");
+
+		// a message that is not concatenated is returned right away
+		SubmitSm single = part();
+		single.setShortMessage("single".getBytes("ISO-8859-1"));
+		Assert.assertEquals(reassembler.add("test", single).getText(), "single");
+
+	}
+
+	@Test
+	public void shouldDiscardIncompleteMessages() throws Exception {
+
+		ConcatenationReassembler reassembler = new ConcatenationReassembler(1, 16 * 100);
+
+		for (int i=0; i < 1000; i++) {
+			reassembler.add("test", udhPart(i & 0xFF, 3, 1, "abandoned part " + i));
+		}
+
+		// each segment holds 100 bytes at most
+		Assert.assertTrue(reassembler.getPendingBytes() <= 16 * 100);
+		Assert.assertTrue(reassembler.getEvictedMessages() > 0);
+
+		Thread.sleep(5);
+		reassembler.expire();
+
+		Assert.assertEquals(reassembler.getPendingMessages(), 0);
+		Assert.assertEquals(reassembler.getPendingBytes(), 0);
+
+	}
+
+	@Test
+	public void shouldReassembleMessagePayloadParts() throws Exception {
+
+		ConcatenationReassembler reassembler = new ConcatenationReassembler();
+
+		Assert.assertNull(reassembler.add("test", payloadPart(300, 2, 2, "world")));
+
+		ConcatenatedMessage message = reassembler.add("test", payloadPart(300, 2, 1, "hello "));
+		Assert.assertNotNull(message);
+		Assert.assertEquals(message.getText(), "hello world");
+
+	}
+
+	@Test
+	public void shouldCountMessagePayloadAgainstTheLimit() throws Exception {
+
+		ConcatenationReassembler reassembler = new ConcatenationReassembler(60000, 16 * 100000);
+
+		// 64 KB of message_payload per abandoned part
+		StringBuilder text = new StringBuilder();
+		for (int i=0; i < 65000; i++) {
+			text.append('x');
+		}
+
+		for (int i=0; i < 1000; i++) {
+			reassembler.add("test", payloadPart(i, 255, 1, text.toString()));
+		}
+
+		Assert.assertTrue(reassembler.getPendingBytes() <= 16 * 100000);
+		Assert.assertTrue(reassembler.getPendingMessages() <= 16 * 100000 / 65000);
+		Assert.assertTrue(reassembler.getEvictedMessages() > 0);
+
+	}
+
+	@Test
+	public void shouldLimitPendingMessages() throws Exception {
+
+		ConcatenationReassembler reassembler = new ConcatenationReassembler(60000, 16 * 1024 * 1024, 16 * 10);
+
+		for (int i=0; i < 1000; i++) {
+			reassembler.add("test", sarPart(i, 3, 1, "abandoned part " + i));
+		}
+
+		// each segment holds 10 messages at most
+		Assert.assertTrue(reassembler.getPendingMessages() <= 16 * 10);
+		Assert.assertEquals(reassembler.getEvictedMessages(), 1000 - reassembler.getPendingMessages());
+
+	}
+
+	private SubmitSm udhPart(int reference, int total, int seqnum, String text) throws Exception {
+
+		byte[] data = text.getBytes("ISO-8859-1");
+		byte[] shortMessage = new byte[6 + data.length];
+		shortMessage[0] = 5;
+		shortMessage[1] = 0x00;
+		shortMessage[2] = 3;
+		shortMessage[3] = (byte) reference;
+		shortMessage[4] = (byte) total;
+		shortMessage[5] = (byte) seqnum;
+		System.arraycopy(data, 0, shortMessage, 6, data.length);
+
+		SubmitSm submitSm = part();
+		submitSm.setEsmClass((byte) 0x40);
+		submitSm.setShortMessage(shortMessage);
+
+		return submitSm;
+	}
+
+	private SubmitSm sarPart(int reference, int total, int seqnum, String text) throws Exception {
+
+		SubmitSm submitSm = part();
+		submitSm.setShortMessage(text.getBytes("ISO-8859-1"));
+		submitSm.addOptionalParameter(new Tlv(Tlv.TAG_SAR_MSG_REF_NUM, new byte[] { (byte) (reference >> 8), (byte) reference }, null));
+		submitSm.addOptionalParameter(new Tlv(Tlv.TAG_SAR_TOTAL_SEGMENTS, new byte[] { (byte) total }, null));
+		submitSm.addOptionalParameter(new Tlv(Tlv.TAG_SAR_SEGMENT_SEQNUM, new byte[] { (byte) seqnum }, null));
+
+		return submitSm;
+	}
+
+	private SubmitSm payloadPart(int reference, int total, int seqnum, String text) throws Exception {
+
+		SubmitSm submitSm = sarPart(reference, total, seqnum, "");
+		submitSm.setShortMessage(new byte[0]);
+		submitSm.addOptionalParameter(new Tlv(Tlv.TAG_MESSAGE_PAYLOAD, text.getBytes("ISO-8859-1"), null));
+
+		return submitSm;
+	}
+
+	private SubmitSm part() {
+
+		SubmitSm submitSm = new SubmitSm();
+		submitSm.setSourceAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("1234"));
+		submitSm.setDestAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("5678"));
+
+		return submitSm;
+	}
+
+}
@@ -0,0 +1,82 @@
+package io.github.mudphilo.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void shouldCalculatePercentilesWithinPrecision() throws Exception {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		// 1 to 10000 micros
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		Assert.assertEquals(histogram.getCount(), 10000);
+		Assert.assertEquals(histogram.getMax(), 10000000L);
+
+		assertWithin(histogram.getPercentile(50), 5000000L);
+		assertWithin(histogram.getPercentile(99), 9900000L);
+		assertWithin(histogram.getPercentile(99.9), 9990000L);
+		Assert.assertEquals(histogram.getPercentile(100), 10000000L);
+
+	}
+
+	@Test
+	public void shouldRecordSmallAndLargeValues() throws Exception {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+
+		Assert.assertEquals(histogram.getCount(), 3);
+		Assert.assertEquals(histogram.getPercentile(1), 0L);
+		Assert.assertEquals(histogram.getPercentile(50), 7L);
+		Assert.assertEquals(histogram.getMax(), LatencyHistogram.MAX_VALUE);
+		Assert.assertEquals(histogram.getPercentile(100), LatencyHistogram.MAX_VALUE);
+
+	}
+
+	@Test
+	public void shouldCalculateSeveralPercentiles() throws Exception {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		long[] values = new long[3];
+		histogram.getPercentiles(new double[] { 50, 99, 100 }, values);
+		Assert.assertEquals(values[0], 0L);
+		Assert.assertEquals(values[2], 0L);
+
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		histogram.getPercentiles(new double[] { 50, 99, 100 }, values);
+		Assert.assertEquals(values[0], histogram.getPercentile(50));
+		Assert.assertEquals(values[1], histogram.getPercentile(99));
+		Assert.assertEquals(values[2], histogram.getPercentile(100));
+
+	}
+
+	@Test
+	public void shouldReset() throws Exception {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.reset();
+
+		Assert.assertEquals(histogram.getCount(), 0);
+		Assert.assertEquals(histogram.getMax(), 0L);
+		Assert.assertEquals(histogram.getPercentile(99), 0L);
+
+	}
+
+	private void assertWithin(long actual, long expected) {
+		Assert.assertTrue(Math.abs(actual - expected) <= expected / 32, actual + " is not close to " + expected);
+	}
+
+}
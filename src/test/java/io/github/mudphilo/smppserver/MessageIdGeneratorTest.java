@@ -0,0 +1,50 @@
+package io.github.mudphilo.smppserver;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MessageIdGeneratorTest {
+
+	@Test
+	public void shouldGenerateOrderedIdsWithNodeId() throws Exception {
+
+		MessageIdGenerator generator = new MessageIdGenerator(0xabcL);
+
+		String first = generator.nextId();
+		String second = generator.nextId();
+
+		Assert.assertEquals(first.length(), MessageIdGenerator.ID_LENGTH);
+		Assert.assertTrue(first.endsWith("000000000abc"));
+		Assert.assertTrue(first.compareTo(second) < 0);
+
+		byte[] buffer = new byte[MessageIdGenerator.ID_LENGTH + 2];
+		Assert.assertEquals(generator.nextId(buffer, 2), buffer.length);
+
+	}
+
+	@Test
+	public void shouldGenerateUniqueIdsFromSeveralThreads() throws Exception {
+
+		final MessageIdGenerator generator = new MessageIdGenerator();
+		final Set<String> ids = ConcurrentHashMap.newKeySet();
+		final CountDownLatch latch = new CountDownLatch(4);
+
+		for (int i=0; i < 4; i++) {
+			new Thread(() -> {
+				for (int j=0; j < 50000; j++) {
+					ids.add(generator.nextId());
+				}
+				latch.countDown();
+			}).start();
+		}
+
+		latch.await();
+		Assert.assertEquals(ids.size(), 200000);
+
+	}
+
+}
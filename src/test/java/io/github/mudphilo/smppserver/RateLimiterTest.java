@@ -0,0 +1,66 @@
+package io.github.mudphilo.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RateLimiterTest {
+
+	@Test
+	public void shouldNotLimitByDefault() throws Exception {
+		
+		RateLimiter rateLimiter = new RateLimiter();
+		for (int i=0; i < 1000; i++) {
+			Assert.assertTrue( rateLimiter.tryAcquire("test") );
+		}
+		
+		Assert.assertEquals( rateLimiter.getThrottledRequests(), 0 );
+	}
+	
+	@Test
+	public void shouldThrottleOverTheLimit() throws Exception {
+		
+		RateLimiter rateLimiter = new RateLimiter();
+		rateLimiter.setLimit("test", 10);
+		
+		int allowed = 0;
+		for (int i=0; i < 100; i++) {
+			if (rateLimiter.tryAcquire("test")) {
+				allowed++;
+			}
+		}
+		
+		// the burst is one second worth of packets
+		Assert.assertTrue( allowed >= 10 && allowed <= 11, "allowed " + allowed );
+		Assert.assertEquals( rateLimiter.getThrottledRequests(), 100 - allowed );
+		
+		// other systemIds are not affected
+		Assert.assertTrue( rateLimiter.tryAcquire("other") );
+	}
+	
+	@Test
+	public void shouldLimitSessionsWithoutSystemIdTogether() throws Exception {
+		
+		RateLimiter rateLimiter = new RateLimiter();
+		Assert.assertTrue( rateLimiter.tryAcquire(null) );
+		
+		rateLimiter.setLimit("", 1);
+		Assert.assertTrue( rateLimiter.tryAcquire(null) );
+		Assert.assertFalse( rateLimiter.tryAcquire(null) );
+		Assert.assertEquals( rateLimiter.getThrottledRequests(), 1 );
+	}
+	
+	@Test
+	public void shouldApplyDefaultLimitUntilRemoved() throws Exception {
+		
+		RateLimiter rateLimiter = new RateLimiter();
+		rateLimiter.setDefaultLimit(5);
+		rateLimiter.setLimit("test", 0);
+		
+		Assert.assertEquals( rateLimiter.getLimit("test"), 0 );
+		Assert.assertEquals( rateLimiter.getLimit("other"), 5 );
+		
+		rateLimiter.removeLimit("test");
+		Assert.assertEquals( rateLimiter.getLimit("test"), 5 );
+	}
+	
+}
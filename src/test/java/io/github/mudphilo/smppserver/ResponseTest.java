@@ -0,0 +1,21 @@
+package io.github.mudphilo.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ResponseTest {
+
+	@Test
+	public void shouldNotModifyResponseWhenAddingMessageId() throws Exception {
+
+		CommandResponse first = Response.OK.withMessageId("1");
+		CommandResponse second = Response.OK.withMessageId("2");
+
+		Assert.assertEquals(first.getMessageId(), "1");
+		Assert.assertEquals(second.getMessageId(), "2");
+		Assert.assertEquals(second.getCommandStatus(), Response.OK.getCommandStatus());
+		Assert.assertNull(Response.OK.getMessageId());
+
+	}
+
+}
@@ -6,12 +6,29 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.URL;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 
 import io.github.mudphilo.smppserver.*;
 import io.github.mudphilo.smppserver.packet.EnquireLink;
@@ -30,6 +47,7 @@ import com.cloudhopper.smpp.SmppConstants;
 import com.cloudhopper.smpp.SmppSessionConfiguration;
 import com.cloudhopper.smpp.SmppSessionHandler;
 import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
 import com.cloudhopper.smpp.pdu.BindTransceiver;
 import com.cloudhopper.smpp.pdu.BindTransceiverResp;
 import com.cloudhopper.smpp.pdu.PduRequest;
@@ -39,6 +57,7 @@ import com.cloudhopper.smpp.pdu.UnbindResp;
 import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
 import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
 import com.cloudhopper.smpp.transcoder.PduTranscoder;
+import com.cloudhopper.smpp.type.SmppChannelException;
 
 /**
  * 
@@ -483,6 +502,594 @@ public class SmppServerTest {
 		
 	}
 	
+	@Test
+	public void shouldProcessPacketsInProcessingThreads() throws Exception {
+
+		int PORT = 10013;
+
+		final StringBuffer threadName = new StringBuffer();
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+
+				if (packet.isSubmitSm()) {
+					threadName.append( Thread.currentThread().getName() );
+				}
+
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setProcessingThreads(2);
+		smppServer.start();
+
+		try {
+
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, PORT);
+			SubmitSmResp submitSmResp = client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+
+			Assert.assertNotNull( submitSmResp );
+			Assert.assertEquals( submitSmResp.getCommandStatus(), Response.OK.getCommandStatus() );
+			Assert.assertTrue( threadName.toString().startsWith("smpp-processor-") );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Test
+	public void shouldCompleteAsyncResponsesOutOfOrder() throws Exception {
+
+		int PORT = 10014;
+
+		final List<CompletableFuture<Response>> pending = new CopyOnWriteArrayList<CompletableFuture<Response>>();
+
+		SmppServer smppServer = new SmppServer(PORT, new AsyncPacketProcessor() {
+			@Override
+			public CompletionStage<Response> processPacket(int sessionID, SmppRequest packet) {
+
+				if (packet.isBind()) {
+					return CompletableFuture.completedFuture(Response.OK);
+				}
+
+				CompletableFuture<Response> future = new CompletableFuture<Response>();
+				pending.add(future);
+
+				return future;
+			}
+		});
+		smppServer.start();
+
+		try {
+
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, PORT);
+
+			WindowFuture<Integer,PduRequest,PduResponse> first = client.sendRequestPdu(
+					new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT, false);
+			WindowFuture<Integer,PduRequest,PduResponse> second = client.sendRequestPdu(
+					new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT, false);
+
+			long startTime = new Date().getTime();
+			while (pending.size() < 2 && (new Date().getTime() - startTime) < DEFAULT_TIMEOUT) {
+				Thread.sleep(50);
+			}
+
+			// complete the second request before the first one
+			pending.get(1).complete(Response.INVALID_DEST_ADDRESS);
+			pending.get(0).complete(Response.OK);
+
+			Assert.assertTrue( second.await(DEFAULT_TIMEOUT) );
+			Assert.assertTrue( first.await(DEFAULT_TIMEOUT) );
+
+			Assert.assertEquals( second.getResponse().getCommandStatus(), Response.INVALID_DEST_ADDRESS.getCommandStatus() );
+			Assert.assertEquals( first.getResponse().getCommandStatus(), Response.OK.getCommandStatus() );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldProcessSubmitSmInBatches() throws Exception {
+
+		int PORT = 10015;
+
+		final AtomicInteger batchedPackets = new AtomicInteger();
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setBatchPacketProcessor(new BatchPacketProcessor() {
+			@Override
+			public List<Response> processBatch(List<BatchPacketProcessor.Entry> batch) throws SQLException {
+
+				batchedPackets.addAndGet(batch.size());
+
+				List<Response> responses = new ArrayList<Response>();
+				for (int i=0; i < batch.size(); i++) {
+					responses.add(Response.INVALID_DEST_ADDRESS);
+				}
+
+				return responses;
+			}
+		}, 100, 1000);
+		smppServer.start();
+
+		try {
+
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, PORT);
+			SubmitSmResp submitSmResp = client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+
+			Assert.assertNotNull( submitSmResp );
+			Assert.assertEquals( submitSmResp.getCommandStatus(), Response.INVALID_DEST_ADDRESS.getCommandStatus() );
+			Assert.assertEquals( batchedPackets.get(), 1 );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldIndexReceiverSessionsBySystemId() throws Exception {
+
+		int PORT = 10016;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.start();
+
+		try {
+
+			DefaultSmppClient clientBootstrap = new DefaultSmppClient(Executors.newCachedThreadPool(), 1, null);
+
+			SmppSessionConfiguration config = new SmppSessionConfiguration();
+			config.setHost("localhost");
+			config.setPort(PORT);
+			config.setSystemId("test");
+
+			config.setType(SmppBindType.RECEIVER);
+			com.cloudhopper.smpp.SmppSession receiver = clientBootstrap.bind(config, null);
+
+			config.setType(SmppBindType.TRANSMITTER);
+			clientBootstrap.bind(config, null);
+
+			assertSessionsCreated(smppServer, 2, DEFAULT_TIMEOUT);
+
+			Collection<SmppSession> receivers = smppServer.getReceiverSessions("test");
+			Assert.assertEquals( receivers.size(), 1 );
+			Assert.assertEquals( receivers.iterator().next().getBindType(), SmppSession.BindType.RECEIVER );
+			Assert.assertTrue( smppServer.getReceiverSessions("other").isEmpty() );
+
+			receiver.unbind(DEFAULT_TIMEOUT);
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+
+			Assert.assertTrue( smppServer.getReceiverSessions("test").isEmpty() );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldSendDeliverSmToSystemId() throws Exception {
+
+		int PORT = 10017;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.start();
+
+		int sequenceNumber = 567;
+
+		try {
+
+			com.cloudhopper.smpp.pdu.DeliverSmResp deliverSmResp = new com.cloudhopper.smpp.pdu.DeliverSmResp();
+			deliverSmResp.setSequenceNumber(sequenceNumber);
+			deliverSmResp.setCommandStatus( SmppConstants.STATUS_OK );
+
+			SmppSessionHandler sessionHandler = mock(SmppSessionHandler.class);
+			when(sessionHandler.firePduRequestReceived(any(PduRequest.class))).thenReturn(deliverSmResp);
+
+			DefaultSmppClient clientBootstrap = new DefaultSmppClient(Executors.newCachedThreadPool(), 1, null);
+
+			SmppSessionConfiguration config = new SmppSessionConfiguration();
+			config.setHost("localhost");
+			config.setPort(PORT);
+			config.setSystemId("test");
+			config.setType(SmppBindType.TRANSCEIVER);
+			clientBootstrap.bind(config, sessionHandler);
+
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+
+			DeliverSm deliverSm = new DeliverSm();
+			deliverSm.setSequenceNumber(sequenceNumber);
+			SmppResponse response = smppServer.sendDeliverSm("test", deliverSm).get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+
+			Assert.assertNotNull(response);
+			Assert.assertEquals( response.getCommandStatus(), Response.OK.getCommandStatus() );
+
+			// there are no sessions for this systemId
+			Assert.assertTrue( smppServer.sendDeliverSm("other", new DeliverSm()).isCompletedExceptionally() );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldProcessPacketsWithCloudhopperCodec() throws Exception {
+
+		int PORT = 10018;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK.withMessageId("12345"));
+			}
+		});
+		smppServer.setCodec(SmppServer.Codec.CLOUDHOPPER);
+		smppServer.start();
+
+		try {
+
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, PORT);
+			SubmitSmResp submitSmResp = client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+
+			Assert.assertNotNull( submitSmResp );
+			Assert.assertEquals( submitSmResp.getCommandStatus(), Response.OK.getCommandStatus() );
+			Assert.assertEquals( submitSmResp.getMessageId(), "12345" );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldCloseConnectionNotBoundInTime() throws Exception {
+
+		int PORT = 10019;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setKeepalive(0, 3, 300);
+		smppServer.start();
+
+		try {
+
+			Socket socket = new Socket("localhost", PORT);
+			socket.setSoTimeout((int) DEFAULT_TIMEOUT);
+
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+
+			// the server closes the connection, so the read reaches the end of the stream
+			Assert.assertEquals( socket.getInputStream().read(), -1 );
+			socket.close();
+
+			assertSessionsCreated(smppServer, 0, DEFAULT_TIMEOUT);
+			Assert.assertEquals( smppServer.getBindTimeouts(), 1 );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+
+	@Test
+	public void shouldSendEnquireLinkToIdleClient() throws Exception {
+
+		int PORT = 10020;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setKeepalive(300, 3, 0);
+		smppServer.start();
+
+		try {
+
+			final AtomicInteger enquireLinks = new AtomicInteger();
+
+			// answers the requests of the server with the default response
+			SmppSessionHandler sessionHandler = new DefaultSmppSessionHandler() {
+				@Override
+				public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+					if (pduRequest.getCommandId() == SmppConstants.CMD_ID_ENQUIRE_LINK) {
+						enquireLinks.incrementAndGet();
+					}
+					return super.firePduRequestReceived(pduRequest);
+				}
+			};
+
+			bind(SmppBindType.TRANSCEIVER, sessionHandler, PORT);
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+
+			long startTime = new Date().getTime();
+			while (enquireLinks.get() < 4 && (new Date().getTime() - startTime) < DEFAULT_TIMEOUT) {
+				Thread.sleep(200);
+			}
+
+			// more enquire_link packets than the maximum unanswered, so the answers are counted
+			Assert.assertTrue( enquireLinks.get() >= 4 );
+
+			// the client answers, so the session is kept
+			Assert.assertEquals( smppServer.getSessions().size(), 1 );
+			Assert.assertEquals( smppServer.getClosedIdleSessions(), 0 );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldAnswerRequestsNotAnsweredInTime() throws Exception {
+
+		int PORT = 10021;
+
+		// only the bind is answered
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				if (packet.isBind()) {
+					responseSender.send(Response.OK);
+				}
+			}
+		});
+		smppServer.setResponseTimeout(300, Response.MESSAGE_QUEUE_FULL);
+		smppServer.start();
+
+		try {
+
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, PORT);
+			SubmitSmResp submitSmResp = client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+
+			Assert.assertNotNull( submitSmResp );
+			Assert.assertEquals( submitSmResp.getCommandStatus(), Response.MESSAGE_QUEUE_FULL.getCommandStatus() );
+			Assert.assertEquals( smppServer.getTimedOutResponses(), 1 );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldExposeSessionsThroughSessionTable() throws Exception {
+
+		int PORT = 10022;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setSessionTable(true);
+		smppServer.start();
+
+		try {
+
+			bind(SmppBindType.TRANSCEIVER, PORT);
+			bind(SmppBindType.RECEIVER, PORT);
+			assertSessionsCreated(smppServer, 2, DEFAULT_TIMEOUT);
+
+			SessionTable sessionTable = smppServer.getSessionTable();
+			Assert.assertNotNull( sessionTable );
+			Assert.assertEquals( sessionTable.getSessionCount(), 2 );
+			Assert.assertEquals( sessionTable.countSessions("", "BOUND"), 2 );
+			Assert.assertEquals( sessionTable.countSessions("other", ""), 0 );
+
+			// two pages of one session, ordered by id
+			TabularData firstPage = sessionTable.getSessions(0, 1);
+			TabularData secondPage = sessionTable.getSessions(1, 1);
+			Assert.assertEquals( firstPage.size(), 1 );
+			Assert.assertEquals( secondPage.size(), 1 );
+			Assert.assertTrue( sessionTable.getSessions(2, 1).isEmpty() );
+
+			CompositeData first = (CompositeData) firstPage.values().iterator().next();
+			Assert.assertEquals( first.get("status"), "BOUND" );
+			Assert.assertEquals( sessionTable.getSession((String) first.get("id")), first );
+
+			// the sessions are not registered one by one
+			for (SmppSession session : smppServer.getSessions()) {
+				Assert.assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered(
+						new ObjectName("io.github.mudphilo.smppserver:type=Sessions,id=" + session.getId())) );
+			}
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldExposeMetrics() throws Exception {
+
+		int PORT = 10023;
+		int METRICS_PORT = 10024;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setMetricsPort(METRICS_PORT);
+		smppServer.start();
+
+		try {
+
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, PORT);
+			client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + METRICS_PORT
+					+ "/metrics").openConnection();
+			Assert.assertEquals( connection.getResponseCode(), 200 );
+			Assert.assertTrue( connection.getContentType().startsWith("application/openmetrics-text") );
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = connection.getInputStream()) {
+				byte[] bytes = new byte[4096];
+				for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+					body.write(bytes, 0, read);
+				}
+			}
+			String metrics = body.toString("UTF-8");
+
+			Assert.assertTrue( metrics.contains("\nsmpp_sessions 1\n"), metrics );
+			Assert.assertTrue( metrics.contains("\nsmpp_pdus_received_total{command=\"submit_sm\"} 1\n"), metrics );
+			Assert.assertTrue( metrics.contains("\nsmpp_responses_sent_total{status=\"OK\"} "), metrics );
+			Assert.assertTrue( metrics.contains("\nsmpp_request_latency_seconds{command=\"submit_sm\",quantile=\"0.99\"} "),
+					metrics );
+			Assert.assertTrue( metrics.contains("\nsmpp_request_latency_seconds_count{command=\"submit_sm\"} 1\n"),
+					metrics );
+			Assert.assertTrue( metrics.endsWith("# EOF\n") );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldAnswerSubmitSmFromEmptySystemId() throws Exception {
+
+		int PORT = 10025;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.start();
+
+		try {
+
+			DefaultSmppClient clientBootstrap = new DefaultSmppClient(Executors.newCachedThreadPool(), 1, null);
+
+			SmppSessionConfiguration config = new SmppSessionConfiguration();
+			config.setHost("localhost");
+			config.setPort(PORT);
+			config.setSystemId("");
+			config.setType(SmppBindType.TRANSCEIVER);
+
+			com.cloudhopper.smpp.SmppSession client = clientBootstrap.bind(config, null);
+			SubmitSmResp submitSmResp = client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+
+			Assert.assertNotNull( submitSmResp );
+			Assert.assertEquals( submitSmResp.getCommandStatus(), Response.OK.getCommandStatus() );
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldCloseSessionWhenUnbindIsNotAnswered() throws Exception {
+
+		int PORT = 10026;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.start();
+
+		try {
+
+			// never answers the unbind
+			SmppSessionHandler sessionHandler = new DefaultSmppSessionHandler() {
+				@Override
+				public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+					if (pduRequest.getCommandId() == SmppConstants.CMD_ID_UNBIND) {
+						return null;
+					}
+					return super.firePduRequestReceived(pduRequest);
+				}
+			};
+
+			bind(SmppBindType.TRANSCEIVER, sessionHandler, PORT);
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+
+			SmppSession session = smppServer.getSessions().iterator().next();
+			session.close();
+
+			Assert.assertEquals( session.getStatus(), SmppSession.Status.CLOSED );
+			assertSessionsCreated(smppServer, 0, DEFAULT_TIMEOUT);
+
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
+	@Test
+	public void shouldReleaseResourcesWhenPortIsInUse() throws Exception {
+
+		int PORT = 10027;
+
+		SmppServer smppServer = new SmppServer(PORT, new PacketProcessor() {
+			@Override
+			public void processPacket(int sessionID, SmppRequest packet, ResponseSender responseSender) throws SQLException {
+				responseSender.send(Response.OK);
+			}
+		});
+		smppServer.setProcessingThreads(2);
+
+		ServerSocket portInUse = new ServerSocket(PORT);
+		try {
+
+			smppServer.start();
+			Assert.fail("the port is in use, the server shouldn't start");
+
+		} catch (SmppChannelException e) {
+
+			Assert.assertEquals( smppServer.getStatus(), SmppServer.Status.STOPPED );
+			Assert.assertNull( smppServer.getTimer() );
+
+		} finally {
+			portInUse.close();
+		}
+
+		// the server can be started once the port is released
+		smppServer.start();
+		try {
+			Assert.assertEquals( smppServer.getStatus(), SmppServer.Status.STARTED );
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+
+	}
+	
 	private com.cloudhopper.smpp.SmppSession bind(SmppBindType bindType, int PORT) throws Exception {
 		return bind(bindType, null, PORT);
 	}
@@ -2,6 +2,8 @@ package io.github.mudphilo.smppserver;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -10,15 +12,21 @@ import io.github.mudphilo.smppserver.Response;
 import io.github.mudphilo.smppserver.ResponseSender;
 import io.github.mudphilo.smppserver.SmppSession;
 import io.github.mudphilo.smppserver.packet.Bind;
+import io.github.mudphilo.smppserver.packet.DeliverSm;
+import io.github.mudphilo.smppserver.packet.DeliverSmResp;
+import io.github.mudphilo.smppserver.packet.EnquireLink;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
 import io.github.mudphilo.smppserver.packet.SmppRequest;
+import io.github.mudphilo.smppserver.packet.SmppResponse;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.MessageEvent;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
-import com.cloudhopper.smpp.pdu.BindTransceiver;
-
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class SmppSessionTest {
 	
@@ -41,7 +49,7 @@ public class SmppSessionTest {
 		SmppSession session = new SmppSession(495, mock(Channel.class), packetProcessor);
 		
 		MessageEvent event = mock(MessageEvent.class);
-		when(event.getMessage()).thenReturn(new BindTransceiver());
+		when(event.getMessage()).thenReturn(new Bind(SmppPacket.BIND_TRANSCEIVER));
 		
 		session.messageReceived(null, event);
 		
@@ -49,6 +57,82 @@ public class SmppSessionTest {
 		
 	}
 	
+	@Test
+	public void shouldSuspendReadsWhenMaxInflightRequestsIsReached() throws Exception {
+
+		Channel channel = mock(Channel.class);
+		when(channel.isReadable()).thenReturn(true);
+		
+		// the packet processor never responds
+		SmppSession session = new SmppSession(812, channel, mock(PacketProcessor.class));
+		session.setMaxInflightRequests(1);
+		
+		MessageEvent event = mock(MessageEvent.class);
+		when(event.getMessage()).thenReturn(new Bind(SmppPacket.BIND_TRANSCEIVER));
+		
+		session.messageReceived(null, event);
+		
+		Assert.assertEquals(session.getInflightRequests(), 1);
+		verify(channel).setReadable(false);
+		
+	}
+	
+	@Test
+	public void shouldCompleteAsyncRequestWhenResponseArrives() throws Exception {
+
+		Channel channel = mock(Channel.class);
+		when(channel.write(any())).thenReturn(mock(ChannelFuture.class));
+		
+		SmppSession session = new SmppSession(133, channel, new DefaultPacketProcessor());
+		session.setSendWindow(100, 0, 5000);
+		
+		MessageEvent bindEvent = mock(MessageEvent.class);
+		when(bindEvent.getMessage()).thenReturn(new Bind(SmppPacket.BIND_TRANSCEIVER));
+		session.messageReceived(null, bindEvent);
+		
+		Assert.assertTrue(session.isBound());
+		
+		CompletableFuture<SmppResponse> future = session.sendRequestAsync(new DeliverSm());
+		Assert.assertFalse(future.isDone());
+		Assert.assertEquals(session.getPendingRequests(), 1);
+		
+		DeliverSmResp deliverSmResp = new DeliverSmResp();
+		deliverSmResp.setSequenceNumber(1);
+		
+		MessageEvent responseEvent = mock(MessageEvent.class);
+		when(responseEvent.getMessage()).thenReturn(deliverSmResp);
+		session.messageReceived(null, responseEvent);
+		
+		Assert.assertTrue(future.isDone());
+		Assert.assertEquals(future.get().getSequenceNumber(), 1);
+		Assert.assertEquals(session.getPendingRequests(), 0);
+		
+	}
+	
+	@Test
+	public void shouldAnswerEnquireLinkWithoutCallingPacketProcessor() throws Exception {
+
+		Channel channel = mock(Channel.class);
+		when(channel.write(any())).thenReturn(mock(ChannelFuture.class));
+		
+		SmppSession session = new SmppSession(287, channel, new DefaultPacketProcessor());
+		
+		MessageEvent bindEvent = mock(MessageEvent.class);
+		when(bindEvent.getMessage()).thenReturn(new Bind(SmppPacket.BIND_TRANSCEIVER));
+		session.messageReceived(null, bindEvent);
+		
+		PacketProcessor packetProcessor = mock(PacketProcessor.class);
+		session.setPacketProcessor(packetProcessor);
+		
+		MessageEvent enquireLinkEvent = mock(MessageEvent.class);
+		when(enquireLinkEvent.getMessage()).thenReturn(new EnquireLink());
+		session.messageReceived(null, enquireLinkEvent);
+		
+		verify(packetProcessor, never()).processPacket(any(Integer.class), any(SmppRequest.class), any(ResponseSender.class));
+		verify(channel, times(2)).write(any());
+		
+	}
+	
 	private class DefaultPacketProcessor implements PacketProcessor {
 
 		/**
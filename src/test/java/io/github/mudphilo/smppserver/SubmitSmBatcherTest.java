@@ -0,0 +1,61 @@
+package io.github.mudphilo.smppserver;
+
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SubmitSmBatcherTest {
+
+	@Test
+	public void shouldRejectPacketsWhenNotRunning() throws Exception {
+
+		SubmitSmBatcher batcher = new SubmitSmBatcher(new BatchPacketProcessor() {
+			@Override
+			public List<? extends CommandResponse> processBatch(List<Entry> batch) {
+
+				List<Response> responses = new ArrayList<Response>();
+				for (int i=0; i < batch.size(); i++) {
+					responses.add(Response.OK);
+				}
+
+				return responses;
+			}
+		}, 10, 1000);
+
+		final List<CommandResponse> sent = new ArrayList<CommandResponse>();
+		ResponseSender responseSender = new ResponseSender() {
+			@Override
+			public void send(CommandResponse response) {
+				synchronized (sent) {
+					sent.add(response);
+				}
+			}
+		};
+
+		try {
+			batcher.submit(1, new SubmitSm(), responseSender);
+			Assert.fail("the batcher is not started");
+		} catch (RejectedExecutionException e) {}
+
+		batcher.start();
+		batcher.submit(1, new SubmitSm(), responseSender);
+		batcher.stop();
+
+		// the packets queued before stopping are answered
+		Assert.assertEquals(sent.size(), 1);
+
+		try {
+			batcher.submit(1, new SubmitSm(), responseSender);
+			Assert.fail("the batcher is stopped");
+		} catch (RejectedExecutionException e) {}
+
+		Assert.assertEquals(batcher.getQueueSize(), 0);
+
+	}
+
+}
@@ -0,0 +1,119 @@
+package io.github.mudphilo.smppserver;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TrafficCountersTest {
+
+	@Test
+	public void shouldCountInSessionAndServer() throws Exception {
+
+		TrafficCounters server = new TrafficCounters();
+		TrafficCounters session = new TrafficCounters(server);
+		TrafficCounters otherSession = new TrafficCounters(server);
+
+		session.pduReceived(SmppPacket.SUBMIT_SM);
+		session.pduReceived(SmppPacket.SUBMIT_SM);
+		session.pduSent(SmppPacket.SUBMIT_SM_RESP, Response.OK.getCommandStatus());
+		session.pduSent(SmppPacket.SUBMIT_SM_RESP, Response.THROTTLING_ERROR.getCommandStatus());
+		otherSession.pduReceived(SmppPacket.ENQUIRE_LINK);
+		otherSession.pduSent(SmppPacket.DELIVER_SM, 0);
+		session.bytesRead(100);
+		otherSession.bytesWritten(50);
+
+		Assert.assertEquals(session.getPdusIn(), 2);
+		Assert.assertEquals(session.getPdusIn(SmppPacket.SUBMIT_SM), 2);
+		Assert.assertEquals(session.getPdusOut(), 2);
+		Assert.assertEquals(session.getResponses(Response.THROTTLING_ERROR.getCommandStatus()), 1);
+		Assert.assertEquals(session.getBytesIn(), 100);
+
+		Assert.assertEquals(server.getPdusIn(), 3);
+		Assert.assertEquals(server.getPdusOut(), 3);
+		Assert.assertEquals(server.getPdusOut(SmppPacket.DELIVER_SM), 1);
+		Assert.assertEquals(server.getResponses(Response.OK.getCommandStatus()), 1);
+		Assert.assertEquals(server.getBytesIn(), 100);
+		Assert.assertEquals(server.getBytesOut(), 50);
+
+		// deliver_sm is a request, so its status is not counted as a response
+		Assert.assertEquals(server.getResponseCounts().size(), 2);
+
+	}
+
+	@Test
+	public void shouldCountEachCommandSeparately() throws Exception {
+
+		TrafficCounters counters = new TrafficCounters();
+
+		int[] commandIds = TrafficCounters.getCountedCommandIds();
+		for (int i = 0; i < commandIds.length; i++) {
+			for (int j = 0; j <= i; j++) {
+				counters.pduReceived(commandIds[i]);
+			}
+		}
+
+		for (int i = 0; i < commandIds.length; i++) {
+			Assert.assertEquals(counters.getPdusIn(commandIds[i]), i + 1);
+		}
+
+		// unknown command ids are only counted in the total, even if they share bits with a known one
+		long total = counters.getPdusIn();
+		counters.pduReceived(0);
+		counters.pduReceived(SmppPacket.SUBMIT_SM | 0x10000);
+		counters.pduReceived(SmppPacket.DATA_SM | 0x200);
+
+		Assert.assertEquals(counters.getPdusIn(), total + 3);
+		Assert.assertEquals(counters.getPdusIn(SmppPacket.SUBMIT_SM), 8);
+		Assert.assertEquals(counters.getPdusIn(SmppPacket.DATA_SM), 25);
+
+	}
+
+	@Test
+	public void shouldTabulatePduCounts() throws Exception {
+
+		TrafficCounters counters = new TrafficCounters();
+		counters.pduReceived(SmppPacket.SUBMIT_SM);
+		counters.pduSent(SmppPacket.SUBMIT_SM_RESP, 0);
+		counters.pduReceived(0x12345);
+
+		TabularData pduCounts = counters.getPduCounts();
+		Assert.assertEquals(pduCounts.size(), 3);
+
+		CompositeData submitSm = pduCounts.get(new Object[] { "submit_sm" });
+		Assert.assertEquals(submitSm.get("received"), 1L);
+		Assert.assertEquals(submitSm.get("sent"), 0L);
+		Assert.assertEquals(pduCounts.get(new Object[] { "other" }).get("received"), 1L);
+
+		CompositeData ok = counters.getResponseCounts().get(new Object[] { 0 });
+		Assert.assertEquals(ok.get("name"), "OK");
+
+	}
+
+	@Test
+	public void shouldAverageRates() throws Exception {
+
+		TrafficCounters counters = new TrafficCounters();
+
+		for (int i = 0; i < 100; i++) {
+			counters.pduReceived(SmppPacket.SUBMIT_SM);
+		}
+		counters.tick();
+
+		TrafficCounters.Rate rate = counters.getPdusInRate();
+		Assert.assertEquals(rate.getOneSecondRate(), 100.0, 0.001);
+		Assert.assertEquals(rate.getOneMinuteRate(), 100.0, 0.001);
+
+		// a second without PDUs
+		counters.tick();
+
+		Assert.assertTrue(rate.getOneSecondRate() < 50.0);
+		Assert.assertTrue(rate.getOneMinuteRate() > 95.0 && rate.getOneMinuteRate() < 100.0);
+		Assert.assertTrue(rate.getFiveMinutesRate() > rate.getOneMinuteRate());
+
+	}
+
+}
@@ -0,0 +1,40 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.time.ZoneOffset;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DeliveryReceiptBuilderTest {
+
+	@Test
+	public void shouldBuildDeliveryReceipt() throws Exception {
+
+		DeliveryReceiptBuilder builder = new DeliveryReceiptBuilder()
+			.sourceAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("5678"))
+			.destAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("1234"))
+			.messageId("abc123")
+			.count(1, 1)
+			// 2021-03-04T05:06:00Z and 2021-12-31T23:59:00Z
+			.dates(1614834360000L, 1640995140000L)
+			.state(MessageState.DELIVERED)
+			.text("this is a long text that is truncated".getBytes("ISO-8859-1"));
+
+		DeliverSm deliverSm = builder.build();
+
+		Assert.assertEquals(new String(deliverSm.getShortMessage(), "ISO-8859-1"), "id:abc123 sub:001 dlvrd:001 " +
+				"submit date:2103040506 done date:2112312359 stat:DELIVRD err:000 text:this is a long text ");
+		Assert.assertEquals(deliverSm.getEsmClass(), DeliveryReceiptBuilder.ESM_CLASS_DELIVERY_RECEIPT);
+		Assert.assertEquals(deliverSm.getReceiptedMessageId(), "abc123");
+		Assert.assertEquals(deliverSm.getOptionalParameter(Tlv.TAG_MESSAGE_STATE).getValue(), new byte[] { 2 });
+
+		// the builder is reused
+		DeliverSm other = builder.state(MessageState.UNDELIVERABLE).error(34).zoneOffset(ZoneOffset.ofHours(-5))
+				.text(null).build();
+
+		Assert.assertEquals(new String(other.getShortMessage(), "ISO-8859-1"), "id:abc123 sub:001 dlvrd:001 " +
+				"submit date:2103040006 done date:2112311859 stat:UNDELIV err:034 text:");
+
+	}
+
+}
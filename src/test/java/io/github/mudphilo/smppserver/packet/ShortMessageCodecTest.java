@@ -0,0 +1,80 @@
+package io.github.mudphilo.smppserver.packet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ShortMessageCodecTest {
+
+	@Test
+	public void shouldEncodeAndDecodeGsmWithExtensionTable() throws Exception {
+
+		String text = "Price: 5\u20AC {\u00E8} @ \u0394";
+
+		byte[] bytes = ShortMessageCodec.encode(text, DataCoding.DEFAULT);
+
+		// the euro sign and the braces take two septets
+		Assert.assertEquals(bytes.length, text.length() + 3);
+		Assert.assertEquals(bytes[0], 'P');
+		Assert.assertEquals(ShortMessageCodec.decode(bytes, DataCoding.DEFAULT), text);
+
+	}
+
+	@Test
+	public void shouldPackAndUnpackGsmSeptets() throws Exception {
+
+		byte[] packed = ShortMessageCodec.encodePackedGsm("hellohello");
+
+		Assert.assertEquals(packed, new byte[] { (byte) 0xE8, 0x32, (byte) 0x9B, (byte) 0xFD, 0x46, (byte) 0x97,
+				(byte) 0xD9, (byte) 0xEC, 0x37 });
+		Assert.assertEquals(ShortMessageCodec.decodePackedGsm(packed, 0, 10), "hellohello");
+
+	}
+
+	@Test
+	public void shouldMapEachDataCodingToItsAlphabet() throws Exception {
+
+		Assert.assertEquals(ShortMessageCodec.encode("h\u00E9\u4E2D", DataCoding.UCS2),
+				new byte[] { 0x00, 0x68, 0x00, (byte) 0xE9, 0x4E, 0x2D });
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { (byte) 0xC0, (byte) 0xD0 }, DataCoding.CYRLLIC),
+				"\u0420\u0430");
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { (byte) 0xE9 }, DataCoding.LATIN1), "\u00E9");
+
+		// binary data goes back to the same octets
+		byte[] binary = new byte[] { 0x00, (byte) 0x80, (byte) 0xFF };
+		Assert.assertEquals(ShortMessageCodec.encode(ShortMessageCodec.decode(binary, DataCoding.EIGHT_BIT),
+				DataCoding.EIGHT_BIT), binary);
+
+		// message class group with the UCS-2 alphabet
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { 0x00, 0x41 }, (byte) 0x18), "A");
+
+	}
+
+	@Test
+	public void shouldDecodeAutomaticDeletionAndCompressedGroups() throws Exception {
+
+		// marked for automatic deletion, bits 3..2 are the alphabet
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { 0x00, 0x68, 0x4E, 0x2D }, (byte) 0x48), "h\u4E2D");
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { 0x00, (byte) 0x80, (byte) 0xFF }, (byte) 0x44),
+				"\u0000\u0080\u00FF");
+
+		// compressed messages keep their octets, whatever the alphabet
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { 0x1B, (byte) 0x80 }, (byte) 0x20), "\u001B\u0080");
+		Assert.assertEquals(ShortMessageCodec.decode(new byte[] { 0x00, 0x41 }, (byte) 0x68), "\u0000A");
+
+	}
+
+	@Test
+	public void shouldCacheTheDecodedShortMessage() throws Exception {
+
+		SubmitSm submitSm = new SubmitSm();
+		submitSm.setShortMessage("hello".getBytes("ISO-8859-1"));
+
+		String text = submitSm.getShortMessage();
+		Assert.assertSame(submitSm.getShortMessage(), text);
+
+		submitSm.setDataCoding(DataCoding.UCS2);
+		Assert.assertEquals(submitSm.getShortMessage(), "\u6865\u6C6C");
+
+	}
+
+}
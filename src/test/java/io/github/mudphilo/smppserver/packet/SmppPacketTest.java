@@ -0,0 +1,84 @@
+package io.github.mudphilo.smppserver.packet;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SmppPacketTest {
+
+	@Test
+	public void shouldReturnOptionalParametersInOrder() throws Exception {
+
+		SubmitSm submitSm = new SubmitSm();
+		Assert.assertTrue(submitSm.getOptionalParameters().isEmpty());
+		Assert.assertNull(submitSm.getOptionalParameter(Tlv.TAG_SAR_MSG_REF_NUM));
+
+		for (int i=0; i < 10; i++) {
+			submitSm.addOptionalParameter(new Tlv((short) (0x1400 + i), new byte[] { (byte) i }, null));
+		}
+		submitSm.addOptionalParameter(new Tlv((short) 0x1400, new byte[] { 10 }, null));
+
+		Assert.assertEquals(submitSm.getOptionalParameters().size(), 11);
+		Assert.assertEquals(submitSm.getOptionalParameters().get(3).getTag(), 0x1403);
+
+		// the first parameter with the tag is returned
+		Assert.assertEquals(submitSm.getOptionalParameter((short) 0x1400).getValue(), new byte[] { 0 });
+		Assert.assertEquals(submitSm.getOptionalParameter((short) 0x1409).getValue(), new byte[] { 9 });
+
+	}
+
+	@Test
+	public void shouldModifyOptionalParametersThroughTheList() throws Exception {
+
+		SubmitSm submitSm = new SubmitSm();
+
+		// the list of a packet without optional parameters can be added to
+		List<Tlv> optionalParameters = submitSm.getOptionalParameters();
+		optionalParameters.add(new Tlv(Tlv.TAG_SAR_MSG_REF_NUM, new byte[] { 0, 1 }, null));
+		optionalParameters.add(new Tlv(Tlv.TAG_SAR_TOTAL_SEGMENTS, new byte[] { 2 }, null));
+
+		Assert.assertEquals(optionalParameters.size(), 2);
+		Assert.assertEquals(submitSm.getOptionalParameters().size(), 2);
+		Assert.assertEquals(submitSm.getSarMsgRefNum(), 1);
+
+		// the index follows the changes
+		submitSm.getOptionalParameters().set(0, new Tlv(Tlv.TAG_SAR_MSG_REF_NUM, new byte[] { 0, 2 }, null));
+		Assert.assertEquals(submitSm.getSarMsgRefNum(), 2);
+
+		submitSm.getOptionalParameters().remove(0);
+		Assert.assertEquals(submitSm.getSarMsgRefNum(), -1);
+		Assert.assertEquals(submitSm.getSarTotalSegments(), 2);
+
+		submitSm.getOptionalParameters().add(0, new Tlv(Tlv.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 1 }, null));
+		Assert.assertEquals(submitSm.getOptionalParameters().get(0).getTag(), Tlv.TAG_SAR_SEGMENT_SEQNUM);
+		Assert.assertEquals(submitSm.getSarSegmentSeqnum(), 1);
+		Assert.assertEquals(submitSm.getSarTotalSegments(), 2);
+
+		submitSm.getOptionalParameters().clear();
+		Assert.assertTrue(submitSm.getOptionalParameters().isEmpty());
+		Assert.assertNull(submitSm.getOptionalParameter(Tlv.TAG_SAR_TOTAL_SEGMENTS));
+
+	}
+
+	@Test
+	public void shouldReadTypedOptionalParameters() throws Exception {
+
+		DeliverSm deliverSm = new DeliverSm();
+		Assert.assertEquals(deliverSm.getSarMsgRefNum(), -1);
+		Assert.assertNull(deliverSm.getReceiptedMessageId());
+
+		deliverSm.addOptionalParameter(new Tlv(Tlv.TAG_SAR_MSG_REF_NUM, new byte[] { (byte) 0x81, 0x02 }, null));
+		deliverSm.addOptionalParameter(new Tlv(Tlv.TAG_SAR_TOTAL_SEGMENTS, new byte[] { 3 }, null));
+		deliverSm.addOptionalParameter(new Tlv(Tlv.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 1, 2 }, null));
+		deliverSm.addOptionalParameter(new Tlv(Tlv.TAG_RECEIPTED_MESSAGE_ID, "abc\0".getBytes("ISO-8859-1"), null));
+
+		Assert.assertEquals(deliverSm.getSarMsgRefNum(), 0x8102);
+		Assert.assertEquals(deliverSm.getSarTotalSegments(), 3);
+		Assert.assertEquals(deliverSm.getSarSegmentSeqnum(), -1); // malformed
+		Assert.assertEquals(deliverSm.getReceiptedMessageId(), "abc");
+		Assert.assertNull(deliverSm.getMessagePayload());
+
+	}
+
+}
@@ -0,0 +1,172 @@
+package io.github.mudphilo.smppserver.packet.codec;
+
+import io.github.mudphilo.smppserver.MessageIdGenerator;
+import io.github.mudphilo.smppserver.packet.Address;
+import io.github.mudphilo.smppserver.packet.DeliverSm;
+import io.github.mudphilo.smppserver.packet.SmppPacket;
+import io.github.mudphilo.smppserver.packet.SubmitSm;
+import io.github.mudphilo.smppserver.packet.SubmitSmResp;
+import io.github.mudphilo.smppserver.packet.Tlv;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+
+public class PacketCodecTest {
+
+	private final PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+
+	@Test
+	public void shouldDecodeSubmitSmEncodedByCloudhopper() throws Exception {
+
+		com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm = new com.cloudhopper.smpp.pdu.SubmitSm();
+		chSubmitSm.setSequenceNumber(45);
+		chSubmitSm.setSourceAddress(new com.cloudhopper.smpp.type.Address((byte) 1, (byte) 1, "1234"));
+		chSubmitSm.setDestAddress(new com.cloudhopper.smpp.type.Address((byte) 2, (byte) 3, "5678"));
+		chSubmitSm.setRegisteredDelivery((byte) 1);
+		chSubmitSm.setShortMessage("hello".getBytes("ISO-8859-1"));
+		chSubmitSm.addOptionalParameter(new com.cloudhopper.smpp.tlv.Tlv((short) 0x020C, new byte[] { 0, 7 }));
+
+		ChannelBuffer buffer = transcoder.encode(chSubmitSm);
+		SmppPacket packet = PacketDecoder.decodePacket(buffer, buffer.writerIndex());
+
+		Assert.assertTrue(packet instanceof SubmitSm);
+		Assert.assertEquals(buffer.readerIndex(), buffer.writerIndex());
+
+		SubmitSm submitSm = (SubmitSm) packet;
+		Assert.assertEquals(submitSm.getSequenceNumber(), 45);
+		Assert.assertNull(submitSm.getServiceType());
+		Assert.assertEquals(submitSm.getSourceAddress().getAddressField(), "1234");
+		Assert.assertEquals(submitSm.getDestAddress().getTon(), 2);
+		Assert.assertEquals(submitSm.getDestAddress().getNpi(), 3);
+		Assert.assertEquals(submitSm.getDestAddress().getAddressField(), "5678");
+		Assert.assertEquals(submitSm.getRegisteredDelivery(), 1);
+		Assert.assertEquals(submitSm.getShortMessage(), "hello");
+		Assert.assertEquals(submitSm.getOptionalParameter((short) 0x020C).getValue(), new byte[] { 0, 7 });
+
+	}
+
+	@Test
+	public void shouldOverrideLazySubmitSmFields() throws Exception {
+
+		com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm = new com.cloudhopper.smpp.pdu.SubmitSm();
+		chSubmitSm.setSourceAddress(new com.cloudhopper.smpp.type.Address((byte) 1, (byte) 1, "1234"));
+		chSubmitSm.setDestAddress(new com.cloudhopper.smpp.type.Address((byte) 1, (byte) 1, "5678"));
+		chSubmitSm.setShortMessage("hello".getBytes("ISO-8859-1"));
+
+		ChannelBuffer buffer = transcoder.encode(chSubmitSm);
+		SubmitSm submitSm = (SubmitSm) PacketDecoder.decodePacket(buffer, buffer.writerIndex());
+
+		submitSm.setDestAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("9999"));
+		submitSm.addOptionalParameter(new Tlv((short) 0x020C, new byte[] { 0, 7 }, null));
+
+		Assert.assertEquals(submitSm.getDestAddress().getAddressField(), "9999");
+		Assert.assertEquals(submitSm.getSourceAddress().getAddressField(), "1234");
+		Assert.assertEquals(submitSm.getOptionalParameters().size(), 1);
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void shouldFailDecodingSubmitSmWithTruncatedTlv() throws Exception {
+
+		com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm = new com.cloudhopper.smpp.pdu.SubmitSm();
+		chSubmitSm.setShortMessage("hello".getBytes("ISO-8859-1"));
+		chSubmitSm.addOptionalParameter(new com.cloudhopper.smpp.tlv.Tlv((short) 0x020C, new byte[] { 0, 7 }));
+
+		ChannelBuffer buffer = transcoder.encode(chSubmitSm);
+
+		// drop the last byte of the optional parameter
+		ChannelBuffer truncated = buffer.copy(0, buffer.writerIndex() - 1);
+		truncated.setInt(0, truncated.writerIndex());
+
+		PacketDecoder.decodePacket(truncated, truncated.writerIndex());
+
+	}
+
+	@Test
+	public void shouldEncodeDeliverSmReadableByCloudhopper() throws Exception {
+
+		DeliverSm deliverSm = new DeliverSm();
+		deliverSm.setSequenceNumber(12);
+		deliverSm.setSourceAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("5678"));
+		deliverSm.setDestAddress(new Address().withTon((byte) 1).withNpi((byte) 1).withAddress("1234"));
+		deliverSm.setEsmClass((byte) 0x04);
+		deliverSm.setShortMessage("id:1 stat:DELIVRD".getBytes("ISO-8859-1"));
+		deliverSm.addOptionalParameter(new Tlv((short) 0x001E, "1\0".getBytes("ISO-8859-1"), null));
+
+		ChannelBuffer buffer = PacketEncoder.encodePacket(deliverSm);
+		Assert.assertEquals(buffer.getInt(0), buffer.readableBytes());
+
+		com.cloudhopper.smpp.pdu.DeliverSm chDeliverSm = (com.cloudhopper.smpp.pdu.DeliverSm) transcoder.decode(buffer);
+
+		Assert.assertEquals(chDeliverSm.getSequenceNumber(), 12);
+		Assert.assertEquals(chDeliverSm.getSourceAddress().getAddress(), "5678");
+		Assert.assertEquals(chDeliverSm.getDestAddress().getAddress(), "1234");
+		Assert.assertEquals(chDeliverSm.getEsmClass(), 0x04);
+		Assert.assertEquals(new String(chDeliverSm.getShortMessage(), "ISO-8859-1"), "id:1 stat:DELIVRD");
+		Assert.assertNotNull(chDeliverSm.getOptionalParameter((short) 0x001E));
+
+	}
+
+	@Test
+	public void shouldEncodeSubmitSmResp() throws Exception {
+
+		SubmitSmResp submitSmResp = new SubmitSmResp();
+		submitSmResp.setSequenceNumber(7);
+		submitSmResp.setMessageId("abc");
+
+		ChannelBuffer buffer = PacketEncoder.encodePacket(submitSmResp);
+
+		Assert.assertEquals(buffer.readableBytes(), 20);
+		Assert.assertEquals(buffer.getInt(4), SmppPacket.SUBMIT_SM_RESP);
+		Assert.assertEquals(buffer.getInt(12), 7);
+		Assert.assertEquals(buffer.getByte(19), 0);
+
+	}
+
+	@Test
+	public void shouldEncodeGeneratedMessageIdWithoutString() throws Exception {
+
+		MessageIdGenerator messageIdGenerator = new MessageIdGenerator(0xabcL) {
+			@Override
+			public String nextId() {
+				throw new AssertionError("the message id must be written without creating a String");
+			}
+		};
+
+		SubmitSmResp submitSmResp = new SubmitSmResp();
+		submitSmResp.setSequenceNumber(8);
+		submitSmResp.setMessageIdGenerator(messageIdGenerator);
+
+		ChannelBuffer buffer = PacketEncoder.encodePacket(submitSmResp);
+
+		Assert.assertEquals(buffer.readableBytes(), 16 + MessageIdGenerator.ID_LENGTH + 1);
+		Assert.assertEquals(buffer.getInt(0), buffer.readableBytes());
+		Assert.assertEquals(buffer.getByte(buffer.writerIndex() - 1), 0);
+
+		byte[] messageId = new byte[MessageIdGenerator.ID_LENGTH];
+		buffer.getBytes(16, messageId);
+		Assert.assertTrue(new String(messageId, "US-ASCII").endsWith("000000000abc"));
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void shouldFailDecodingCStringWithoutTerminator() throws Exception {
+
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		buffer.writeInt(20);
+		buffer.writeInt(SmppPacket.BIND_TRANSCEIVER);
+		buffer.writeInt(0);
+		buffer.writeInt(1);
+		buffer.writeBytes("test".getBytes("ISO-8859-1"));
+
+		PacketDecoder.decodePacket(buffer, buffer.writerIndex());
+
+	}
+
+}